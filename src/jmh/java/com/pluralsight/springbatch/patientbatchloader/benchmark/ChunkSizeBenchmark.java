@@ -0,0 +1,33 @@
+package com.pluralsight.springbatch.patientbatchloader.benchmark;
+
+import org.openjdk.jmh.annotations.Param;
+
+/**
+ * Runs the full patient job with different commit intervals, fixed or as the
+ * starting point of the adaptive chunk size.
+ *
+ * Run with: ./gradlew jmh -PjmhInclude=ChunkSizeBenchmark
+ */
+public class ChunkSizeBenchmark extends PatientJobRunnerBenchmark {
+
+    @Param({ "2", "10", "100", "500", "1000" })
+    public int chunkSize;
+
+    @Param({ "false", "true" })
+    public boolean adaptive;
+
+    @Param({ "10000" })
+    public long rows;
+
+    @Override
+    protected long rows() {
+        return rows;
+    }
+
+    @Override
+    protected String[] properties() {
+        return new String[] {
+            "application.batch.chunk.size=" + chunkSize,
+            "application.batch.chunk.adaptive=" + adaptive };
+    }
+}
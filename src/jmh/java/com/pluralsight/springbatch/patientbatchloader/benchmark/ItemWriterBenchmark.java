@@ -0,0 +1,123 @@
+package com.pluralsight.springbatch.patientbatchloader.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.pluralsight.springbatch.patientbatchloader.batch.PatientJdbcItemWriter;
+import com.pluralsight.springbatch.patientbatchloader.batch.PatientJpaItemWriter;
+import com.pluralsight.springbatch.patientbatchloader.batch.PatientLineMapper;
+import com.pluralsight.springbatch.patientbatchloader.batch.PatientRecordMapper;
+import com.pluralsight.springbatch.patientbatchloader.domain.PatientEntity;
+import com.pluralsight.springbatch.patientbatchloader.domain.PatientRecord;
+
+/**
+ * Writes chunks of new patients with the JPA or the JDBC writer, each chunk in
+ * a transaction of its own as the step does, without reading or processing.
+ * The chunks are built before every invocation and are not measured. Besides
+ * chunks per second, the "rows" secondary result reports the rows written per
+ * second; the patient table is emptied before every iteration.
+ *
+ * Run with: ./gradlew jmh -PjmhInclude=ItemWriterBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ItemWriterBenchmark {
+
+    @Param({ "jpa", "jdbc" })
+    public String writer;
+
+    @Param({ "100", "1000" })
+    public int chunkSize;
+
+    private PatientJobRunner runner;
+    private ItemWriter<PatientEntity> itemWriter;
+    private TransactionTemplate transactionTemplate;
+
+    private final PatientRecordMapper processor = new PatientRecordMapper();
+    private PatientRecord[] records;
+    private long nextSourceId;
+    private List<PatientEntity> chunk;
+
+    @Setup(Level.Trial)
+    public void startApplication() throws Exception {
+        runner = new PatientJobRunner();
+        ConfigurableApplicationContext context = runner.getContext();
+        if ("jpa".equals(writer)) {
+            PatientJpaItemWriter jpaWriter = new PatientJpaItemWriter();
+            jpaWriter.setEntityManagerFactory(context.getBean("batchEntityManagerFactory", EntityManagerFactory.class));
+            jpaWriter.afterPropertiesSet();
+            itemWriter = jpaWriter;
+        } else {
+            itemWriter = context.getBean(PatientJdbcItemWriter.class);
+        }
+        transactionTemplate = new TransactionTemplate(
+            context.getBean("batchTransactionManager", PlatformTransactionManager.class));
+
+        List<String> lines = PatientFiles.lines(10_000);
+        PatientLineMapper lineMapper = new PatientLineMapper();
+        records = new PatientRecord[lines.size()];
+        for (int i = 0; i < records.length; i++) {
+            records[i] = lineMapper.mapLine(lines.get(i), i + 1);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void clearPatients() {
+        runner.clearPatients();
+    }
+
+    @Setup(Level.Invocation)
+    public void nextChunk() {
+        chunk = new ArrayList<>(chunkSize);
+        for (int i = 0; i < chunkSize; i++) {
+            PatientEntity patient = processor.apply(records[(int) (nextSourceId % records.length)]);
+            patient.setSourceId(new UUID(0, nextSourceId++).toString());
+            chunk.add(patient);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stopApplication() throws IOException {
+        runner.close();
+    }
+
+    @Benchmark
+    public void writeChunk(RowCounter counter) {
+        transactionTemplate.execute((status) -> {
+            try {
+                itemWriter.write(chunk);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            return null;
+        });
+        counter.rows += chunk.size();
+    }
+}
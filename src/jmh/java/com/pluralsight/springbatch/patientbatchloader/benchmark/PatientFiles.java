@@ -0,0 +1,64 @@
+package com.pluralsight.springbatch.patientbatchloader.benchmark;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import com.pluralsight.springbatch.patientbatchloader.tools.PatientFileGenerator;
+
+/**
+ * Patient files and lines for the benchmarks, written by the
+ * PatientFileGenerator with its default seed. Every row is a new patient.
+ */
+final class PatientFiles {
+
+    /**
+     * Name of the file written by {@link #createDirectory(long)}.
+     */
+    static final String FILE_NAME = "patients.csv";
+
+    private PatientFiles() {
+    }
+
+    /**
+     * @return the given number of data lines, without the header
+     */
+    static List<String> lines(int rows) throws IOException {
+        StringWriter writer = new StringWriter();
+        generator(rows).generate(writer);
+        List<String> lines = Arrays.asList(writer.toString().split("\n"));
+        return lines.subList(1, lines.size());
+    }
+
+    /**
+     * Writes a patient file of the given number of rows, plus a header line.
+     */
+    static Path create(Path file, long rows) throws IOException {
+        generator(rows).generate(file);
+        return file;
+    }
+
+    /**
+     * Creates a temporary input directory holding a {@link #FILE_NAME} of the
+     * given number of rows.
+     */
+    static Path createDirectory(long rows) throws IOException {
+        Path directory = Files.createTempDirectory("patient-benchmark-");
+        create(directory.resolve(FILE_NAME), rows);
+        return directory;
+    }
+
+    static void deleteDirectory(Path directory) throws IOException {
+        Files.deleteIfExists(directory.resolve(FILE_NAME));
+        Files.deleteIfExists(directory);
+    }
+
+    private static PatientFileGenerator generator(long rows) {
+        PatientFileGenerator generator = new PatientFileGenerator();
+        generator.setRows(rows);
+        return generator;
+    }
+}
@@ -0,0 +1,21 @@
+package com.pluralsight.springbatch.patientbatchloader.benchmark;
+
+import org.openjdk.jmh.annotations.Param;
+
+/**
+ * Loads a synthetic file of new patients with the patient job as configured
+ * in application.yml. This is the end to end counterpart of the line mapper,
+ * processor and item writer benchmarks.
+ *
+ * Run with: ./gradlew jmh -PjmhInclude=PatientJobBenchmark -PjmhRows=1000000
+ */
+public class PatientJobBenchmark extends PatientJobRunnerBenchmark {
+
+    @Param({ "100000" })
+    public long rows;
+
+    @Override
+    protected long rows() {
+        return rows;
+    }
+}
@@ -0,0 +1,139 @@
+package com.pluralsight.springbatch.patientbatchloader.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.FileSystemUtils;
+
+import com.pluralsight.springbatch.patientbatchloader.PatientBatchLoaderApp;
+import com.pluralsight.springbatch.patientbatchloader.config.Constants;
+
+/**
+ * Boots the application without a web server and runs the patient job on
+ * demand. Shared by the end to end benchmarks. Unless given a
+ * spring.datasource.url, the application runs against an H2 file database in
+ * a temporary directory, deleted on close, as the benchmarks empty the
+ * patient table.
+ */
+public class PatientJobRunner implements AutoCloseable {
+
+    /**
+     * Application property of the directory the job reads its files from.
+     */
+    public static final String INPUT_PATH = "application.batch.inputPath";
+
+    private static final String DATASOURCE_URL = "spring.datasource.url";
+
+    private final ConfigurableApplicationContext context;
+    private final JobLauncher jobLauncher;
+    private final JobExplorer jobExplorer;
+    private final Job job;
+    private final JdbcTemplate jdbcTemplate;
+    private final Path databasePath;
+
+    /**
+     * @param properties
+     *            application properties as "name=value", e.g.
+     *            "application.batch.chunk.size=100". The input path defaults
+     *            to the benchmark.inputPath system property.
+     */
+    public PatientJobRunner(String... properties) throws IOException {
+        List<String> args = new ArrayList<>();
+        for (String property : Arrays.asList(properties)) {
+            args.add("--" + property);
+        }
+        if (args.stream().noneMatch((arg) -> arg.startsWith("--" + INPUT_PATH + "="))) {
+            args.add("--" + INPUT_PATH + "=" + Paths.get(System.getProperty("benchmark.inputPath", "data"))
+                .toAbsolutePath());
+        }
+        if (args.stream().noneMatch((arg) -> arg.startsWith("--" + DATASOURCE_URL + "="))) {
+            databasePath = Files.createTempDirectory("patient-benchmark-db-");
+            args.add("--" + DATASOURCE_URL + "=jdbc:h2:file:" + databasePath.resolve("patientbatchloader"));
+        } else {
+            databasePath = null;
+        }
+        args.add("--logging.level.com.pluralsight.springbatch.patientbatchloader=INFO");
+        try {
+            this.context = new SpringApplicationBuilder(PatientBatchLoaderApp.class)
+                .web(WebApplicationType.NONE)
+                .profiles(Constants.SPRING_PROFILE_DEVELOPMENT)
+                .run(args.toArray(new String[0]));
+        } catch (RuntimeException e) {
+            if (databasePath != null) {
+                FileSystemUtils.deleteRecursively(databasePath);
+            }
+            throw e;
+        }
+        this.jobLauncher = context.getBean(JobLauncher.class);
+        this.jobExplorer = context.getBean(JobExplorer.class);
+        this.job = context.getBean(Job.class);
+        this.jdbcTemplate = new JdbcTemplate(context.getBean("batchDataSource", DataSource.class));
+    }
+
+    public ConfigurableApplicationContext getContext() {
+        return context;
+    }
+
+    /**
+     * Removes all loaded patients so every run starts from the same table size.
+     */
+    public void clearPatients() {
+        jdbcTemplate.update("DELETE FROM patient");
+    }
+
+    /**
+     * Runs the job to completion on the given file of the input path.
+     *
+     * @return the number of rows written
+     */
+    public long run(String fileName) throws Exception {
+        JobParameters parameters = new JobParametersBuilder()
+            .addString(Constants.JOB_PARAM_FILE_NAME, fileName)
+            .addLong("benchmark.run", System.nanoTime())
+            .toJobParameters();
+        JobExecution execution = jobLauncher.run(job, parameters);
+        // the launcher is asynchronous, poll the repository until the job ends
+        while (execution.isRunning()) {
+            Thread.sleep(10);
+            execution = jobExplorer.getJobExecution(execution.getId());
+        }
+        if (execution.getStatus() != BatchStatus.COMPLETED) {
+            throw new IllegalStateException("Benchmark job ended with status " + execution.getStatus());
+        }
+        long rows = 0;
+        for (StepExecution stepExecution : execution.getStepExecutions()) {
+            rows += stepExecution.getWriteCount();
+        }
+        return rows;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            context.close();
+        } finally {
+            if (databasePath != null) {
+                FileSystemUtils.deleteRecursively(databasePath);
+            }
+        }
+    }
+}
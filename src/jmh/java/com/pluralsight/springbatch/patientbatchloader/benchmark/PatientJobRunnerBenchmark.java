@@ -0,0 +1,78 @@
+package com.pluralsight.springbatch.patientbatchloader.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Runs the full patient job on a synthetic file of new patients with a
+ * {@link PatientJobRunner}, against a throwaway H2 file database. Subclasses
+ * declare their parameters and the application properties they map to.
+ * Besides jobs per second, the "rows" secondary result reports the rows
+ * written per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public abstract class PatientJobRunnerBenchmark {
+
+    private Path inputPath;
+    private PatientJobRunner runner;
+
+    /**
+     * @return the number of patients in the file loaded by every run
+     */
+    protected abstract long rows();
+
+    /**
+     * @return application properties as "name=value", none by default
+     */
+    protected String[] properties() {
+        return new String[0];
+    }
+
+    @Setup(Level.Trial)
+    public void startApplication() throws IOException {
+        inputPath = PatientFiles.createDirectory(rows());
+        List<String> properties = new ArrayList<>();
+        properties.add(PatientJobRunner.INPUT_PATH + "=" + inputPath);
+        properties.addAll(Arrays.asList(properties()));
+        runner = new PatientJobRunner(properties.toArray(new String[0]));
+    }
+
+    // every run loads new patients, rather than updating the ones of the previous run
+    @Setup(Level.Invocation)
+    public void clearPatients() {
+        runner.clearPatients();
+    }
+
+    @TearDown(Level.Trial)
+    public void stopApplication() throws IOException {
+        runner.close();
+        PatientFiles.deleteDirectory(inputPath);
+    }
+
+    @Benchmark
+    public void loadFile(RowCounter counter) throws Exception {
+        counter.rows += runner.run(PatientFiles.FILE_NAME);
+    }
+}
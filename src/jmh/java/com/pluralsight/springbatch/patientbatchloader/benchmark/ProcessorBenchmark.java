@@ -0,0 +1,88 @@
+package com.pluralsight.springbatch.patientbatchloader.benchmark;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.pluralsight.springbatch.patientbatchloader.batch.PatientLineMapper;
+import com.pluralsight.springbatch.patientbatchloader.batch.PatientRecordMapper;
+import com.pluralsight.springbatch.patientbatchloader.domain.PatientEntity;
+import com.pluralsight.springbatch.patientbatchloader.domain.PatientRecord;
+
+/**
+ * Records per second of the PatientRecordMapper against the processor lambda
+ * it replaced, which built a DateTimeFormatter for every record. The gc
+ * profiler configured in build.gradle reports the bytes allocated per record
+ * (gc.alloc.rate.norm).
+ *
+ * Run with: ./gradlew jmh -PjmhInclude=ProcessorBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ProcessorBenchmark {
+
+    private PatientRecord[] records;
+    private int next;
+
+    private Function<PatientRecord, PatientEntity> formatterProcessor;
+    private Function<PatientRecord, PatientEntity> patientProcessor;
+
+    @Setup(Level.Trial)
+    public void readRecords() throws Exception {
+        List<String> lines = PatientFiles.lines(10_000);
+        PatientLineMapper lineMapper = new PatientLineMapper();
+        records = new PatientRecord[lines.size()];
+        for (int i = 0; i < records.length; i++) {
+            records[i] = lineMapper.mapLine(lines.get(i), i + 1);
+        }
+
+        formatterProcessor = (patientRecord) -> new PatientEntity(
+            patientRecord.getSourceId(),
+            patientRecord.getFirstName(),
+            patientRecord.getMiddleInitial(),
+            patientRecord.getLastName(),
+            patientRecord.getEmailAddress(),
+            patientRecord.getPhoneNumber(),
+            patientRecord.getStreet(),
+            patientRecord.getCity(),
+            patientRecord.getState(),
+            patientRecord.getZip(),
+            LocalDate.parse(patientRecord.getBirthDate(), DateTimeFormatter.ofPattern("M/dd/yyyy")),
+            patientRecord.getSsn());
+        patientProcessor = new PatientRecordMapper();
+    }
+
+    private PatientRecord nextRecord() {
+        PatientRecord record = records[next];
+        next = next + 1 == records.length ? 0 : next + 1;
+        return record;
+    }
+
+    @Benchmark
+    public PatientEntity dateTimeFormatter() {
+        return formatterProcessor.apply(nextRecord());
+    }
+
+    @Benchmark
+    public PatientEntity patientRecordMapper() {
+        return patientProcessor.apply(nextRecord());
+    }
+}
@@ -0,0 +1,157 @@
+package com.pluralsight.springbatch.patientbatchloader.benchmark;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.file.FlatFileItemReader;
+import org.springframework.batch.item.file.builder.FlatFileItemReaderBuilder;
+import org.springframework.core.io.PathResource;
+
+import com.pluralsight.springbatch.patientbatchloader.batch.MappedPatientFileReader;
+import com.pluralsight.springbatch.patientbatchloader.batch.PatientFileRangeReader;
+import com.pluralsight.springbatch.patientbatchloader.batch.PatientLineMapper;
+import com.pluralsight.springbatch.patientbatchloader.domain.PatientRecord;
+
+/**
+ * Reads a large patient file, written by the PatientFileGenerator, with
+ * the FlatFileItemReader, the buffered PatientFileRangeReader and the
+ * MappedPatientFileReader. All of them use the PatientLineMapper so only the
+ * I/O and line splitting differ. The restart benchmarks open the readers with
+ * the state of an execution that failed after 90% of the file. Besides file
+ * passes per second, the "rows" secondary result reports lines per second.
+ *
+ * Run with: ./gradlew jmh -PjmhInclude=ReaderBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReaderBenchmark {
+
+    private static final String READER_NAME = "reader";
+
+    @Param({ "100", "500" })
+    public int fileSizeMb;
+
+    private Path file;
+    private long restartLine;
+    private long restartOffset;
+
+    @Setup(Level.Trial)
+    public void writeFile() throws IOException {
+        // as many rows as make up the size, at the average line length of a sample
+        long sampleLength = 0;
+        for (String line : PatientFiles.lines(1000)) {
+            sampleLength += line.length() + 1;
+        }
+        long lineCount = fileSizeMb * 1024L * 1024L * 1000 / sampleLength;
+        file = PatientFiles.create(Files.createTempFile("patients-" + fileSizeMb + "mb-", ".csv"), lineCount);
+        restartLine = lineCount * 9 / 10;
+        restartOffset = offsetOfLine(restartLine + 1);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFile() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public void flatFileReader(RowCounter counter) throws Exception {
+        counter.rows += readAll(flatFileReader(), new ExecutionContext());
+    }
+
+    @Benchmark
+    public void bufferedReader(RowCounter counter) throws Exception {
+        PatientFileRangeReader reader =
+            new PatientFileRangeReader(file, offsetOfLine(1), Long.MAX_VALUE, new PatientLineMapper());
+        reader.setName(READER_NAME);
+        counter.rows += readAll(reader, new ExecutionContext());
+    }
+
+    @Benchmark
+    public void mappedReader(RowCounter counter) throws Exception {
+        counter.rows += readAll(mappedReader(), new ExecutionContext());
+    }
+
+    @Benchmark
+    public void flatFileReaderRestart(RowCounter counter) throws Exception {
+        ExecutionContext executionContext = new ExecutionContext();
+        executionContext.putInt(READER_NAME + ".read.count", (int) restartLine);
+        counter.rows += readAll(flatFileReader(), executionContext);
+    }
+
+    @Benchmark
+    public void mappedReaderRestart(RowCounter counter) throws Exception {
+        ExecutionContext executionContext = new ExecutionContext();
+        executionContext.putLong(READER_NAME + ".position", restartOffset);
+        counter.rows += readAll(mappedReader(), executionContext);
+    }
+
+    private FlatFileItemReader<PatientRecord> flatFileReader() {
+        return new FlatFileItemReaderBuilder<PatientRecord>()
+            .name(READER_NAME)
+            .resource(new PathResource(file))
+            .linesToSkip(1)
+            .lineMapper(new PatientLineMapper())
+            .build();
+    }
+
+    private MappedPatientFileReader mappedReader() {
+        MappedPatientFileReader reader =
+            new MappedPatientFileReader(file, 0, Long.MAX_VALUE, new PatientLineMapper());
+        reader.setName(READER_NAME);
+        reader.setLinesToSkip(1);
+        return reader;
+    }
+
+    private static long readAll(ItemStreamReader<PatientRecord> reader, ExecutionContext executionContext)
+            throws Exception {
+        long rows = 0;
+        reader.open(executionContext);
+        try {
+            while (reader.read() != null) {
+                rows++;
+            }
+        } finally {
+            reader.close();
+        }
+        return rows;
+    }
+
+    /**
+     * @return the byte offset of a zero based line of the file
+     */
+    private long offsetOfLine(long line) throws IOException {
+        long offset = 0;
+        try (InputStream input = new BufferedInputStream(Files.newInputStream(file))) {
+            int b;
+            for (long seen = 0; seen < line && (b = input.read()) != -1; offset++) {
+                if (b == '\n') {
+                    seen++;
+                }
+            }
+        }
+        return offset;
+    }
+}
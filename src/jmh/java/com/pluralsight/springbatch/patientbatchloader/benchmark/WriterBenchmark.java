@@ -0,0 +1,32 @@
+package com.pluralsight.springbatch.patientbatchloader.benchmark;
+
+import org.openjdk.jmh.annotations.Param;
+
+/**
+ * Compares the JPA and the JDBC writers by running the full patient job.
+ *
+ * Run with: ./gradlew jmh -PjmhInclude=WriterBenchmark
+ */
+public class WriterBenchmark extends PatientJobRunnerBenchmark {
+
+    @Param({ "jpa", "jdbc" })
+    public String writer;
+
+    @Param({ "100", "1000" })
+    public int chunkSize;
+
+    @Param({ "10000" })
+    public long rows;
+
+    @Override
+    protected long rows() {
+        return rows;
+    }
+
+    @Override
+    protected String[] properties() {
+        return new String[] {
+            "application.batch.writer=" + writer,
+            "application.batch.chunk.size=" + chunkSize };
+    }
+}
@@ -1,6 +1,12 @@
 package com.pluralsight.springbatch.patientbatchloader.aop.logging;
 
-import java.util.Arrays;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.aspectj.lang.JoinPoint;
 import org.aspectj.lang.ProceedingJoinPoint;
@@ -8,24 +14,102 @@ import org.aspectj.lang.annotation.AfterThrowing;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Pointcut;
+import org.aspectj.lang.reflect.MethodSignature;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.core.env.Environment;
+import org.springframework.util.Assert;
 
 import com.pluralsight.springbatch.patientbatchloader.config.Constants;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
 /**
  * Aspect for logging execution of service and repository Spring components.
+ *
+ * What is done per call depends on the {@link Mode}, which can be changed at
+ * runtime through the loggingaspect actuator endpoint. Argument and result
+ * values are never logged, only their types, as they may hold patient data.
  */
 @Aspect
 public class LoggingAspect {
 
+	/**
+	 * What the aspect does for every call of an advised method.
+	 */
+	public enum Mode {
+		/**
+		 * Nothing, the call proceeds without timing or logging.
+		 */
+		OFF,
+		/**
+		 * Time the call for the per-method summary, without logging it.
+		 */
+		SUMMARY,
+		/**
+		 * Time the call and log the enter and exit of one call in every
+		 * sample rate calls at debug level.
+		 */
+		SAMPLED,
+		/**
+		 * Time the call and log its enter and exit at debug level.
+		 */
+		FULL
+	}
+
 	private final Logger log = LoggerFactory.getLogger(this.getClass());
 
 	private final Environment env;
 
-	public LoggingAspect(Environment env) {
+	private final MeterRegistry registry;
+
+	private final ConcurrentMap<Method, Timer> timers = new ConcurrentHashMap<>();
+
+	private final AtomicLong calls = new AtomicLong();
+
+	private volatile Mode mode;
+
+	private volatile int sampleRate;
+
+	public LoggingAspect(Environment env, MeterRegistry registry, Mode mode, int sampleRate) {
 		this.env = env;
+		this.registry = registry;
+		setMode(mode);
+		setSampleRate(sampleRate);
+	}
+
+	public Mode getMode() {
+		return mode;
+	}
+
+	public void setMode(Mode mode) {
+		Assert.notNull(mode, "The mode must not be null");
+		this.mode = mode;
+	}
+
+	public int getSampleRate() {
+		return sampleRate;
+	}
+
+	/**
+	 * @param sampleRate
+	 *            in sampled mode one call in every sampleRate calls is logged
+	 */
+	public void setSampleRate(int sampleRate) {
+		Assert.isTrue(sampleRate > 0, "The sample rate must be greater than zero");
+		this.sampleRate = sampleRate;
+	}
+
+	/**
+	 * @return the timers of the methods called so far, keyed on
+	 *         Class.method()
+	 */
+	public Map<String, Timer> getTimers() {
+		Map<String, Timer> summary = new TreeMap<>();
+		timers.forEach((method, timer) ->
+			summary.put(method.getDeclaringClass().getSimpleName() + "." + method.getName() + "()", timer));
+		return summary;
 	}
 
 	/**
@@ -70,7 +154,8 @@ public class LoggingAspect {
 	}
 
 	/**
-	 * Advice that logs when a method is entered and exited.
+	 * Advice that times a method and, depending on the mode, logs when it is
+	 * entered and exited.
 	 *
 	 * @param joinPoint
 	 *            join point for advice
@@ -80,22 +165,56 @@ public class LoggingAspect {
 	 */
 	@Around("applicationPackagePointcut() && springBeanPointcut()")
 	public Object logAround(ProceedingJoinPoint joinPoint) throws Throwable {
-		if (log.isDebugEnabled()) {
-			log.debug("Enter: {}.{}() with argument[s] = {}", joinPoint.getSignature().getDeclaringTypeName(),
-					joinPoint.getSignature().getName(), Arrays.toString(joinPoint.getArgs()));
+		Mode mode = this.mode;
+		if (mode == Mode.OFF) {
+			return joinPoint.proceed();
 		}
+		boolean logCall = log.isDebugEnabled()
+			&& (mode == Mode.FULL || (mode == Mode.SAMPLED && calls.incrementAndGet() % sampleRate == 0));
+		if (logCall) {
+			log.debug("Enter: {}.{}() with argument[s] of type {}", joinPoint.getSignature().getDeclaringTypeName(),
+					joinPoint.getSignature().getName(), argumentTypes(joinPoint));
+		}
+		long start = System.nanoTime();
 		try {
 			Object result = joinPoint.proceed();
-			if (log.isDebugEnabled()) {
-				log.debug("Exit: {}.{}() with result = {}", joinPoint.getSignature().getDeclaringTypeName(),
-						joinPoint.getSignature().getName(), result);
+			if (logCall) {
+				log.debug("Exit: {}.{}() with result of type {}", joinPoint.getSignature().getDeclaringTypeName(),
+						joinPoint.getSignature().getName(), result != null ? result.getClass().getSimpleName() : "NULL");
 			}
 			return result;
 		} catch (IllegalArgumentException e) {
-			log.error("Illegal argument: {} in {}.{}()", Arrays.toString(joinPoint.getArgs()),
+			log.error("Illegal argument of type {} in {}.{}()", argumentTypes(joinPoint),
 					joinPoint.getSignature().getDeclaringTypeName(), joinPoint.getSignature().getName());
 
 			throw e;
+		} finally {
+			timer(joinPoint).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	private Timer timer(JoinPoint joinPoint) {
+		Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+		Timer timer = timers.get(method);
+		if (timer == null) {
+			timer = timers.computeIfAbsent(method, (key) -> Timer.builder("application.method")
+				.description("Time spent in a method advised by the logging aspect")
+				.tag("class", key.getDeclaringClass().getSimpleName())
+				.tag("method", key.getName())
+				.publishPercentiles(0.5, 0.99)
+				.register(registry));
+		}
+		return timer;
+	}
+
+	private static String argumentTypes(JoinPoint joinPoint) {
+		StringBuilder types = new StringBuilder("[");
+		for (Object arg : joinPoint.getArgs()) {
+			if (types.length() > 1) {
+				types.append(", ");
+			}
+			types.append(arg != null ? arg.getClass().getSimpleName() : "NULL");
 		}
+		return types.append(']').toString();
 	}
 }
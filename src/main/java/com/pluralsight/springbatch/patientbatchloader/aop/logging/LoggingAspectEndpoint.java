@@ -0,0 +1,78 @@
+package com.pluralsight.springbatch.patientbatchloader.aop.logging;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.lang.Nullable;
+
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+
+/**
+ * Actuator endpoint showing the mode of the {@link LoggingAspect} and a timing
+ * summary per advised method. The percentiles cover the last few minutes.
+ * Only the dev profile exposes it over HTTP, as anyone reaching it can switch
+ * the logging of every call on.
+ *
+ * Switch the mode at runtime with, for example:
+ * <pre>
+ * curl -X POST -H 'Content-Type: application/json' -d '{"mode":"sampled","sampleRate":1000}' \
+ *     localhost:8080/actuator/loggingaspect
+ * </pre>
+ */
+@Endpoint(id = "loggingaspect")
+public class LoggingAspectEndpoint {
+
+	private final LoggingAspect loggingAspect;
+
+	public LoggingAspectEndpoint(LoggingAspect loggingAspect) {
+		this.loggingAspect = loggingAspect;
+	}
+
+	@ReadOperation
+	public Map<String, Object> summary() {
+		Map<String, Object> methods = new LinkedHashMap<>();
+		loggingAspect.getTimers().forEach((name, timer) -> {
+			HistogramSnapshot snapshot = timer.takeSnapshot(false);
+			Map<String, Object> method = new LinkedHashMap<>();
+			method.put("count", snapshot.count());
+			method.put("meanMs", snapshot.mean(TimeUnit.MILLISECONDS));
+			for (ValueAtPercentile percentile : snapshot.percentileValues()) {
+				method.put("p" + Math.round(percentile.percentile() * 100) + "Ms",
+					percentile.value(TimeUnit.MILLISECONDS));
+			}
+			method.put("maxMs", snapshot.max(TimeUnit.MILLISECONDS));
+			methods.put(name, method);
+		});
+		Map<String, Object> summary = new LinkedHashMap<>();
+		summary.put("mode", loggingAspect.getMode());
+		summary.put("sampleRate", loggingAspect.getSampleRate());
+		summary.put("methods", methods);
+		return summary;
+	}
+
+	@WriteOperation
+	public void configure(String mode, @Nullable Integer sampleRate) {
+		LoggingAspect.Mode newMode;
+		try {
+			newMode = LoggingAspect.Mode.valueOf(mode.trim().toUpperCase());
+		} catch (IllegalArgumentException e) {
+			throw new InvalidEndpointRequestException("Unknown logging aspect mode " + mode,
+				"Mode must be one of " + Arrays.toString(LoggingAspect.Mode.values()));
+		}
+		if (sampleRate != null) {
+			if (sampleRate <= 0) {
+				throw new InvalidEndpointRequestException("Invalid sample rate " + sampleRate,
+					"Sample rate must be greater than zero");
+			}
+			loggingAspect.setSampleRate(sampleRate);
+		}
+		loggingAspect.setMode(newMode);
+	}
+}
@@ -0,0 +1,190 @@
+package com.pluralsight.springbatch.patientbatchloader.batch;
+
+import java.util.List;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.ItemWriteListener;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.repeat.RepeatContext;
+import org.springframework.batch.repeat.context.RepeatContextSupport;
+import org.springframework.batch.repeat.policy.CompletionPolicySupport;
+import org.springframework.util.Assert;
+
+/**
+ * Completion policy that tunes the commit interval of a chunk oriented step at
+ * runtime. After every full chunk the measured items read per second is
+ * compared to the previous chunk: while throughput keeps improving the chunk
+ * size keeps moving in the same direction, otherwise the direction is
+ * reversed. A write
+ * that takes longer than the configured maximum latency always shrinks the
+ * chunk. The size never leaves the [minSize, maxSize] range.
+ *
+ * The policy has to be registered as a listener on the step as well so it can
+ * observe chunk and write timings. It is safe to use with a multi-threaded
+ * step: timings are kept per thread and each chunk captures its size when it
+ * starts.
+ *
+ * A chunk is full when it read as many items as its size, whether or not
+ * they were all written: items skipped or filtered along the way do not make
+ * it look like the end of the input.
+ */
+public class AdaptiveChunkSizePolicy extends CompletionPolicySupport
+        implements ChunkListener, ItemWriteListener<Object>, StepExecutionListener {
+
+    private static final Logger log = LoggerFactory.getLogger(AdaptiveChunkSizePolicy.class);
+
+    /**
+     * Throughput drops smaller than this fraction are treated as noise.
+     */
+    private static final double TOLERANCE = 0.05;
+
+    private final int initialSize;
+    private final int minSize;
+    private final int maxSize;
+    private final long maxWriteLatencyNanos;
+
+    private final ThreadLocal<ChunkTiming> timings = ThreadLocal.withInitial(ChunkTiming::new);
+
+    private LongSupplier nanoClock = System::nanoTime;
+
+    private volatile int chunkSize;
+    private int direction = 1;
+    private double lastThroughput;
+
+    public AdaptiveChunkSizePolicy(int initialSize, int minSize, int maxSize, long maxWriteLatencyMillis) {
+        Assert.isTrue(minSize > 0, "The minimum chunk size must be greater than zero");
+        Assert.isTrue(minSize <= maxSize, "The minimum chunk size must not exceed the maximum");
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.initialSize = clamp(initialSize);
+        this.maxWriteLatencyNanos = maxWriteLatencyMillis * 1_000_000L;
+        this.chunkSize = this.initialSize;
+    }
+
+    /**
+     * Replaces System.nanoTime, for tests.
+     */
+    void setNanoClock(LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * @return the commit interval the next chunk will use
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    @Override
+    public RepeatContext start(RepeatContext parent) {
+        ChunkSizeContext context = new ChunkSizeContext(parent, chunkSize);
+        timings.get().context = context;
+        return context;
+    }
+
+    @Override
+    public boolean isComplete(RepeatContext context) {
+        ChunkSizeContext chunkContext = (ChunkSizeContext) context;
+        return chunkContext.count >= chunkContext.size;
+    }
+
+    @Override
+    public void update(RepeatContext context) {
+        ((ChunkSizeContext) context).count++;
+    }
+
+    @Override
+    public synchronized void beforeStep(StepExecution stepExecution) {
+        chunkSize = initialSize;
+        direction = 1;
+        lastThroughput = 0;
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        log.debug("Step {} finished with an adaptive chunk size of {}", stepExecution.getStepName(), chunkSize);
+        return null;
+    }
+
+    @Override
+    public void beforeChunk(ChunkContext context) {
+        ChunkTiming timing = timings.get();
+        // a chunk retried after a rollback reuses its items and is not timed
+        timing.context = null;
+        timing.writeNanos = 0;
+        timing.chunkStart = nanoClock.getAsLong();
+    }
+
+    @Override
+    public void afterChunk(ChunkContext context) {
+        ChunkTiming timing = timings.get();
+        ChunkSizeContext chunk = timing.context;
+        long elapsed = nanoClock.getAsLong() - timing.chunkStart;
+        // a short chunk is the end of the input and says nothing about the size
+        if (chunk != null && chunk.count >= chunk.size && elapsed > 0) {
+            adapt(chunk.size, chunk.count * 1_000_000_000d / elapsed, timing.writeNanos);
+        }
+    }
+
+    @Override
+    public void afterChunkError(ChunkContext context) {
+    }
+
+    @Override
+    public void beforeWrite(List<? extends Object> items) {
+        timings.get().writeStart = nanoClock.getAsLong();
+    }
+
+    @Override
+    public void afterWrite(List<? extends Object> items) {
+        ChunkTiming timing = timings.get();
+        timing.writeNanos += nanoClock.getAsLong() - timing.writeStart;
+    }
+
+    @Override
+    public void onWriteError(Exception exception, List<? extends Object> items) {
+    }
+
+    private synchronized void adapt(int size, double throughput, long writeNanos) {
+        if (writeNanos > maxWriteLatencyNanos) {
+            direction = -1;
+        } else if (lastThroughput > 0 && throughput < lastThroughput * (1 - TOLERANCE)) {
+            direction = -direction;
+        }
+        lastThroughput = throughput;
+        int next = clamp(size + direction * Math.max(1, size / 4));
+        if (next != chunkSize) {
+            log.debug("Adjusting chunk size from {} to {} ({} items/s, write {} ms)",
+                chunkSize, next, (long) throughput, writeNanos / 1_000_000L);
+            chunkSize = next;
+        }
+    }
+
+    private int clamp(int size) {
+        return Math.max(minSize, Math.min(maxSize, size));
+    }
+
+    private static class ChunkSizeContext extends RepeatContextSupport {
+
+        private final int size;
+        private int count;
+
+        ChunkSizeContext(RepeatContext parent, int size) {
+            super(parent);
+            this.size = size;
+        }
+    }
+
+    private static class ChunkTiming {
+        private ChunkSizeContext context;
+        private long chunkStart;
+        private long writeStart;
+        private long writeNanos;
+    }
+}
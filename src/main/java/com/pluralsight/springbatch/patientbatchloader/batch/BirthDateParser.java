@@ -0,0 +1,102 @@
+package com.pluralsight.springbatch.patientbatchloader.batch;
+
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+
+import org.springframework.util.Assert;
+
+/**
+ * Parses the M/dd/yyyy birth dates of a patient file without going through a
+ * DateTimeFormatter. The digits are read straight from the text and the
+ * resulting dates are kept in a small direct mapped cache, so the many
+ * patients sharing a birth date share a single LocalDate instance as well.
+ *
+ * Accepts what DateTimeFormatter.ofPattern("M/dd/yyyy") accepted for a patient
+ * file: a one or two digit month, a two digit day and a four digit year.
+ * Thread-safe; the cache holds immutable entries and a lost update only costs
+ * a cache miss.
+ */
+public class BirthDateParser {
+
+    private static final int DEFAULT_CACHE_SIZE = 16 * 1024;
+
+    private final CachedDate[] cache;
+    private final int shift;
+
+    public BirthDateParser() {
+        this(DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * @param cacheSize number of cached dates, a power of two
+     */
+    public BirthDateParser(int cacheSize) {
+        Assert.isTrue(cacheSize > 1 && Integer.bitCount(cacheSize) == 1, "The cache size must be a power of two");
+        this.cache = new CachedDate[cacheSize];
+        this.shift = Integer.numberOfLeadingZeros(cacheSize) + 1;
+    }
+
+    /**
+     * @throws DateTimeParseException if the text is not an M/dd/yyyy date or
+     *         not a valid date
+     */
+    public LocalDate parse(String text) {
+        if (text == null) {
+            throw new DateTimeParseException("Birth date is missing", "", 0);
+        }
+        int monthDigits = text.length() - 8;
+        if ((monthDigits != 1 && monthDigits != 2)
+                || text.charAt(monthDigits) != '/' || text.charAt(monthDigits + 3) != '/') {
+            throw new DateTimeParseException("Birth date '" + text + "' is not formatted as M/dd/yyyy", text, 0);
+        }
+        int month = digits(text, 0, monthDigits);
+        int day = digits(text, monthDigits + 1, monthDigits + 3);
+        int year = digits(text, monthDigits + 4, monthDigits + 8);
+        if (month < 0 || day < 0 || year < 0) {
+            throw new DateTimeParseException("Birth date '" + text + "' is not formatted as M/dd/yyyy", text, 0);
+        }
+
+        int key = (year * 100 + month) * 100 + day;
+        int slot = (key * 0x9E3779B9) >>> shift;
+        CachedDate cached = cache[slot];
+        if (cached != null && cached.key == key) {
+            return cached.date;
+        }
+        LocalDate date;
+        try {
+            date = LocalDate.of(year, month, day);
+        } catch (DateTimeException e) {
+            throw new DateTimeParseException("Birth date '" + text + "' is not a valid date", text, 0, e);
+        }
+        cache[slot] = new CachedDate(key, date);
+        return date;
+    }
+
+    /**
+     * @return the value of the decimal digits in [start, end), or -1 if there
+     *         is anything else
+     */
+    private static int digits(String text, int start, int end) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static final class CachedDate {
+
+        private final int key;
+        private final LocalDate date;
+
+        CachedDate(int key, LocalDate date) {
+            this.key = key;
+            this.date = date;
+        }
+    }
+}
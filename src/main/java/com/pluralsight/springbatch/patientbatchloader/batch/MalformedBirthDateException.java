@@ -0,0 +1,20 @@
+package com.pluralsight.springbatch.patientbatchloader.batch;
+
+/**
+ * Thrown when the birth date of a patient record can not be parsed.
+ */
+public class MalformedBirthDateException extends MalformedPatientRecordException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String birthDate;
+
+    public MalformedBirthDateException(String sourceId, String birthDate, Throwable cause) {
+        super(sourceId, "Patient " + sourceId + " has a malformed birth date '" + birthDate + "'", cause);
+        this.birthDate = birthDate;
+    }
+
+    public String getBirthDate() {
+        return birthDate;
+    }
+}
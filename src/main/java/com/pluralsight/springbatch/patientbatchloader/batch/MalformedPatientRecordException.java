@@ -0,0 +1,25 @@
+package com.pluralsight.springbatch.patientbatchloader.batch;
+
+/**
+ * Thrown when a patient record read from the input file can not be turned
+ * into a patient. The step skips the record instead of failing the chunk.
+ */
+public class MalformedPatientRecordException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String sourceId;
+
+    public MalformedPatientRecordException(String sourceId, String message) {
+        this(sourceId, message, null);
+    }
+
+    public MalformedPatientRecordException(String sourceId, String message, Throwable cause) {
+        super(message, cause);
+        this.sourceId = sourceId;
+    }
+
+    public String getSourceId() {
+        return sourceId;
+    }
+}
@@ -0,0 +1,220 @@
+package com.pluralsight.springbatch.patientbatchloader.batch;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.ItemStreamSupport;
+import org.springframework.batch.item.file.FlatFileParseException;
+import org.springframework.batch.item.file.LineMapper;
+import org.springframework.util.Assert;
+
+import com.pluralsight.springbatch.patientbatchloader.domain.PatientRecord;
+
+/**
+ * Reads a patient file, or a byte range of it, through memory mapped windows
+ * of the file. Lines are split on the mapped bytes and a line is only decoded
+ * when it is handed to the line mapper, so there is no Reader, no char buffer
+ * and no system call per buffer refill in between.
+ *
+ * The byte offset of the next line is stored in the execution context, so a
+ * restart maps the file at the first line that was not committed instead of
+ * reading and discarding every line before it.
+ *
+ * Not thread-safe; to share an instance between threads wrap it in a
+ * SynchronizedItemStreamReader and turn off saveState.
+ */
+public class MappedPatientFileReader extends ItemStreamSupport implements ItemStreamReader<PatientRecord> {
+
+    private static final String POSITION = "position";
+
+    private static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private final Path file;
+    private final long startOffset;
+    private final long endOffset;
+    private final LineMapper<PatientRecord> lineMapper;
+
+    private int linesToSkip;
+    private boolean saveState = true;
+    private int windowSize = DEFAULT_WINDOW_SIZE;
+
+    private FileChannel channel;
+    private long size;
+    private long limit;
+    private MappedByteBuffer window;
+    private long windowStart;
+    private byte[] line = new byte[256];
+    private long position;
+    private int lineCount;
+
+    /**
+     * @param file the patient file
+     * @param startOffset offset of the first line to read
+     * @param endOffset offset after the last line to read, anything past the
+     *        end of the file reads up to the end of the file
+     * @param lineMapper maps a decoded line onto a record
+     */
+    public MappedPatientFileReader(Path file, long startOffset, long endOffset, LineMapper<PatientRecord> lineMapper) {
+        Assert.isTrue(startOffset <= endOffset, "The start offset must not be after the end offset");
+        this.file = file;
+        this.startOffset = startOffset;
+        this.endOffset = endOffset;
+        this.lineMapper = lineMapper;
+    }
+
+    /**
+     * Number of lines to skip at the start offset, e.g. a header line. Lines
+     * are only skipped on a fresh start, never on a restart.
+     */
+    public void setLinesToSkip(int linesToSkip) {
+        this.linesToSkip = linesToSkip;
+    }
+
+    /**
+     * Whether the position is stored in the execution context. Defaults to
+     * true.
+     */
+    public void setSaveState(boolean saveState) {
+        this.saveState = saveState;
+    }
+
+    /**
+     * Number of bytes mapped at a time, which bounds the length of a line.
+     * Defaults to 64MB.
+     */
+    public void setWindowSize(int windowSize) {
+        Assert.isTrue(windowSize > 0, "The window size must be greater than zero");
+        this.windowSize = windowSize;
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        String key = getExecutionContextKey(POSITION);
+        boolean restart = saveState && executionContext.containsKey(key);
+        position = restart ? executionContext.getLong(key) : startOffset;
+        lineCount = 0;
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            size = channel.size();
+            limit = Math.min(endOffset, size);
+            window = null;
+            if (!restart) {
+                for (int i = 0; i < linesToSkip && nextLine() >= 0; i++) {
+                    // the skipped lines are not mapped
+                }
+            }
+        } catch (IOException e) {
+            throw new ItemStreamException("Unable to open " + file + " at offset " + position, e);
+        }
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        if (saveState) {
+            executionContext.putLong(getExecutionContextKey(POSITION), position);
+        }
+    }
+
+    @Override
+    public void close() throws ItemStreamException {
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            throw new ItemStreamException("Unable to close " + file, e);
+        } finally {
+            channel = null;
+            window = null;
+        }
+    }
+
+    @Override
+    public PatientRecord read() throws Exception {
+        int length = nextLine();
+        if (length < 0) {
+            return null;
+        }
+        if (length > 0 && line[length - 1] == '\r') {
+            length--;
+        }
+        return lineMapper.mapLine(new String(line, 0, length, StandardCharsets.UTF_8), ++lineCount);
+    }
+
+    /**
+     * Copies the line at the current position into the line buffer and moves
+     * past its line break.
+     *
+     * @return the length of the line including a trailing carriage return, or
+     *         -1 if there are no more lines in the range
+     */
+    private int nextLine() throws IOException {
+        if (position >= limit) {
+            return -1;
+        }
+        if (window == null || position >= windowStart + window.limit()) {
+            map(position);
+        }
+        int from = (int) (position - windowStart);
+        int end = indexOfLineBreak(from);
+        if (end < 0 && windowStart + window.limit() < size) {
+            // the line crosses the end of the window, map again starting at the line
+            map(position);
+            from = 0;
+            end = indexOfLineBreak(from);
+            if (end < 0 && window.limit() < size - windowStart) {
+                // moves past the line first, so that skipping it goes on with the next one
+                long offset = position;
+                skipLine();
+                throw new FlatFileParseException("Line at offset " + offset + " is longer than the "
+                    + windowSize + " byte mapping window", "", ++lineCount);
+            }
+        }
+        int length = (end < 0 ? window.limit() : end) - from;
+        if (length > line.length) {
+            line = Arrays.copyOf(line, Math.max(length, line.length * 2));
+        }
+        window.position(from);
+        window.get(line, 0, length);
+        position += end < 0 ? length : length + 1;
+        return length;
+    }
+
+    /**
+     * Moves past the line break ending the line the window starts in, or to
+     * the limit of the range if the file has none after it.
+     */
+    private void skipLine() throws IOException {
+        while (windowStart + window.limit() < size) {
+            map(windowStart + window.limit());
+            int end = indexOfLineBreak(0);
+            if (end >= 0) {
+                position = windowStart + end + 1;
+                return;
+            }
+        }
+        position = limit;
+    }
+
+    private int indexOfLineBreak(int from) {
+        for (int i = from, n = window.limit(); i < n; i++) {
+            if (window.get(i) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void map(long offset) throws IOException {
+        windowStart = offset;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(windowSize, size - offset));
+    }
+}
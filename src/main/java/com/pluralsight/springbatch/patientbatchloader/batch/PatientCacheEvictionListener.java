@@ -0,0 +1,74 @@
+package com.pluralsight.springbatch.patientbatchloader.batch;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
+import org.hibernate.action.internal.BulkOperationCleanupAction;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.persister.entity.Queryable;
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.orm.jpa.EntityManagerFactoryUtils;
+
+import com.pluralsight.springbatch.patientbatchloader.domain.PatientEntity;
+
+/**
+ * Keeps the second-level cache in step with the chunks written past
+ * Hibernate, by the JDBC writer or the staging merge. Hibernate cannot tell
+ * which patients such a chunk changes, so every chunk is registered with the
+ * Hibernate session of its transaction as a bulk operation on the patient
+ * table, as a native query synchronized on PatientEntity would be: the
+ * cached query results are invalidated and the patient region is cleared as
+ * the chunk transaction completes, whether it commits or rolls back.
+ *
+ * A patient loaded before a chunk commits and cached after its region was
+ * cleared can still be cached as it was; the region is evicted again once
+ * the step is over, else the entry expires with the time to live of the
+ * cache.
+ */
+public class PatientCacheEvictionListener implements ChunkListener, StepExecutionListener {
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final Cache cache;
+
+    public PatientCacheEvictionListener(EntityManagerFactory entityManagerFactory) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.cache = entityManagerFactory.unwrap(SessionFactory.class).getCache();
+    }
+
+    @Override
+    public void beforeChunk(ChunkContext context) {
+        EntityManager entityManager = EntityManagerFactoryUtils.getTransactionalEntityManager(entityManagerFactory);
+        if (entityManager == null) {
+            throw new IllegalStateException("No JPA transaction to register the chunk with, "
+                + "the step has to run with the batchTransactionManager");
+        }
+        SessionImplementor session = entityManager.unwrap(SessionImplementor.class);
+        Queryable persister = (Queryable) session.getFactory().getMetamodel().entityPersister(PatientEntity.class);
+        session.getActionQueue().addAction(new BulkOperationCleanupAction(session, persister));
+    }
+
+    @Override
+    public void afterChunk(ChunkContext context) {
+    }
+
+    @Override
+    public void afterChunkError(ChunkContext context) {
+    }
+
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        cache.evictEntityRegion(PatientEntity.class);
+        cache.evictQueryRegions();
+        return null;
+    }
+}
@@ -0,0 +1,54 @@
+package com.pluralsight.springbatch.patientbatchloader.batch;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.item.ItemStreamException;
+
+import com.pluralsight.springbatch.patientbatchloader.domain.PatientRecord;
+
+/**
+ * Tells a step which records of its file to load, according to the duplicate
+ * index of the file. The index is acquired before the step and released after
+ * it; the records the step drops are counted as filtered.
+ */
+public class PatientDuplicateFilter implements StepExecutionListener {
+
+    private final PatientRecordDeduplicator deduplicator;
+    private final Path file;
+
+    private volatile PatientDuplicateIndex index;
+
+    public PatientDuplicateFilter(PatientRecordDeduplicator deduplicator, Path file) {
+        this.deduplicator = deduplicator;
+        this.file = file;
+    }
+
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+        try {
+            index = deduplicator.acquire(stepExecution.getJobExecutionId(), file);
+        } catch (IOException e) {
+            throw new ItemStreamException("Unable to index the source ids of " + file, e);
+        }
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        if (index != null) {
+            index = null;
+            deduplicator.release(stepExecution.getJobExecutionId(), file);
+        }
+        return null;
+    }
+
+    /**
+     * @return whether the record is the one of its source id to load
+     */
+    public boolean isLoaded(PatientRecord record) {
+        return index.isLoaded(record);
+    }
+}
@@ -0,0 +1,294 @@
+package com.pluralsight.springbatch.patientbatchloader.batch;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.function.Function;
+
+import org.springframework.batch.item.file.LineMapper;
+import org.springframework.util.Assert;
+
+import com.pluralsight.springbatch.patientbatchloader.domain.PatientEntity;
+import com.pluralsight.springbatch.patientbatchloader.domain.PatientRecord;
+
+/**
+ * Tells, for every source id of a patient file, which of its records is the
+ * one to load. The index is built by reading the whole file once; the records
+ * that are not the one to load are then filtered out while the file is loaded.
+ *
+ * A record is recognized by a 64 bit fingerprint of its fields rather than by
+ * its position in the file, so the index answers the same for any reader, any
+ * partition and after a restart. Copies identical to the record to load are
+ * loaded as well; they are harmless, as they write the same values.
+ *
+ * Source ids are kept as 128 bit keys in a primitive open addressing table,
+ * 24 bytes a slot with no object per key: a source id shaped like a UUID is
+ * its own key, any other is hashed with MurmurHash3. The table holds at most
+ * maxKeys source ids; the source ids beyond are not indexed and all of their
+ * records are loaded, as they are without an index. Lines the line mapper or
+ * the record mapper rejects are not indexed; they are skipped when loaded.
+ */
+public class PatientDuplicateIndex {
+
+    /**
+     * Which record of a source id is loaded.
+     */
+    public enum Rule {
+        /**
+         * The last record, as if every record was applied in file order.
+         */
+        LAST,
+        /**
+         * The first record; later records of the source id are ignored.
+         */
+        FIRST
+    }
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private final Rule rule;
+    private final int maxKeys;
+
+    // slot i is keys[2i], keys[2i + 1] and fingerprints[i]; a zero fingerprint is a free slot
+    private long[] keys;
+    private long[] fingerprints;
+    private int size;
+    private long records;
+    private long unindexed;
+
+    public PatientDuplicateIndex(Rule rule, int maxKeys) {
+        Assert.isTrue(maxKeys > 0, "The number of keys must be greater than zero");
+        this.rule = rule;
+        this.maxKeys = maxKeys;
+        this.keys = new long[2 * INITIAL_CAPACITY];
+        this.fingerprints = new long[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Indexes every valid record of the file, past its first linesToSkip lines.
+     */
+    public static PatientDuplicateIndex build(Path file, int linesToSkip, LineMapper<PatientRecord> lineMapper,
+            Function<PatientRecord, PatientEntity> recordMapper, Rule rule, int maxKeys) throws IOException {
+        PatientDuplicateIndex index = new PatientDuplicateIndex(rule, maxKeys);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(PatientFileCompression.open(file),
+                StandardCharsets.UTF_8), PatientFileCompression.BUFFER_SIZE)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (lineNumber <= linesToSkip || line.isEmpty()) {
+                    continue;
+                }
+                PatientRecord record;
+                try {
+                    record = lineMapper.mapLine(line, lineNumber);
+                    recordMapper.apply(record);
+                } catch (Exception e) {
+                    continue;
+                }
+                index.add(record);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Indexes a record read after all the records already indexed.
+     */
+    public void add(PatientRecord record) {
+        records++;
+        long[] key = key(record.getSourceId());
+        long fingerprint = fingerprint(record);
+        int slot = find(key[0], key[1]);
+        if (fingerprints[slot] != 0) {
+            if (rule == Rule.LAST) {
+                fingerprints[slot] = fingerprint;
+            }
+            return;
+        }
+        if (size >= maxKeys) {
+            unindexed++;
+            return;
+        }
+        if ((size + 1) * 4L > fingerprints.length * 3L) {
+            grow();
+            slot = find(key[0], key[1]);
+        }
+        keys[2 * slot] = key[0];
+        keys[2 * slot + 1] = key[1];
+        fingerprints[slot] = fingerprint;
+        size++;
+    }
+
+    /**
+     * @return whether the record is the one to load for its source id
+     */
+    public boolean isLoaded(PatientRecord record) {
+        long[] key = key(record.getSourceId());
+        long fingerprint = fingerprints[find(key[0], key[1])];
+        return fingerprint == 0 || fingerprint == fingerprint(record);
+    }
+
+    /**
+     * @return the number of source ids indexed
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of records indexed, duplicates included
+     */
+    public long getRecords() {
+        return records;
+    }
+
+    /**
+     * @return the number of records whose source id did not fit in the index
+     */
+    public long getUnindexed() {
+        return unindexed;
+    }
+
+    private int find(long high, long low) {
+        int mask = fingerprints.length - 1;
+        int slot = (int) fmix(high ^ low) & mask;
+        while (fingerprints[slot] != 0 && (keys[2 * slot] != high || keys[2 * slot + 1] != low)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        long[] oldFingerprints = fingerprints;
+        keys = new long[oldKeys.length * 2];
+        fingerprints = new long[oldFingerprints.length * 2];
+        for (int i = 0; i < oldFingerprints.length; i++) {
+            if (oldFingerprints[i] != 0) {
+                int slot = find(oldKeys[2 * i], oldKeys[2 * i + 1]);
+                keys[2 * slot] = oldKeys[2 * i];
+                keys[2 * slot + 1] = oldKeys[2 * i + 1];
+                fingerprints[slot] = oldFingerprints[i];
+            }
+        }
+    }
+
+    static long[] key(String sourceId) {
+        if (sourceId.length() == 36 && sourceId.charAt(8) == '-' && sourceId.charAt(13) == '-'
+                && sourceId.charAt(18) == '-' && sourceId.charAt(23) == '-') {
+            long[] parts = {hex(sourceId, 0, 8), hex(sourceId, 9, 13), hex(sourceId, 14, 18),
+                hex(sourceId, 19, 23), hex(sourceId, 24, 30), hex(sourceId, 30, 36)};
+            if (parts[0] >= 0 && parts[1] >= 0 && parts[2] >= 0 && parts[3] >= 0 && parts[4] >= 0
+                    && parts[5] >= 0) {
+                return new long[] {parts[0] << 32 | parts[1] << 16 | parts[2],
+                    parts[3] << 48 | parts[4] << 24 | parts[5]};
+            }
+        }
+        return murmur3(sourceId);
+    }
+
+    /**
+     * @return the value of the lower case hex digits from start to end, at
+     *         most eight, or -1 if one is not a lower case hex digit. Source
+     *         ids differing in case are different patients, so an upper case
+     *         UUID is hashed instead.
+     */
+    private static long hex(String value, int start, int end) {
+        long result = 0;
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            int digit;
+            if (c >= '0' && c <= '9') {
+                digit = c - '0';
+            } else if (c >= 'a' && c <= 'f') {
+                digit = c - 'a' + 10;
+            } else {
+                return -1;
+            }
+            result = result << 4 | digit;
+        }
+        return result;
+    }
+
+    static long fingerprint(PatientRecord record) {
+        StringBuilder fields = new StringBuilder(160);
+        for (String field : new String[] {record.getSourceId(), record.getFirstName(), record.getMiddleInitial(),
+                record.getLastName(), record.getEmailAddress(), record.getPhoneNumber(), record.getStreet(),
+                record.getCity(), record.getState(), record.getZip(), record.getBirthDate(), record.getAction(),
+                record.getSsn()}) {
+            if (field == null) {
+                fields.append('\u0000');
+            } else {
+                fields.append(field);
+            }
+            fields.append('\u001f');
+        }
+        // never zero, which marks a free slot
+        return murmur3(fields)[0] | 1;
+    }
+
+    /**
+     * MurmurHash3 x64 128 of the UTF-16 code units of the value.
+     */
+    static long[] murmur3(CharSequence value) {
+        int length = value.length();
+        long h1 = 0;
+        long h2 = 0;
+        int i = 0;
+        for (; i + 8 <= length; i += 8) {
+            h1 ^= mixK1(chars(value, i, 4));
+            h1 = Long.rotateLeft(h1, 27) + h2;
+            h1 = h1 * 5 + 0x52dce729;
+            h2 ^= mixK2(chars(value, i + 4, 4));
+            h2 = Long.rotateLeft(h2, 31) + h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+        int remaining = length - i;
+        if (remaining > 4) {
+            h2 ^= mixK2(chars(value, i + 4, remaining - 4));
+        }
+        if (remaining > 0) {
+            h1 ^= mixK1(chars(value, i, Math.min(remaining, 4)));
+        }
+        h1 ^= length * 2L;
+        h2 ^= length * 2L;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix(h1);
+        h2 = fmix(h2);
+        h1 += h2;
+        h2 += h1;
+        return new long[] {h1, h2};
+    }
+
+    private static long chars(CharSequence value, int start, int count) {
+        long result = 0;
+        for (int i = 0; i < count; i++) {
+            result |= (long) value.charAt(start + i) << (16 * i);
+        }
+        return result;
+    }
+
+    private static long mixK1(long k1) {
+        return Long.rotateLeft(k1 * C1, 31) * C2;
+    }
+
+    private static long mixK2(long k2) {
+        return Long.rotateLeft(k2 * C2, 33) * C1;
+    }
+
+    private static long fmix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
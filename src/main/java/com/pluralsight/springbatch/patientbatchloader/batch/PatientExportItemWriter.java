@@ -0,0 +1,202 @@
+package com.pluralsight.springbatch.patientbatchloader.batch;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamWriter;
+import org.springframework.util.Assert;
+
+import com.pluralsight.springbatch.patientbatchloader.domain.PatientEntity;
+
+/**
+ * Writes patients to a file in the 13 column layout of the input files, so
+ * an export can be loaded again. The file is gzip compressed when its name
+ * ends with .gz.
+ *
+ * Lines are formatted into a single reused StringBuilder and go through a
+ * BufferedWriter of bufferSize chars, so memory does not grow with the number
+ * of patients. The file is written under a .part name, which a
+ * {@link PatientExportPublishTasklet} renames in a step of its own once this
+ * step completed; a failed step deletes it. The writer keeps no restart
+ * state, so a restarted export starts over.
+ */
+public class PatientExportItemWriter implements ItemStreamWriter<PatientEntity>, StepExecutionListener {
+
+    private static final String HEADER = "source_id,first_name,middle_initial,last_name,email_address,"
+        + "phone_number,street,city,state,zip,birth_date,action,ssn";
+
+    private static final String PART_SUFFIX = ".part";
+
+    private final Logger log = LoggerFactory.getLogger(PatientExportItemWriter.class);
+
+    private final Path file;
+    private final Path partFile;
+    private final int bufferSize;
+
+    private final StringBuilder line = new StringBuilder(256);
+    private Writer writer;
+    private long written;
+
+    public PatientExportItemWriter(Path file, int bufferSize) {
+        Assert.isTrue(bufferSize > 0, "The buffer size must be greater than zero");
+        this.file = file;
+        this.partFile = partFile(file);
+        this.bufferSize = bufferSize;
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        try {
+            if (partFile.getParent() != null) {
+                Files.createDirectories(partFile.getParent());
+            }
+            OutputStream out = Files.newOutputStream(partFile);
+            if (file.getFileName().toString().endsWith(".gz")) {
+                out = new GZIPOutputStream(out, bufferSize);
+            }
+            writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), bufferSize);
+            writer.write(HEADER);
+            writer.write('\n');
+        } catch (IOException e) {
+            throw new ItemStreamException("Unable to create " + partFile, e);
+        }
+        written = 0;
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+    }
+
+    @Override
+    public void write(List<? extends PatientEntity> items) throws Exception {
+        for (PatientEntity patient : items) {
+            line.setLength(0);
+            append(patient);
+            line.append('\n');
+            writer.append(line);
+        }
+        written += items.size();
+    }
+
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+    }
+
+    /**
+     * Finishes the file when the step completed. Runs before the step closes
+     * its streams, so close only has to clean up after a failure. A file that
+     * cannot be finished fails the step.
+     */
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        if (stepExecution.getStatus() != BatchStatus.COMPLETED || writer == null) {
+            return null;
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            log.error("Unable to write {}", partFile, e);
+            stepExecution.setStatus(BatchStatus.FAILED);
+            stepExecution.addFailureException(e);
+            deletePartFile();
+            return ExitStatus.FAILED.addExitDescription(e);
+        } finally {
+            writer = null;
+        }
+        log.info("{} patients written to {}", written, partFile);
+        return null;
+    }
+
+    @Override
+    public void close() throws ItemStreamException {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            log.warn("Unable to close {}", partFile, e);
+        } finally {
+            writer = null;
+        }
+        deletePartFile();
+    }
+
+    /**
+     * @return the file the export of file is written to until it is published
+     */
+    static Path partFile(Path file) {
+        return file.resolveSibling(file.getFileName() + PART_SUFFIX);
+    }
+
+    private void deletePartFile() {
+        try {
+            Files.deleteIfExists(partFile);
+        } catch (IOException e) {
+            log.warn("Unable to delete {}", partFile, e);
+        }
+    }
+
+    private void append(PatientEntity patient) {
+        append(patient.getSourceId()).append(',');
+        append(patient.getFirstName()).append(',');
+        append(patient.getMiddleInitial()).append(',');
+        append(patient.getLastName()).append(',');
+        append(patient.getEmailAddress()).append(',');
+        append(patient.getPhoneNumber()).append(',');
+        append(patient.getStreet()).append(',');
+        append(patient.getCity()).append(',');
+        append(patient.getState()).append(',');
+        append(patient.getZipCode()).append(',');
+        LocalDate birthDate = patient.getBirthDate();
+        if (birthDate != null) {
+            // M/dd/yyyy, as the BirthDateParser reads it
+            line.append(birthDate.getMonthValue()).append('/');
+            if (birthDate.getDayOfMonth() < 10) {
+                line.append('0');
+            }
+            line.append(birthDate.getDayOfMonth()).append('/').append(birthDate.getYear());
+        }
+        line.append(',');
+        if (patient.getAction() != null) {
+            line.append(patient.getAction().getCode());
+        }
+        line.append(',');
+        append(patient.getSocialSecurityNumber());
+    }
+
+    private StringBuilder append(String value) {
+        if (value == null) {
+            return line;
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0) {
+            return line.append(value);
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                line.append('"');
+            }
+            line.append(c == '\r' || c == '\n' ? ' ' : c);
+        }
+        return line.append('"');
+    }
+}
@@ -0,0 +1,49 @@
+package com.pluralsight.springbatch.patientbatchloader.batch;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.repeat.RepeatStatus;
+
+/**
+ * Last step of the export job. Renames the .part file the
+ * {@link PatientExportItemWriter} wrote to its final name, so readers of the
+ * export path never see a partial export. When the rename fails the .part
+ * file is deleted and the step fails, which leaves the job instance
+ * restartable; the restart exports the table again.
+ */
+public class PatientExportPublishTasklet implements Tasklet {
+
+    private static final Logger log = LoggerFactory.getLogger(PatientExportPublishTasklet.class);
+
+    private final Path file;
+    private final Path partFile;
+
+    public PatientExportPublishTasklet(Path file) {
+        this.file = file;
+        this.partFile = PatientExportItemWriter.partFile(file);
+    }
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+        try {
+            Files.move(partFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            try {
+                Files.deleteIfExists(partFile);
+            } catch (IOException deleteFailure) {
+                e.addSuppressed(deleteFailure);
+            }
+            throw new IOException("Unable to publish " + file, e);
+        }
+        log.info("Published {}", file);
+        return RepeatStatus.FINISHED;
+    }
+}
@@ -0,0 +1,28 @@
+package com.pluralsight.springbatch.patientbatchloader.batch;
+
+/**
+ * Thrown when a value of a patient record does not fit its column of the
+ * patient table. Caught while processing, so the record is skipped instead of
+ * failing the write of its whole chunk.
+ */
+public class PatientFieldTooLongException extends MalformedPatientRecordException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String column;
+    private final int maxLength;
+
+    public PatientFieldTooLongException(String sourceId, String column, int maxLength) {
+        super(sourceId, "Patient " + sourceId + " has a " + column + " longer than " + maxLength + " characters");
+        this.column = column;
+        this.maxLength = maxLength;
+    }
+
+    public String getColumn() {
+        return column;
+    }
+
+    public int getMaxLength() {
+        return maxLength;
+    }
+}
@@ -0,0 +1,131 @@
+package com.pluralsight.springbatch.patientbatchloader.batch;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.springframework.core.io.PathResource;
+import org.springframework.core.io.Resource;
+
+/**
+ * Compression of a patient file, told by its extension or, failing that, by
+ * its first bytes. A compressed file is decompressed while it is read; it is
+ * never written to disk uncompressed.
+ *
+ * A compressed file can not be mapped or read from an arbitrary byte, so
+ * offsets into it, such as the restart position of a reader, are offsets into
+ * the decompressed data. Reaching one means decompressing everything before
+ * it, which is still far cheaper than loading the patients it holds.
+ *
+ * A zip archive is expected to hold the patient file as its only entry; the
+ * first entry that is not a directory is read.
+ */
+public enum PatientFileCompression {
+
+    NONE,
+    GZIP,
+    ZIP;
+
+    /**
+     * Size of the buffers in front of and behind the decompressor.
+     */
+    public static final int BUFFER_SIZE = 256 * 1024;
+
+    public boolean isCompressed() {
+        return this != NONE;
+    }
+
+    public static PatientFileCompression of(Path file) throws IOException {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        if (name.endsWith(".gz")) {
+            return GZIP;
+        }
+        if (name.endsWith(".zip")) {
+            return ZIP;
+        }
+        byte[] magic = new byte[4];
+        int read = 0;
+        try (InputStream input = Files.newInputStream(file)) {
+            int n;
+            while (read < magic.length && (n = input.read(magic, read, magic.length - read)) > 0) {
+                read += n;
+            }
+        }
+        if (read >= 2 && (magic[0] & 0xff) == 0x1f && (magic[1] & 0xff) == 0x8b) {
+            return GZIP;
+        }
+        if (read == 4 && magic[0] == 'P' && magic[1] == 'K' && magic[2] == 3 && magic[3] == 4) {
+            return ZIP;
+        }
+        return NONE;
+    }
+
+    /**
+     * @return a buffered stream of the decompressed content of the file
+     */
+    public static InputStream open(Path file) throws IOException {
+        return of(file).decompress(file);
+    }
+
+    /**
+     * @return a resource of the file whose input stream is decompressed
+     */
+    public static Resource resource(Path file) {
+        return new PathResource(file) {
+            @Override
+            public InputStream getInputStream() throws IOException {
+                return open(file);
+            }
+        };
+    }
+
+    private InputStream decompress(Path file) throws IOException {
+        InputStream input = new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE);
+        try {
+            switch (this) {
+                case GZIP:
+                    return new BufferedInputStream(new GZIPInputStream(input, BUFFER_SIZE), BUFFER_SIZE);
+                case ZIP:
+                    ZipInputStream zip = new ZipInputStream(input);
+                    ZipEntry entry;
+                    while ((entry = zip.getNextEntry()) != null && entry.isDirectory()) {
+                        // look for the first file
+                    }
+                    if (entry == null) {
+                        throw new IOException("Zip archive " + file + " holds no file");
+                    }
+                    return new BufferedInputStream(zip, BUFFER_SIZE);
+                default:
+                    return input;
+            }
+        } catch (IOException | RuntimeException e) {
+            input.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads and discards count bytes of the input.
+     *
+     * @throws IOException if the input ends before
+     */
+    static void skipFully(InputStream input, long count) throws IOException {
+        long remaining = count;
+        while (remaining > 0) {
+            long skipped = input.skip(remaining);
+            if (skipped <= 0) {
+                if (input.read() == -1) {
+                    throw new IOException("Input ended " + remaining + " bytes before offset " + count);
+                }
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+    }
+}
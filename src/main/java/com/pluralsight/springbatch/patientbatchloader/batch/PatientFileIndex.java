@@ -0,0 +1,136 @@
+package com.pluralsight.springbatch.patientbatchloader.batch;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.springframework.util.Assert;
+
+/**
+ * Sparse line index of a patient file, built by the {@link PatientFileValidator}.
+ * It holds the byte offset of every n-th data line and the number of data
+ * lines, so a file can be split into ranges of an exact number of lines
+ * without scanning it for line breaks again.
+ *
+ * Line numbers are zero based and do not count the header lines. The index is
+ * kept in the job execution context, hence the bean style accessors.
+ *
+ * The size and modification time of the file on disk are stamped on the
+ * index, so that an index that outlived its file, e.g. across a restart, is
+ * told apart. For a compressed file the file size is the decompressed size.
+ */
+public class PatientFileIndex {
+
+    /**
+     * Job execution context key of the index of the input file.
+     */
+    public static final String CONTEXT_KEY = "patientFileIndex";
+
+    private long lineCount;
+    private long fileSize;
+    private long sourceSize;
+    private long lastModified;
+    private long[] lines = new long[0];
+    private long[] offsets = new long[0];
+
+    public PatientFileIndex() {
+    }
+
+    public PatientFileIndex(long lineCount, long fileSize, long[] lines, long[] offsets) {
+        Assert.isTrue(lines.length == offsets.length, "Every indexed line needs an offset");
+        this.lineCount = lineCount;
+        this.fileSize = fileSize;
+        this.lines = lines;
+        this.offsets = offsets;
+    }
+
+    /**
+     * @return the offset of the indexed line closest to the given line, or the
+     *         file size when the end of the data is closer
+     */
+    public long nearestOffset(long line) {
+        int i = Arrays.binarySearch(lines, line);
+        if (i >= 0) {
+            return offsets[i];
+        }
+        int next = -i - 1;
+        long nextLine = next < lines.length ? lines[next] : lineCount;
+        long nextOffset = next < lines.length ? offsets[next] : fileSize;
+        if (next == 0 || nextLine - line < line - lines[next - 1]) {
+            return nextOffset;
+        }
+        return offsets[next - 1];
+    }
+
+    /**
+     * Records the size and modification time of the file as it is on disk.
+     */
+    public void stamp(Path file) throws IOException {
+        this.sourceSize = Files.size(file);
+        this.lastModified = Files.getLastModifiedTime(file).toMillis();
+    }
+
+    /**
+     * @return whether the file on disk still has the size and modification
+     *         time stamped on the index
+     */
+    public boolean isCurrent(Path file) throws IOException {
+        return Files.size(file) == sourceSize && Files.getLastModifiedTime(file).toMillis() == lastModified;
+    }
+
+    /**
+     * @return the offset of the first data line
+     */
+    public long dataStart() {
+        return offsets.length > 0 ? offsets[0] : fileSize;
+    }
+
+    public long getLineCount() {
+        return lineCount;
+    }
+
+    public void setLineCount(long lineCount) {
+        this.lineCount = lineCount;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    public void setFileSize(long fileSize) {
+        this.fileSize = fileSize;
+    }
+
+    public long getSourceSize() {
+        return sourceSize;
+    }
+
+    public void setSourceSize(long sourceSize) {
+        this.sourceSize = sourceSize;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public void setLastModified(long lastModified) {
+        this.lastModified = lastModified;
+    }
+
+    public long[] getLines() {
+        return lines;
+    }
+
+    public void setLines(long[] lines) {
+        this.lines = lines;
+    }
+
+    public long[] getOffsets() {
+        return offsets;
+    }
+
+    public void setOffsets(long[] offsets) {
+        this.offsets = offsets;
+    }
+}
@@ -0,0 +1,237 @@
+package com.pluralsight.springbatch.patientbatchloader.batch;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+
+/**
+ * Splits a patient file into byte ranges of roughly equal size. Every range
+ * starts at the beginning of a line and ends right after a line break, so each
+ * partition can be read on its own by a {@link PatientFileRangeReader}. The
+ * header lines are never part of a range.
+ *
+ * Given the {@link PatientFileIndex} of the file, the ranges are cut at the
+ * indexed lines closest to an even split of the lines instead, without
+ * reading the file. They are balanced to within the index interval.
+ *
+ * A compressed file has no byte ranges to seek to, only offsets into its
+ * decompressed data. With an index it is cut on those; every partition then
+ * decompresses the file up to its range. Without an index it is one
+ * partition, as finding line breaks would mean decompressing it all.
+ *
+ * An index is only used while the file on disk still has the size and
+ * modification time stamped on it. A stale index of a plain file is dropped
+ * for a scan; that of a compressed file is rebuilt by decompressing it once,
+ * as its decompressed offsets cannot be found otherwise.
+ */
+public class PatientFilePartitioner implements Partitioner {
+
+    /**
+     * Execution context key of the first byte of a partition.
+     */
+    public static final String START_OFFSET = "startOffset";
+
+    /**
+     * Execution context key of the byte following the last line of a partition.
+     */
+    public static final String END_OFFSET = "endOffset";
+
+    private static final Logger log = LoggerFactory.getLogger(PatientFilePartitioner.class);
+
+    private static final int SCAN_BUFFER_SIZE = 8 * 1024;
+
+    private final Path file;
+    private final int linesToSkip;
+
+    private PatientFileIndex index;
+    private int indexInterval = 10_000;
+
+    public PatientFilePartitioner(Path file, int linesToSkip) {
+        this.file = file;
+        this.linesToSkip = linesToSkip;
+    }
+
+    /**
+     * @param index the index of the file, or null to scan for line breaks
+     */
+    public void setIndex(PatientFileIndex index) {
+        this.index = index;
+    }
+
+    /**
+     * @param indexInterval the number of lines between two indexed lines of an
+     *        index rebuilt for a compressed file
+     */
+    public void setIndexInterval(int indexInterval) {
+        this.indexInterval = indexInterval;
+    }
+
+    @Override
+    public Map<String, ExecutionContext> partition(int gridSize) {
+        Map<String, ExecutionContext> partitions = new HashMap<>();
+        try {
+            boolean compressed = PatientFileCompression.of(file).isCompressed();
+            // an index of another version of the file is of no use
+            if (index != null && !index.isCurrent(file)) {
+                log.info("The index of {} is stale, {}", file, compressed ? "rebuilding it" : "scanning the file");
+                index = compressed ? index() : null;
+            }
+            if (compressed) {
+                return partitionCompressed(gridSize);
+            }
+        } catch (IOException e) {
+            throw new ItemStreamException("Unable to partition " + file, e);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (index != null) {
+                return partitionByLines(gridSize, size);
+            }
+            long dataStart = 0;
+            for (int i = 0; i < linesToSkip; i++) {
+                dataStart = nextLineStart(channel, dataStart + 1, size);
+            }
+            long start = dataStart;
+            for (int i = 0; i < gridSize && start < size; i++) {
+                long target = dataStart + (size - dataStart) * (i + 1) / gridSize;
+                long end = i == gridSize - 1 ? size : nextLineStart(channel, Math.max(start + 1, target), size);
+                ExecutionContext context = new ExecutionContext();
+                context.putLong(START_OFFSET, start);
+                context.putLong(END_OFFSET, end);
+                partitions.put("partition" + i, context);
+                start = end;
+            }
+        } catch (IOException e) {
+            throw new ItemStreamException("Unable to partition " + file, e);
+        }
+        return partitions;
+    }
+
+    private Map<String, ExecutionContext> partitionCompressed(int gridSize) throws IOException {
+        if (index != null) {
+            return partitionByLines(gridSize, index.getFileSize());
+        }
+        long dataStart = 0;
+        try (InputStream input = PatientFileCompression.open(file)) {
+            int b;
+            for (int lines = 0; lines < linesToSkip && (b = input.read()) != -1; ) {
+                dataStart++;
+                if (b == '\n') {
+                    lines++;
+                }
+            }
+        }
+        Map<String, ExecutionContext> partitions = new HashMap<>();
+        ExecutionContext context = new ExecutionContext();
+        context.putLong(START_OFFSET, dataStart);
+        context.putLong(END_OFFSET, Long.MAX_VALUE);
+        partitions.put("partition0", context);
+        return partitions;
+    }
+
+    /**
+     * Indexes the decompressed data of the file, every indexInterval-th line.
+     */
+    private PatientFileIndex index() throws IOException {
+        // stamped before reading, as the validator does
+        PatientFileIndex stamp = new PatientFileIndex();
+        stamp.stamp(file);
+        byte[] buffer = new byte[PatientFileCompression.BUFFER_SIZE];
+        long[] lines = new long[16];
+        long[] offsets = new long[16];
+        int indexSize = 0;
+        long lineCount = 0;
+        long offset = 0;
+        int skipped = 0;
+        boolean lineStart = true;
+        try (InputStream input = PatientFileCompression.open(file)) {
+            int read;
+            while ((read = input.read(buffer)) > 0) {
+                for (int i = 0; i < read; i++, offset++) {
+                    byte b = buffer[i];
+                    if (skipped < linesToSkip) {
+                        if (b == '\n') {
+                            skipped++;
+                        }
+                        continue;
+                    }
+                    if (lineStart) {
+                        if (lineCount % indexInterval == 0) {
+                            if (indexSize == lines.length) {
+                                lines = Arrays.copyOf(lines, indexSize * 2);
+                                offsets = Arrays.copyOf(offsets, indexSize * 2);
+                            }
+                            lines[indexSize] = lineCount;
+                            offsets[indexSize++] = offset;
+                        }
+                        lineCount++;
+                    }
+                    lineStart = b == '\n';
+                }
+            }
+        }
+        PatientFileIndex rebuilt = new PatientFileIndex(lineCount, offset,
+            Arrays.copyOf(lines, indexSize), Arrays.copyOf(offsets, indexSize));
+        rebuilt.setSourceSize(stamp.getSourceSize());
+        rebuilt.setLastModified(stamp.getLastModified());
+        return rebuilt;
+    }
+
+    private Map<String, ExecutionContext> partitionByLines(int gridSize, long size) {
+        Map<String, ExecutionContext> partitions = new HashMap<>();
+        long start = index.dataStart();
+        for (int i = 0; i < gridSize && start < size; i++) {
+            long end = i == gridSize - 1 ? size
+                : index.nearestOffset(index.getLineCount() * (i + 1) / gridSize);
+            // ranges narrower than the index interval collapse into the next one
+            if (end <= start) {
+                continue;
+            }
+            ExecutionContext context = new ExecutionContext();
+            context.putLong(START_OFFSET, start);
+            context.putLong(END_OFFSET, end);
+            partitions.put("partition" + partitions.size(), context);
+            start = end;
+        }
+        return partitions;
+    }
+
+    /**
+     * @return the offset of the first line starting at or after position, or
+     *         the file size if there is none
+     */
+    static long nextLineStart(FileChannel channel, long position, long size) throws IOException {
+        if (position <= 0) {
+            return 0;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        // a line starts at position when the byte before it is a line break
+        long offset = position - 1;
+        while (offset < size) {
+            buffer.clear();
+            int read = channel.read(buffer, offset);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return offset + i + 1;
+                }
+            }
+            offset += read;
+        }
+        return size;
+    }
+}
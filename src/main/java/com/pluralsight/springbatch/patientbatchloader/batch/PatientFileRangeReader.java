@@ -0,0 +1,120 @@
+package com.pluralsight.springbatch.patientbatchloader.batch;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.ItemStreamSupport;
+import org.springframework.batch.item.file.LineMapper;
+import org.springframework.util.Assert;
+
+import com.pluralsight.springbatch.patientbatchloader.domain.PatientRecord;
+
+/**
+ * Reads the lines of a patient file that start within a byte range, as
+ * produced by {@link PatientFilePartitioner}. The byte offset of the next line
+ * is stored in the execution context, so a restart seeks straight to the
+ * first line that was not committed.
+ *
+ * A compressed file is decompressed while it is read and the offsets are
+ * offsets into the decompressed data; the range is reached by decompressing
+ * and discarding what comes before it.
+ *
+ * Not thread-safe; every partition gets its own instance.
+ */
+public class PatientFileRangeReader extends ItemStreamSupport implements ItemStreamReader<PatientRecord> {
+
+    private static final String POSITION = "position";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path file;
+    private final long startOffset;
+    private final long endOffset;
+    private final LineMapper<PatientRecord> lineMapper;
+
+    private InputStream input;
+    private byte[] line = new byte[256];
+    private long position;
+    private int lineCount;
+
+    public PatientFileRangeReader(Path file, long startOffset, long endOffset, LineMapper<PatientRecord> lineMapper) {
+        Assert.isTrue(startOffset <= endOffset, "The start offset must not be after the end offset");
+        this.file = file;
+        this.startOffset = startOffset;
+        this.endOffset = endOffset;
+        this.lineMapper = lineMapper;
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        position = executionContext.getLong(getExecutionContextKey(POSITION), startOffset);
+        lineCount = 0;
+        try {
+            if (PatientFileCompression.of(file).isCompressed()) {
+                input = PatientFileCompression.open(file);
+                PatientFileCompression.skipFully(input, position);
+            } else {
+                FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+                channel.position(position);
+                input = new BufferedInputStream(Channels.newInputStream(channel), BUFFER_SIZE);
+            }
+        } catch (IOException e) {
+            close();
+            throw new ItemStreamException("Unable to open " + file + " at offset " + position, e);
+        }
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        executionContext.putLong(getExecutionContextKey(POSITION), position);
+    }
+
+    @Override
+    public void close() throws ItemStreamException {
+        try {
+            if (input != null) {
+                input.close();
+            }
+        } catch (IOException e) {
+            throw new ItemStreamException("Unable to close " + file, e);
+        } finally {
+            input = null;
+        }
+    }
+
+    @Override
+    public PatientRecord read() throws Exception {
+        if (position >= endOffset) {
+            return null;
+        }
+        int length = 0;
+        int b;
+        while ((b = input.read()) != -1) {
+            position++;
+            if (b == '\n') {
+                break;
+            }
+            if (length == line.length) {
+                line = Arrays.copyOf(line, length * 2);
+            }
+            line[length++] = (byte) b;
+        }
+        if (b == -1 && length == 0) {
+            return null;
+        }
+        if (length > 0 && line[length - 1] == '\r') {
+            length--;
+        }
+        return lineMapper.mapLine(new String(line, 0, length, StandardCharsets.UTF_8), ++lineCount);
+    }
+}
@@ -0,0 +1,66 @@
+package com.pluralsight.springbatch.patientbatchloader.batch;
+
+import java.nio.file.Path;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.repeat.RepeatStatus;
+
+/**
+ * Pre-flight step of the patient job. Validates and indexes the input file
+ * with a {@link PatientFileValidator} and fails when more lines are invalid
+ * than the load would be allowed to skip, before anything is written. The
+ * index is put in the job execution context under
+ * {@link PatientFileIndex#CONTEXT_KEY}, where it survives a restart.
+ */
+public class PatientFileValidationTasklet implements Tasklet {
+
+    private static final Logger log = LoggerFactory.getLogger(PatientFileValidationTasklet.class);
+
+    /**
+     * Number of reasons included in the failure message; all reported
+     * reasons are logged.
+     */
+    private static final int REASONS_IN_MESSAGE = 10;
+
+    private final PatientFileValidator validator;
+    private final Path file;
+    private final int linesToSkip;
+    private final long maxInvalidLines;
+
+    public PatientFileValidationTasklet(PatientFileValidator validator, Path file, int linesToSkip,
+                                        long maxInvalidLines) {
+        this.validator = validator;
+        this.file = file;
+        this.linesToSkip = linesToSkip;
+        this.maxInvalidLines = maxInvalidLines;
+    }
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+        long start = System.nanoTime();
+        PatientFileValidator.Result result = validator.validate(file, linesToSkip);
+        PatientFileIndex index = result.getIndex();
+        log.info("Validated {} lines of {} in {} ms, {} invalid", index.getLineCount(), file,
+            (System.nanoTime() - start) / 1_000_000, result.getInvalidLines());
+        for (String error : result.getErrors()) {
+            log.warn("Invalid line in {}: {}", file, error);
+        }
+        // not a read count, the lines are counted again when they are loaded
+        contribution.setExitStatus(ExitStatus.COMPLETED.addExitDescription(
+            index.getLineCount() + " lines, " + result.getInvalidLines() + " invalid"));
+        if (result.getInvalidLines() > maxInvalidLines) {
+            throw new IllegalStateException(result.getInvalidLines() + " of " + index.getLineCount()
+                + " lines of " + file + " are invalid, more than the " + maxInvalidLines + " allowed: "
+                + String.join("; ", result.getErrors().subList(0,
+                    Math.min(REASONS_IN_MESSAGE, result.getErrors().size()))));
+        }
+        chunkContext.getStepContext().getStepExecution().getJobExecution().getExecutionContext()
+            .put(PatientFileIndex.CONTEXT_KEY, index);
+        return RepeatStatus.FINISHED;
+    }
+}
@@ -0,0 +1,366 @@
+package com.pluralsight.springbatch.patientbatchloader.batch;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.springframework.batch.item.file.LineMapper;
+import org.springframework.batch.item.file.transform.FlatFileFormatException;
+import org.springframework.batch.item.file.transform.IncorrectTokenCountException;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+
+import com.pluralsight.springbatch.patientbatchloader.domain.PatientAction;
+import com.pluralsight.springbatch.patientbatchloader.domain.PatientRecord;
+
+/**
+ * Checks every line of a patient file before it is loaded, and indexes it on
+ * the way. The file is split into line aligned ranges that are memory mapped
+ * and checked in parallel. A line is invalid when the line mapper or the
+ * record mapper of the job rejects it, or when the zip code or SSN of an
+ * insert or update is not shaped like one.
+ *
+ * The zip code may be shorter than five digits, as source systems drop the
+ * leading zeros, and may carry a four digit extension. The SSN has to be
+ * ddd-dd-dddd.
+ *
+ * A compressed file is decompressed and checked as it is read, on a single
+ * thread, and indexed on offsets into its decompressed data.
+ *
+ * Reasons are reported without field values, as those may hold patient data.
+ */
+public class PatientFileValidator {
+
+    private static final long RANGE_SIZE = 32 * 1024 * 1024;
+
+    private final LineMapper<PatientRecord> lineMapper;
+    private final PatientRecordMapper recordMapper;
+
+    private int threads = 1;
+    private int indexInterval = 10_000;
+    private int maxReportedErrors = 100;
+
+    public PatientFileValidator(LineMapper<PatientRecord> lineMapper, PatientRecordMapper recordMapper) {
+        this.lineMapper = lineMapper;
+        this.recordMapper = recordMapper;
+    }
+
+    public void setThreads(int threads) {
+        Assert.isTrue(threads > 0, "The number of threads must be greater than zero");
+        this.threads = threads;
+    }
+
+    /**
+     * @param indexInterval the number of lines between two indexed lines
+     */
+    public void setIndexInterval(int indexInterval) {
+        Assert.isTrue(indexInterval > 0, "The index interval must be greater than zero");
+        this.indexInterval = indexInterval;
+    }
+
+    /**
+     * @param maxReportedErrors the number of invalid lines reported with their
+     *        reason; the others are only counted
+     */
+    public void setMaxReportedErrors(int maxReportedErrors) {
+        this.maxReportedErrors = maxReportedErrors;
+    }
+
+    public Result validate(Path file, int linesToSkip) throws IOException {
+        // stamped before reading, so a file changed meanwhile is found stale later
+        PatientFileIndex stamp = new PatientFileIndex();
+        stamp.stamp(file);
+        Result result = validateFile(file, linesToSkip);
+        result.getIndex().setSourceSize(stamp.getSourceSize());
+        result.getIndex().setLastModified(stamp.getLastModified());
+        return result;
+    }
+
+    private Result validateFile(Path file, int linesToSkip) throws IOException {
+        if (PatientFileCompression.of(file).isCompressed()) {
+            try (InputStream input = PatientFileCompression.open(file)) {
+                return validateStream(input, linesToSkip);
+            }
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long dataStart = 0;
+            for (int i = 0; i < linesToSkip; i++) {
+                dataStart = PatientFilePartitioner.nextLineStart(channel, dataStart + 1, size);
+            }
+            List<long[]> bounds = new ArrayList<>();
+            long start = dataStart;
+            int ranges = (int) Math.max(threads, (size - dataStart) / RANGE_SIZE + 1);
+            for (int i = 0; i < ranges && start < size; i++) {
+                long target = dataStart + (size - dataStart) * (i + 1) / ranges;
+                long end = i == ranges - 1 ? size
+                    : PatientFilePartitioner.nextLineStart(channel, Math.max(start + 1, target), size);
+                bounds.add(new long[] { start, end });
+                start = end;
+            }
+
+            ExecutorService executor = Executors.newFixedThreadPool(threads,
+                new CustomizableThreadFactory("patient-validator-"));
+            try {
+                List<Future<RangeResult>> futures = new ArrayList<>();
+                for (long[] range : bounds) {
+                    futures.add(executor.submit(() -> validateRange(channel, range[0], range[1])));
+                }
+                List<RangeResult> results = new ArrayList<>();
+                for (Future<RangeResult> future : futures) {
+                    results.add(future.get());
+                }
+                return merge(results, linesToSkip, size);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while validating", e);
+            } catch (ExecutionException e) {
+                throw new IOException("Unable to validate", e.getCause());
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    private Result validateStream(InputStream input, int linesToSkip) throws IOException {
+        byte[] buffer = new byte[PatientFileCompression.BUFFER_SIZE];
+        int position = 0;
+        int limit = 0;
+        long offset = 0;
+        int skipped = 0;
+        RangeResult result = new RangeResult();
+        byte[] line = new byte[256];
+        int length = 0;
+        long lineStart = 0;
+        while (true) {
+            if (position == limit) {
+                limit = input.read(buffer);
+                position = 0;
+                if (limit <= 0) {
+                    break;
+                }
+            }
+            byte b = buffer[position++];
+            offset++;
+            if (skipped < linesToSkip) {
+                if (b == '\n') {
+                    skipped++;
+                    lineStart = offset;
+                }
+            } else if (b == '\n') {
+                check(result, line, length, lineStart);
+                length = 0;
+                lineStart = offset;
+            } else {
+                if (length == line.length) {
+                    line = Arrays.copyOf(line, length * 2);
+                }
+                line[length++] = b;
+            }
+        }
+        if (offset > lineStart && skipped == linesToSkip) {
+            check(result, line, length, lineStart);
+        }
+        return merge(Collections.singletonList(result), linesToSkip, offset);
+    }
+
+    private Result merge(List<RangeResult> ranges, int linesToSkip, long size) {
+        long lineCount = 0;
+        long invalidLines = 0;
+        List<String> errors = new ArrayList<>();
+        int indexSize = 0;
+        long[] lines = new long[ranges.size() * 4];
+        long[] offsets = new long[lines.length];
+        for (RangeResult range : ranges) {
+            for (int i = 0; i < range.indexSize; i++) {
+                if (indexSize == lines.length) {
+                    lines = Arrays.copyOf(lines, indexSize * 2);
+                    offsets = Arrays.copyOf(offsets, indexSize * 2);
+                }
+                lines[indexSize] = lineCount + range.lines[i];
+                offsets[indexSize++] = range.offsets[i];
+            }
+            for (int i = 0; i < range.errorLines.size() && errors.size() < maxReportedErrors; i++) {
+                errors.add("Line " + (linesToSkip + lineCount + range.errorLines.get(i) + 1) + ": "
+                    + range.errorReasons.get(i));
+            }
+            invalidLines += range.invalidLines;
+            lineCount += range.lineCount;
+        }
+        PatientFileIndex index = new PatientFileIndex(lineCount, size,
+            Arrays.copyOf(lines, indexSize), Arrays.copyOf(offsets, indexSize));
+        return new Result(index, invalidLines, errors);
+    }
+
+    private RangeResult validateRange(FileChannel channel, long start, long end) throws IOException {
+        RangeResult result = new RangeResult();
+        if (start >= end) {
+            return result;
+        }
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        byte[] line = new byte[256];
+        int position = 0;
+        int limit = buffer.limit();
+        while (position < limit) {
+            int lineStart = position;
+            int length = 0;
+            while (position < limit) {
+                byte b = buffer.get(position++);
+                if (b == '\n') {
+                    break;
+                }
+                if (length == line.length) {
+                    line = Arrays.copyOf(line, length * 2);
+                }
+                line[length++] = b;
+            }
+            check(result, line, length, start + lineStart);
+        }
+        return result;
+    }
+
+    /**
+     * Indexes and checks the next line of a range.
+     */
+    private void check(RangeResult result, byte[] line, int length, long offset) {
+        if (length > 0 && line[length - 1] == '\r') {
+            length--;
+        }
+        if (result.lineCount % indexInterval == 0) {
+            result.index(result.lineCount, offset);
+        }
+        String reason = check(new String(line, 0, length, StandardCharsets.UTF_8));
+        if (reason != null) {
+            result.invalid(result.lineCount, reason, maxReportedErrors);
+        }
+        result.lineCount++;
+    }
+
+    /**
+     * @return why the line would be rejected, or null if it is valid
+     */
+    private String check(String line) {
+        PatientRecord record;
+        try {
+            record = lineMapper.mapLine(line, 0);
+        } catch (IncorrectTokenCountException e) {
+            return "expected " + e.getExpectedCount() + " columns but found " + e.getActualCount();
+        } catch (FlatFileFormatException e) {
+            // the only other format error of the PatientLineMapper
+            return "unterminated quoted field";
+        } catch (Exception e) {
+            return e.getClass().getSimpleName() + (e.getMessage() != null ? ": " + e.getMessage() : "");
+        }
+        try {
+            recordMapper.apply(record);
+        } catch (MalformedBirthDateException e) {
+            return "birth date is not M/dd/yyyy";
+        } catch (PatientFieldTooLongException e) {
+            return e.getColumn() + " is longer than " + e.getMaxLength() + " characters";
+        } catch (MalformedPatientRecordException e) {
+            return "unknown action";
+        }
+        if (PatientAction.fromCode(record.getAction()) == PatientAction.DELETE) {
+            return null;
+        }
+        if (!isZip(record.getZip())) {
+            return "zip code is not ddddd or ddddd-dddd";
+        }
+        if (!isSsn(record.getSsn())) {
+            return "SSN is not ddd-dd-dddd";
+        }
+        return null;
+    }
+
+    static boolean isZip(String zip) {
+        int dash = zip.indexOf('-');
+        int length = dash < 0 ? zip.length() : dash;
+        if (length < 1 || length > 5 || !digits(zip, 0, length)) {
+            return false;
+        }
+        return dash < 0 || (zip.length() == dash + 5 && digits(zip, dash + 1, zip.length()));
+    }
+
+    static boolean isSsn(String ssn) {
+        return ssn.length() == 11 && ssn.charAt(3) == '-' && ssn.charAt(6) == '-'
+            && digits(ssn, 0, 3) && digits(ssn, 4, 6) && digits(ssn, 7, 11);
+    }
+
+    private static boolean digits(String value, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Outcome of a validation: the line index, the number of invalid lines and
+     * the reasons of the first ones.
+     */
+    public static class Result {
+
+        private final PatientFileIndex index;
+        private final long invalidLines;
+        private final List<String> errors;
+
+        Result(PatientFileIndex index, long invalidLines, List<String> errors) {
+            this.index = index;
+            this.invalidLines = invalidLines;
+            this.errors = errors;
+        }
+
+        public PatientFileIndex getIndex() {
+            return index;
+        }
+
+        public long getInvalidLines() {
+            return invalidLines;
+        }
+
+        public List<String> getErrors() {
+            return errors;
+        }
+    }
+
+    private static class RangeResult {
+        private long lineCount;
+        private long invalidLines;
+        private int indexSize;
+        private long[] lines = new long[16];
+        private long[] offsets = new long[16];
+        private final List<Long> errorLines = new ArrayList<>();
+        private final List<String> errorReasons = new ArrayList<>();
+
+        void index(long line, long offset) {
+            if (indexSize == lines.length) {
+                lines = Arrays.copyOf(lines, indexSize * 2);
+                offsets = Arrays.copyOf(offsets, indexSize * 2);
+            }
+            lines[indexSize] = line;
+            offsets[indexSize++] = offset;
+        }
+
+        void invalid(long line, String reason, int maxReported) {
+            invalidLines++;
+            if (errorLines.size() < maxReported) {
+                errorLines.add(line);
+                errorReasons.add(reason);
+            }
+        }
+    }
+}
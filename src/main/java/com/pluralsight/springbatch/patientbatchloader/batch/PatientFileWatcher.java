@@ -0,0 +1,318 @@
+package com.pluralsight.springbatch.patientbatchloader.batch;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParameter;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.JobParametersInvalidException;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.batch.core.repository.JobExecutionAlreadyRunningException;
+import org.springframework.batch.core.repository.JobInstanceAlreadyCompleteException;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Watches a directory and launches a job for every patient file that lands in
+ * it, as soon as the file is complete. A file is complete once a marker file
+ * named after it with the marker suffix exists, e.g. patients.csv.done, or,
+ * without a marker suffix, once its size and modification time have not
+ * changed for the stable time.
+ *
+ * Files already in the directory when the watcher starts are treated as if
+ * they just landed; the ones that were loaded before are dropped when the
+ * launcher reports their job instance complete.
+ *
+ * At most maxInFlight jobs launched by the watcher run or wait in the
+ * launcher at the same time. Complete files beyond that wait in the directory
+ * in the order they landed, so a large drop is fed to the launcher at the pace
+ * it loads files instead of overflowing its queue.
+ *
+ * With a MeterRegistry set, the number of files waiting for their job and the
+ * number of jobs in flight are published as patient.batch.watch.waiting and
+ * patient.batch.watch.inflight.
+ */
+public class PatientFileWatcher implements SmartLifecycle, Runnable {
+
+    private static final long POLL_INTERVAL = 250;
+
+    private final Logger log = LoggerFactory.getLogger(PatientFileWatcher.class);
+
+    private final Path directory;
+    private final JobLauncher jobLauncher;
+    private final JobExplorer jobExplorer;
+    private final Job job;
+    private final String fileNameParameter;
+
+    private PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:*");
+    private String markerSuffix = "";
+    private long stableTime = 2000;
+    private int maxInFlight = 1;
+
+    // only used by the watcher thread, in the order the files landed
+    private final Map<String, Candidate> candidates = new LinkedHashMap<>();
+    private final List<Long> inFlight = new ArrayList<>();
+
+    private final AtomicInteger waitingCount = new AtomicInteger();
+    private final AtomicInteger inFlightCount = new AtomicInteger();
+
+    private volatile WatchService watchService;
+    private volatile Thread thread;
+
+    public PatientFileWatcher(Path directory, JobLauncher jobLauncher, JobExplorer jobExplorer, Job job,
+            String fileNameParameter) {
+        this.directory = directory;
+        this.jobLauncher = jobLauncher;
+        this.jobExplorer = jobExplorer;
+        this.job = job;
+        this.fileNameParameter = fileNameParameter;
+    }
+
+    /**
+     * @param pattern glob the names of the files to load have to match
+     */
+    public void setPattern(String pattern) {
+        this.matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+    }
+
+    /**
+     * @param markerSuffix suffix of the marker file telling a file is complete,
+     *        or blank to wait for the size of the file to be stable
+     */
+    public void setMarkerSuffix(String markerSuffix) {
+        this.markerSuffix = markerSuffix != null ? markerSuffix.trim() : "";
+    }
+
+    /**
+     * @param stableTime milliseconds the size of a file has to stay the same
+     *        before it is complete, when there is no marker suffix
+     */
+    public void setStableTime(long stableTime) {
+        this.stableTime = stableTime;
+    }
+
+    public void setMaxInFlight(int maxInFlight) {
+        Assert.isTrue(maxInFlight > 0, "The number of jobs in flight must be greater than zero");
+        this.maxInFlight = maxInFlight;
+    }
+
+    public void setMeterRegistry(MeterRegistry registry) {
+        Gauge.builder("patient.batch.watch.waiting", waitingCount, AtomicInteger::get)
+            .description("Complete files waiting for their job to be launched")
+            .register(registry);
+        Gauge.builder("patient.batch.watch.inflight", inFlightCount, AtomicInteger::get)
+            .description("Jobs launched by the file watcher that have not ended")
+            .register(registry);
+    }
+
+    @Override
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        try {
+            watchService = directory.getFileSystem().newWatchService();
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to watch " + directory, e);
+        }
+        thread = new Thread(this, "patient-file-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        log.info("Watching {} for patient files", directory);
+    }
+
+    @Override
+    public synchronized void stop() {
+        Thread watcher = thread;
+        if (watcher == null) {
+            return;
+        }
+        thread = null;
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            log.warn("Unable to close the watch service of {}", directory, e);
+        }
+        watcher.interrupt();
+        try {
+            watcher.join(POLL_INTERVAL * 4);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void stop(Runnable callback) {
+        stop();
+        callback.run();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return thread != null;
+    }
+
+    @Override
+    public boolean isAutoStartup() {
+        return true;
+    }
+
+    @Override
+    public int getPhase() {
+        // start once everything else, the job launcher included, is running
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public void run() {
+        try {
+            scan();
+            while (thread != null) {
+                WatchKey key = watchService.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            scan();
+                        } else {
+                            landed(((Path) event.context()).getFileName().toString());
+                        }
+                    }
+                    key.reset();
+                }
+                launchCompleteFiles();
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            // stopped
+        } catch (RuntimeException e) {
+            log.error("Stopped watching {}", directory, e);
+        }
+    }
+
+    private void scan() {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                landed(file.getFileName().toString());
+            }
+        } catch (IOException e) {
+            log.warn("Unable to list {}", directory, e);
+        }
+    }
+
+    private void landed(String name) {
+        String fileName = StringUtils.hasLength(markerSuffix) && name.endsWith(markerSuffix)
+            ? name.substring(0, name.length() - markerSuffix.length()) : name;
+        if (matcher.matches(directory.getFileSystem().getPath(fileName)) && !candidates.containsKey(fileName)) {
+            candidates.put(fileName, new Candidate());
+        }
+    }
+
+    private void launchCompleteFiles() {
+        long now = System.currentTimeMillis();
+        for (Iterator<Long> ids = inFlight.iterator(); ids.hasNext(); ) {
+            JobExecution execution = jobExplorer.getJobExecution(ids.next());
+            if (execution == null || !execution.getStatus().isRunning()) {
+                ids.remove();
+            }
+        }
+        for (Iterator<Map.Entry<String, Candidate>> entries = candidates.entrySet().iterator();
+                entries.hasNext() && inFlight.size() < maxInFlight; ) {
+            Map.Entry<String, Candidate> entry = entries.next();
+            Path file = directory.resolve(entry.getKey());
+            if (!Files.isRegularFile(file)) {
+                // removed again, or a directory
+                entries.remove();
+                continue;
+            }
+            if (!isComplete(file, entry.getValue(), now)) {
+                continue;
+            }
+            Boolean launched = launch(entry.getKey());
+            if (launched == null) {
+                // the launcher is full, try again on the next poll
+                break;
+            }
+            entries.remove();
+        }
+        waitingCount.set(candidates.size());
+        inFlightCount.set(inFlight.size());
+    }
+
+    private boolean isComplete(Path file, Candidate candidate, long now) {
+        if (StringUtils.hasLength(markerSuffix)) {
+            return Files.exists(directory.resolve(file.getFileName() + markerSuffix));
+        }
+        try {
+            long size = Files.size(file);
+            long modified = Files.getLastModifiedTime(file).toMillis();
+            if (size != candidate.size || modified != candidate.modified) {
+                candidate.size = size;
+                candidate.modified = modified;
+                candidate.changed = now;
+                return false;
+            }
+        } catch (IOException e) {
+            return false;
+        }
+        return now - candidate.changed >= stableTime;
+    }
+
+    /**
+     * @return whether a job was launched for the file, or null if the launcher
+     *         has no room for it
+     */
+    private Boolean launch(String fileName) {
+        JobParameters parameters = new JobParameters(
+            Collections.singletonMap(fileNameParameter, new JobParameter(fileName)));
+        try {
+            JobExecution execution = jobLauncher.run(job, parameters);
+            if (execution.getStatus() == BatchStatus.FAILED && execution.getStartTime() == null) {
+                return null;
+            }
+            inFlight.add(execution.getId());
+            log.info("Launched job execution {} for {}", execution.getId(), fileName);
+            return true;
+        } catch (JobInstanceAlreadyCompleteException | JobExecutionAlreadyRunningException e) {
+            log.debug("Not launching a job for {}: {}", fileName, e.getMessage());
+        } catch (JobParametersInvalidException e) {
+            log.warn("Not launching a job for {}: {}", fileName, e.getMessage());
+        } catch (Exception e) {
+            log.error("Unable to launch a job for {}", fileName, e);
+        }
+        return false;
+    }
+
+    private static class Candidate {
+        private long size = -1;
+        private long modified = -1;
+        private long changed;
+    }
+}
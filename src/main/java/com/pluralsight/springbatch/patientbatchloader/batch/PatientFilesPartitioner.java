@@ -0,0 +1,80 @@
+package com.pluralsight.springbatch.patientbatchloader.batch;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+
+/**
+ * Makes a partition of every file in a directory whose name matches a glob,
+ * such as <code>patients-*.csv.gz</code>. The partition is named after the
+ * file and holds its name under {@link #FILE_NAME} and its position among
+ * the files under {@link #FILE_INDEX}.
+ *
+ * The partitions are step executions of their own, so a file is tracked from
+ * start to end: a restart of the job runs only the files that did not
+ * complete, each from where it stopped. The files are listed once, when the
+ * job first runs; files dropped in later are left to the next job.
+ */
+public class PatientFilesPartitioner implements Partitioner {
+
+    /**
+     * Execution context key of the name of the file of a partition.
+     */
+    public static final String FILE_NAME = "fileName";
+
+    /**
+     * Execution context key of the position of the file of a partition among
+     * the matching files, in order.
+     */
+    public static final String FILE_INDEX = "fileIndex";
+
+    private final Path directory;
+    private final String glob;
+
+    public PatientFilesPartitioner(Path directory, String glob) {
+        this.directory = directory;
+        this.glob = glob;
+    }
+
+    @Override
+    public Map<String, ExecutionContext> partition(int gridSize) {
+        Map<String, ExecutionContext> partitions = new HashMap<>();
+        List<String> fileNames = fileNames(directory, glob);
+        for (int i = 0; i < fileNames.size(); i++) {
+            ExecutionContext context = new ExecutionContext();
+            context.putString(FILE_NAME, fileNames.get(i));
+            context.putLong(FILE_INDEX, i);
+            partitions.put(fileNames.get(i), context);
+        }
+        return partitions;
+    }
+
+    /**
+     * @return the names of the regular files in the directory matching the
+     *         glob, in order
+     */
+    public static List<String> fileNames(Path directory, String glob) {
+        List<String> fileNames = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, glob)) {
+            for (Path file : files) {
+                if (Files.isRegularFile(file)) {
+                    fileNames.add(file.getFileName().toString());
+                }
+            }
+        } catch (IOException e) {
+            throw new ItemStreamException("Unable to list " + glob + " in " + directory, e);
+        }
+        Collections.sort(fileNames);
+        return fileNames;
+    }
+}
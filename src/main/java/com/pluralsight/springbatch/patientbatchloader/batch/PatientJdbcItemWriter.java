@@ -0,0 +1,104 @@
+package com.pluralsight.springbatch.patientbatchloader.batch;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.incrementer.DataFieldMaxValueIncrementer;
+
+import com.pluralsight.springbatch.patientbatchloader.domain.PatientAction;
+import com.pluralsight.springbatch.patientbatchloader.domain.PatientEntity;
+
+/**
+ * Applies the patients of a chunk to the patient table with JDBC batch
+ * statements, keyed on the source id. Per chunk there are at most three
+ * batches and no lookups: deletes, then updates, then inserts of the patients
+ * the updates did not find. Inserts and updates are both treated as an upsert.
+ *
+ * Only the last record of a source id within a chunk is applied, so a chunk
+ * never touches the same row twice. Relies on the driver reporting the row
+ * count of every batched update, as H2 does.
+ */
+public class PatientJdbcItemWriter implements ItemWriter<PatientEntity> {
+
+    private static final String DELETE_SQL = "DELETE FROM patient WHERE source_id = ?";
+
+    private static final String UPDATE_SQL = "UPDATE patient SET first_name = ?, middle_initial = ?, "
+        + "last_name = ?, email_address = ?, phone_number = ?, street = ?, city = ?, state = ?, "
+        + "zip_code = ?, birth_date = ?, social_security_number = ? WHERE source_id = ?";
+
+    private static final String INSERT_SQL = "INSERT INTO patient (first_name, middle_initial, "
+        + "last_name, email_address, phone_number, street, city, state, zip_code, birth_date, "
+        + "social_security_number, source_id, patient_id) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DataFieldMaxValueIncrementer idIncrementer;
+
+    public PatientJdbcItemWriter(DataSource dataSource, DataFieldMaxValueIncrementer idIncrementer) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.idIncrementer = idIncrementer;
+    }
+
+    @Override
+    public void write(List<? extends PatientEntity> items) throws Exception {
+        List<PatientEntity> deletes = new ArrayList<>();
+        List<PatientEntity> upserts = new ArrayList<>();
+        for (PatientEntity patient : lastPerSourceId(items).values()) {
+            (patient.getAction() == PatientAction.DELETE ? deletes : upserts).add(patient);
+        }
+        if (!deletes.isEmpty()) {
+            jdbcTemplate.batchUpdate(DELETE_SQL, deletes, deletes.size(),
+                (ps, patient) -> ps.setString(1, patient.getSourceId()));
+        }
+        if (upserts.isEmpty()) {
+            return;
+        }
+        int[][] updated = jdbcTemplate.batchUpdate(UPDATE_SQL, upserts, upserts.size(),
+            (ps, patient) -> setColumns(ps, patient));
+        List<PatientEntity> inserts = new ArrayList<>();
+        for (int i = 0; i < upserts.size(); i++) {
+            if (updated[0][i] == 0) {
+                inserts.add(upserts.get(i));
+            }
+        }
+        if (!inserts.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_SQL, inserts, inserts.size(), (ps, patient) -> {
+                setColumns(ps, patient);
+                ps.setLong(13, idIncrementer.nextLongValue());
+            });
+        }
+    }
+
+    /**
+     * Sets parameters 1 to 11 to the patient columns and 12 to the source id.
+     */
+    private static void setColumns(PreparedStatement ps, PatientEntity patient) throws SQLException {
+        ps.setString(1, patient.getFirstName());
+        ps.setString(2, patient.getMiddleInitial());
+        ps.setString(3, patient.getLastName());
+        ps.setString(4, patient.getEmailAddress());
+        ps.setString(5, patient.getPhoneNumber());
+        ps.setString(6, patient.getStreet());
+        ps.setString(7, patient.getCity());
+        ps.setString(8, patient.getState());
+        ps.setString(9, patient.getZipCode());
+        ps.setDate(10, java.sql.Date.valueOf(patient.getBirthDate()));
+        ps.setString(11, patient.getSocialSecurityNumber());
+        ps.setString(12, patient.getSourceId());
+    }
+
+    static Map<String, PatientEntity> lastPerSourceId(List<? extends PatientEntity> items) {
+        Map<String, PatientEntity> patients = new LinkedHashMap<>(items.size() * 2);
+        for (PatientEntity patient : items) {
+            patients.put(patient.getSourceId(), patient);
+        }
+        return patients;
+    }
+}
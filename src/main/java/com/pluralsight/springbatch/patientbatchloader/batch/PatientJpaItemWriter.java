@@ -0,0 +1,136 @@
+package com.pluralsight.springbatch.patientbatchloader.batch;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+import org.springframework.batch.item.database.JpaItemWriter;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataAccessException;
+import org.springframework.orm.jpa.EntityManagerFactoryInfo;
+import org.springframework.orm.jpa.EntityManagerFactoryUtils;
+
+import com.pluralsight.springbatch.patientbatchloader.domain.PatientAction;
+import com.pluralsight.springbatch.patientbatchloader.domain.PatientEntity;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Applies the patients of a chunk through the persistence context, keyed on
+ * the source id. The patients already stored are loaded with a single query
+ * per chunk; they are updated or removed in place and the others are
+ * persisted. Inserts and updates are both treated as an upsert.
+ *
+ * Only the last record of a source id within a chunk is applied, so a chunk
+ * never touches the same row twice.
+ *
+ * The writer keeps the patients it loads and writes out of the second-level
+ * cache, which a load would otherwise cycle through; Hibernate still evicts
+ * the cached patients it updates or removes.
+ *
+ * Persistence exceptions are translated into Spring's DataAccessException
+ * hierarchy, as the JdbcTemplate of the JDBC writer does, so the retry policy
+ * of the step can tell a duplicate key from other failures.
+ *
+ * With a MeterRegistry set, the time spent flushing the persistence context
+ * is recorded as patient.batch.jpa.flush.
+ */
+public class PatientJpaItemWriter extends JpaItemWriter<PatientEntity> {
+
+    private static final String FIND_BY_SOURCE_IDS =
+        "SELECT p FROM PatientEntity p WHERE p.sourceId IN :sourceIds";
+
+    private EntityManagerFactory entityManagerFactory;
+
+    private Timer flushTimer;
+
+    @Override
+    public void setEntityManagerFactory(EntityManagerFactory entityManagerFactory) {
+        super.setEntityManagerFactory(entityManagerFactory);
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    public void setMeterRegistry(MeterRegistry registry) {
+        this.flushTimer = Timer.builder("patient.batch.jpa.flush")
+            .description("Time to flush the persistence context of a chunk")
+            .register(registry);
+    }
+
+    /**
+     * Same as {@link JpaItemWriter#write(List)}, with the flush timed and its
+     * exceptions translated.
+     */
+    @Override
+    public void write(List<? extends PatientEntity> items) {
+        EntityManager entityManager = EntityManagerFactoryUtils.getTransactionalEntityManager(entityManagerFactory);
+        if (entityManager == null) {
+            throw new DataAccessResourceFailureException("Unable to obtain a transactional EntityManager");
+        }
+        try {
+            doWrite(entityManager, items);
+            long start = System.nanoTime();
+            entityManager.flush();
+            if (flushTimer != null) {
+                flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        } catch (RuntimeException e) {
+            throw translate(e);
+        }
+    }
+
+    private RuntimeException translate(RuntimeException e) {
+        DataAccessException translated = entityManagerFactory instanceof EntityManagerFactoryInfo
+            && ((EntityManagerFactoryInfo) entityManagerFactory).getJpaDialect() != null
+                ? ((EntityManagerFactoryInfo) entityManagerFactory).getJpaDialect().translateExceptionIfPossible(e)
+                : EntityManagerFactoryUtils.convertJpaAccessExceptionIfPossible(e);
+        return translated != null ? translated : e;
+    }
+
+    @Override
+    protected void doWrite(EntityManager entityManager, List<? extends PatientEntity> items) {
+        if (items.isEmpty()) {
+            return;
+        }
+        entityManager.unwrap(Session.class).setCacheMode(CacheMode.IGNORE);
+        Map<String, PatientEntity> patients = PatientJdbcItemWriter.lastPerSourceId(items);
+        Map<String, PatientEntity> stored = new HashMap<>(patients.size() * 2);
+        for (PatientEntity patient : entityManager.createQuery(FIND_BY_SOURCE_IDS, PatientEntity.class)
+                .setParameter("sourceIds", patients.keySet())
+                .getResultList()) {
+            stored.put(patient.getSourceId(), patient);
+        }
+        for (PatientEntity patient : patients.values()) {
+            PatientEntity existing = stored.get(patient.getSourceId());
+            if (patient.getAction() == PatientAction.DELETE) {
+                if (existing != null) {
+                    entityManager.remove(existing);
+                }
+            } else if (existing != null) {
+                copy(patient, existing);
+            } else {
+                entityManager.persist(patient);
+            }
+        }
+    }
+
+    private static void copy(PatientEntity from, PatientEntity to) {
+        to.setFirstName(from.getFirstName());
+        to.setMiddleInitial(from.getMiddleInitial());
+        to.setLastName(from.getLastName());
+        to.setEmailAddress(from.getEmailAddress());
+        to.setPhoneNumber(from.getPhoneNumber());
+        to.setStreet(from.getStreet());
+        to.setCity(from.getCity());
+        to.setState(from.getState());
+        to.setZipCode(from.getZipCode());
+        to.setBirthDate(from.getBirthDate());
+        to.setSocialSecurityNumber(from.getSocialSecurityNumber());
+    }
+}
@@ -0,0 +1,86 @@
+package com.pluralsight.springbatch.patientbatchloader.batch;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.item.file.LineMapper;
+
+import com.pluralsight.springbatch.patientbatchloader.domain.PatientEntity;
+import com.pluralsight.springbatch.patientbatchloader.domain.PatientRecord;
+
+/**
+ * Builds the duplicate index of a file once per job execution and shares it
+ * between the steps loading the file, such as the partitions of a partitioned
+ * load. An index is dropped once the last step using it releases it; a
+ * restart builds it again. Thread-safe.
+ */
+public class PatientRecordDeduplicator {
+
+    private final Logger log = LoggerFactory.getLogger(PatientRecordDeduplicator.class);
+
+    private final LineMapper<PatientRecord> lineMapper;
+    private final Function<PatientRecord, PatientEntity> recordMapper;
+    private final PatientDuplicateIndex.Rule rule;
+    private final int maxKeys;
+
+    private final Map<String, Lease> leases = new HashMap<>();
+
+    public PatientRecordDeduplicator(LineMapper<PatientRecord> lineMapper,
+            Function<PatientRecord, PatientEntity> recordMapper, PatientDuplicateIndex.Rule rule, int maxKeys) {
+        this.lineMapper = lineMapper;
+        this.recordMapper = recordMapper;
+        this.rule = rule;
+        this.maxKeys = maxKeys;
+    }
+
+    /**
+     * @return the index of the file for the job execution, built by the first
+     *         caller while the others wait for it
+     */
+    public PatientDuplicateIndex acquire(Long jobExecutionId, Path file) throws IOException {
+        String key = jobExecutionId + ":" + file;
+        Lease lease;
+        synchronized (leases) {
+            lease = leases.computeIfAbsent(key, k -> new Lease());
+            lease.users++;
+        }
+        try {
+            synchronized (lease) {
+                if (lease.index == null) {
+                    long start = System.currentTimeMillis();
+                    lease.index = PatientDuplicateIndex.build(file, 1, lineMapper, recordMapper, rule, maxKeys);
+                    log.info("Indexed {} source ids of {} records of {} in {} ms", lease.index.size(),
+                        lease.index.getRecords(), file.getFileName(), System.currentTimeMillis() - start);
+                    if (lease.index.getUnindexed() > 0) {
+                        log.warn("{} records of {} are loaded without deduplication, as more than {} source ids "
+                            + "are in the file", lease.index.getUnindexed(), file.getFileName(), maxKeys);
+                    }
+                }
+                return lease.index;
+            }
+        } catch (IOException | RuntimeException e) {
+            release(jobExecutionId, file);
+            throw e;
+        }
+    }
+
+    public void release(Long jobExecutionId, Path file) {
+        String key = jobExecutionId + ":" + file;
+        synchronized (leases) {
+            Lease lease = leases.get(key);
+            if (lease != null && --lease.users == 0) {
+                leases.remove(key);
+            }
+        }
+    }
+
+    private static class Lease {
+        private int users;
+        private PatientDuplicateIndex index;
+    }
+}
@@ -0,0 +1,89 @@
+package com.pluralsight.springbatch.patientbatchloader.batch;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.function.Function;
+
+import com.pluralsight.springbatch.patientbatchloader.domain.PatientAction;
+import com.pluralsight.springbatch.patientbatchloader.domain.PatientEntity;
+import com.pluralsight.springbatch.patientbatchloader.domain.PatientRecord;
+
+/**
+ * Maps a patient record read from the input file onto a new patient entity.
+ * A birth date that can not be parsed is reported as a
+ * {@link MalformedBirthDateException}, a value longer than its column as a
+ * {@link PatientFieldTooLongException} and an unknown action as a
+ * {@link MalformedPatientRecordException}. Thread-safe.
+ *
+ * The column lengths are checked here rather than left to the database, so a
+ * record that can not be stored is skipped while processing and never fails
+ * the write of the chunk it is in.
+ */
+public class PatientRecordMapper implements Function<PatientRecord, PatientEntity> {
+
+    private final BirthDateParser birthDateParser;
+
+    public PatientRecordMapper() {
+        this(new BirthDateParser());
+    }
+
+    public PatientRecordMapper(BirthDateParser birthDateParser) {
+        this.birthDateParser = birthDateParser;
+    }
+
+    @Override
+    public PatientEntity apply(PatientRecord patientRecord) {
+        PatientAction action = PatientAction.fromCode(patientRecord.getAction());
+        if (action == null) {
+            throw new MalformedPatientRecordException(patientRecord.getSourceId(), "Patient "
+                + patientRecord.getSourceId() + " has an unknown action '" + patientRecord.getAction() + "'");
+        }
+        checkLength(patientRecord, "source_id", patientRecord.getSourceId(), 100);
+        if (action != PatientAction.DELETE) {
+            checkLengths(patientRecord);
+        }
+        PatientEntity entity = new PatientEntity(
+            patientRecord.getSourceId(),
+            patientRecord.getFirstName(),
+            patientRecord.getMiddleInitial(),
+            patientRecord.getLastName(),
+            patientRecord.getEmailAddress(),
+            patientRecord.getPhoneNumber(),
+            patientRecord.getStreet(),
+            patientRecord.getCity(),
+            patientRecord.getState(),
+            patientRecord.getZip(),
+            // a delete only needs the source id
+            action == PatientAction.DELETE ? null : birthDate(patientRecord),
+            patientRecord.getSsn());
+        entity.setAction(action);
+        return entity;
+    }
+
+    private static void checkLengths(PatientRecord patientRecord) {
+        checkLength(patientRecord, "first_name", patientRecord.getFirstName(), 100);
+        checkLength(patientRecord, "middle_initial", patientRecord.getMiddleInitial(), 1);
+        checkLength(patientRecord, "last_name", patientRecord.getLastName(), 100);
+        checkLength(patientRecord, "email_address", patientRecord.getEmailAddress(), 200);
+        checkLength(patientRecord, "phone_number", patientRecord.getPhoneNumber(), 50);
+        checkLength(patientRecord, "street", patientRecord.getStreet(), 255);
+        checkLength(patientRecord, "city", patientRecord.getCity(), 255);
+        checkLength(patientRecord, "state", patientRecord.getState(), 100);
+        checkLength(patientRecord, "zip_code", patientRecord.getZip(), 20);
+        checkLength(patientRecord, "social_security_number", patientRecord.getSsn(), 20);
+    }
+
+    private static void checkLength(PatientRecord patientRecord, String column, String value, int maxLength) {
+        if (value != null && value.length() > maxLength) {
+            throw new PatientFieldTooLongException(patientRecord.getSourceId(), column, maxLength);
+        }
+    }
+
+    private LocalDate birthDate(PatientRecord patientRecord) {
+        try {
+            return birthDateParser.parse(patientRecord.getBirthDate());
+        } catch (DateTimeParseException e) {
+            throw new MalformedBirthDateException(patientRecord.getSourceId(), patientRecord.getBirthDate(), e);
+        }
+    }
+}
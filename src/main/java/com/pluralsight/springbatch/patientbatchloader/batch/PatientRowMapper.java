@@ -0,0 +1,45 @@
+package com.pluralsight.springbatch.patientbatchloader.batch;
+
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.springframework.jdbc.core.RowMapper;
+
+import com.pluralsight.springbatch.patientbatchloader.domain.PatientAction;
+import com.pluralsight.springbatch.patientbatchloader.domain.PatientEntity;
+
+/**
+ * Maps a row of the patient table, selected with {@link #COLUMNS}, onto a
+ * {@link PatientEntity} by column index. The entity is detached; its action is
+ * an insert, which puts the patient back as it is when loaded again.
+ */
+public class PatientRowMapper implements RowMapper<PatientEntity> {
+
+    /**
+     * The columns the mapper expects, in order.
+     */
+    public static final String COLUMNS = "patient_id, source_id, first_name, middle_initial, last_name, "
+        + "email_address, phone_number, street, city, state, zip_code, birth_date, social_security_number";
+
+    @Override
+    public PatientEntity mapRow(ResultSet rs, int rowNum) throws SQLException {
+        PatientEntity patient = new PatientEntity();
+        patient.setId(rs.getLong(1));
+        patient.setSourceId(rs.getString(2));
+        patient.setFirstName(rs.getString(3));
+        patient.setMiddleInitial(rs.getString(4));
+        patient.setLastName(rs.getString(5));
+        patient.setEmailAddress(rs.getString(6));
+        patient.setPhoneNumber(rs.getString(7));
+        patient.setStreet(rs.getString(8));
+        patient.setCity(rs.getString(9));
+        patient.setState(rs.getString(10));
+        patient.setZipCode(rs.getString(11));
+        Date birthDate = rs.getDate(12);
+        patient.setBirthDate(birthDate == null ? null : birthDate.toLocalDate());
+        patient.setSocialSecurityNumber(rs.getString(13));
+        patient.setAction(PatientAction.INSERT);
+        return patient;
+    }
+}
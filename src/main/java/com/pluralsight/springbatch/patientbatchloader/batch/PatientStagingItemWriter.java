@@ -0,0 +1,121 @@
+package com.pluralsight.springbatch.patientbatchloader.batch;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.support.AbstractItemStreamItemWriter;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.incrementer.DataFieldMaxValueIncrementer;
+
+import com.pluralsight.springbatch.patientbatchloader.domain.PatientAction;
+import com.pluralsight.springbatch.patientbatchloader.domain.PatientEntity;
+
+/**
+ * Appends the patients of a chunk to the patient_staging table in a single
+ * JDBC batch, to be merged into patient by a {@link PatientStagingMergeTasklet}
+ * once the whole file is staged. The staging table has no index but its
+ * primary key, so a chunk costs a fraction of applying it to patient.
+ *
+ * Every row is numbered with its position in the file, seq, which the merge
+ * uses to pick the last record of a source id. The rows of a partition are
+ * numbered from the start offset of its byte range, which is above the number
+ * of every record of the partitions before it, as a record takes at least a
+ * byte, and below endSeq, where the next partition starts. The number of rows
+ * written is saved with the step, so a restart goes on numbering where the
+ * last committed chunk stopped; opening the writer deletes whatever it staged
+ * from there on, so rows of a chunk that is written again cannot collide.
+ *
+ * The writer numbers rows in the order its chunks are written, so a step
+ * writing it from several threads would not keep file order; it has to be
+ * written from a single thread.
+ *
+ * A patient id is allocated for every row but a delete, and is used only
+ * when the merge inserts the patient.
+ */
+public class PatientStagingItemWriter extends AbstractItemStreamItemWriter<PatientEntity> {
+
+    private static final String WRITTEN_KEY = "written";
+
+    private static final String INSERT_SQL = "INSERT INTO patient_staging (job_instance_id, seq, action, "
+        + "patient_id, source_id, first_name, middle_initial, last_name, email_address, phone_number, street, "
+        + "city, state, zip_code, birth_date, social_security_number) "
+        + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String DELETE_SQL =
+        "DELETE FROM patient_staging WHERE job_instance_id = ? AND seq >= ? AND seq < ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DataFieldMaxValueIncrementer idIncrementer;
+    private final long jobInstanceId;
+    private final long firstSeq;
+    private final long endSeq;
+
+    private long written;
+
+    public PatientStagingItemWriter(DataSource dataSource, DataFieldMaxValueIncrementer idIncrementer,
+            long jobInstanceId, long firstSeq, long endSeq) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.idIncrementer = idIncrementer;
+        this.jobInstanceId = jobInstanceId;
+        this.firstSeq = firstSeq;
+        this.endSeq = endSeq;
+        setName(PatientStagingItemWriter.class.getSimpleName());
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        written = executionContext.getLong(getExecutionContextKey(WRITTEN_KEY), 0);
+        jdbcTemplate.update(DELETE_SQL, jobInstanceId, firstSeq + written, endSeq);
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        executionContext.putLong(getExecutionContextKey(WRITTEN_KEY), written);
+    }
+
+    @Override
+    public void write(List<? extends PatientEntity> items) throws Exception {
+        long seq = firstSeq + written;
+        jdbcTemplate.batchUpdate(INSERT_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                PatientEntity patient = items.get(i);
+                ps.setLong(1, jobInstanceId);
+                ps.setLong(2, seq + i);
+                ps.setString(3, patient.getAction().getCode());
+                if (patient.getAction() == PatientAction.DELETE) {
+                    ps.setNull(4, Types.BIGINT);
+                } else {
+                    ps.setLong(4, idIncrementer.nextLongValue());
+                }
+                ps.setString(5, patient.getSourceId());
+                ps.setString(6, patient.getFirstName());
+                ps.setString(7, patient.getMiddleInitial());
+                ps.setString(8, patient.getLastName());
+                ps.setString(9, patient.getEmailAddress());
+                ps.setString(10, patient.getPhoneNumber());
+                ps.setString(11, patient.getStreet());
+                ps.setString(12, patient.getCity());
+                ps.setString(13, patient.getState());
+                ps.setString(14, patient.getZipCode());
+                ps.setDate(15, patient.getBirthDate() == null ? null : Date.valueOf(patient.getBirthDate()));
+                ps.setString(16, patient.getSocialSecurityNumber());
+            }
+
+            @Override
+            public int getBatchSize() {
+                return items.size();
+            }
+        });
+        // only counted once the batch went through, so a retried chunk is numbered the same
+        written += items.size();
+    }
+}
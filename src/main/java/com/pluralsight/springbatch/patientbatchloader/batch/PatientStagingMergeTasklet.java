@@ -0,0 +1,130 @@
+package com.pluralsight.springbatch.patientbatchloader.batch;
+
+import java.util.Date;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobInstance;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Merge step of a staged load. Applies the patients a
+ * {@link PatientStagingItemWriter} staged for the job instance to the patient
+ * table in two set-based statements, then empties the staging rows, all in the
+ * transaction of the step.
+ *
+ * The patients with a delete among their records are deleted first. Then the
+ * last record of every source id, unless it is a delete, is merged on the
+ * source id, inserts and updates alike being upserts as in the other writers:
+ * an existing patient keeps its patient id, a new one gets the id allocated
+ * for that record. The outcome is the same as applying every record
+ * in file order, except for the patient id of a new patient, which is the one
+ * of its last record rather than its first; a patient deleted and inserted
+ * again gets a new id either way.
+ *
+ * As the merge is a step of its own, a merge that fails fails the job with
+ * the staged rows in place; restarting the job runs the merge again without
+ * reading the file, the load step having completed.
+ *
+ * Once merged, the tasklet also clears the rows other job instances left
+ * behind and will not merge: those of instances that are abandoned, gone or
+ * completed, and those of instances that failed or stopped longer than the
+ * retention ago, which are abandoned so a restart cannot run on without them.
+ */
+public class PatientStagingMergeTasklet implements Tasklet {
+
+    private static final Logger log = LoggerFactory.getLogger(PatientStagingMergeTasklet.class);
+
+    // the source ids with a delete, whose patient is either gone or inserted again with a new id
+    private static final String DELETE_SQL = "DELETE FROM patient WHERE source_id IN ("
+        + "SELECT source_id FROM patient_staging WHERE job_instance_id = ? AND action = 'D')";
+
+    // The last row of every source id. The patient id is looked up with a subquery, as H2
+    // gets quadratic on a MERGE joining its target.
+    private static final String MERGE_SQL = "MERGE INTO patient (patient_id, source_id, first_name, "
+        + "middle_initial, last_name, email_address, phone_number, street, city, state, zip_code, birth_date, "
+        + "social_security_number) KEY (source_id) "
+        + "SELECT COALESCE((SELECT p.patient_id FROM patient p WHERE p.source_id = s.source_id), s.patient_id), "
+        + "s.source_id, s.first_name, s.middle_initial, s.last_name, s.email_address, s.phone_number, s.street, "
+        + "s.city, s.state, s.zip_code, s.birth_date, s.social_security_number "
+        + "FROM patient_staging s WHERE s.job_instance_id = ? AND s.action <> 'D' AND s.seq IN ("
+        + "SELECT MAX(seq) FROM patient_staging WHERE job_instance_id = ? GROUP BY source_id)";
+
+    private static final String CLEAR_SQL = "DELETE FROM patient_staging WHERE job_instance_id = ?";
+
+    private static final String STAGED_INSTANCES_SQL = "SELECT DISTINCT job_instance_id FROM patient_staging";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JobExplorer jobExplorer;
+    private final JobRepository jobRepository;
+    private final long retention;
+
+    public PatientStagingMergeTasklet(DataSource dataSource, JobExplorer jobExplorer, JobRepository jobRepository,
+            long retention) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jobExplorer = jobExplorer;
+        this.jobRepository = jobRepository;
+        this.retention = retention;
+    }
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+        long jobInstanceId = chunkContext.getStepContext().getStepExecution().getJobExecution().getJobId();
+        long start = System.nanoTime();
+        int deleted = jdbcTemplate.update(DELETE_SQL, jobInstanceId);
+        int merged = jdbcTemplate.update(MERGE_SQL, jobInstanceId, jobInstanceId);
+        int staged = jdbcTemplate.update(CLEAR_SQL, jobInstanceId);
+        log.info("Merged {} staged records, {} upserts and {} deletes, in {} ms", staged, merged, deleted,
+            (System.nanoTime() - start) / 1_000_000);
+        clearLeftOver();
+        // not a write count, the records were counted when they were staged
+        contribution.setExitStatus(ExitStatus.COMPLETED.addExitDescription(
+            staged + " staged, " + merged + " merged, " + deleted + " deleted"));
+        return RepeatStatus.FINISHED;
+    }
+
+    private void clearLeftOver() {
+        List<Long> jobInstanceIds = jdbcTemplate.queryForList(STAGED_INSTANCES_SQL, Long.class);
+        for (Long jobInstanceId : jobInstanceIds) {
+            JobInstance jobInstance = jobExplorer.getJobInstance(jobInstanceId);
+            List<JobExecution> jobExecutions = jobInstance == null
+                ? null : jobExplorer.getJobExecutions(jobInstance);
+            if (jobExecutions != null && !jobExecutions.isEmpty()) {
+                // the executions of an instance come latest first
+                JobExecution last = jobExecutions.get(0);
+                if (last.isRunning() || !isLeftOver(last)) {
+                    continue;
+                }
+                if (last.getStatus() != BatchStatus.ABANDONED && last.getStatus() != BatchStatus.COMPLETED) {
+                    last.upgradeStatus(BatchStatus.ABANDONED);
+                    jobRepository.update(last);
+                }
+            }
+            int cleared = jdbcTemplate.update(CLEAR_SQL, jobInstanceId);
+            log.info("Cleared {} records staged by job instance {}", cleared, jobInstanceId);
+        }
+    }
+
+    private boolean isLeftOver(JobExecution jobExecution) {
+        switch (jobExecution.getStatus()) {
+            case ABANDONED:
+            case COMPLETED:
+                return true;
+            default:
+                Date endTime = jobExecution.getEndTime();
+                return endTime == null || endTime.getTime() < System.currentTimeMillis() - retention;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.pluralsight.springbatch.patientbatchloader.batch;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.support.incrementer.H2SequenceMaxValueIncrementer;
+
+/**
+ * Hands out ids with the same pooled-lo scheme Hibernate uses for
+ * {@link com.pluralsight.springbatch.patientbatchloader.domain.PatientEntity}:
+ * every sequence value is the first id of a block of blockSize ids. Writers
+ * bypassing JPA can therefore share the sequence with Hibernate while only
+ * calling it once per block.
+ */
+public class PooledSequenceMaxValueIncrementer extends H2SequenceMaxValueIncrementer {
+
+    private final int blockSize;
+
+    private long next;
+    private long limit;
+
+    public PooledSequenceMaxValueIncrementer(DataSource dataSource, String sequenceName, int blockSize) {
+        super(dataSource, sequenceName);
+        this.blockSize = blockSize;
+    }
+
+    @Override
+    protected synchronized long getNextKey() {
+        if (next == limit) {
+            next = super.getNextKey();
+            limit = next + blockSize;
+        }
+        return next++;
+    }
+}
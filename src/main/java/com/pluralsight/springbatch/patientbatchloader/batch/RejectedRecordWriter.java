@@ -0,0 +1,220 @@
+package com.pluralsight.springbatch.patientbatchloader.batch;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.SkipListener;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.item.file.FlatFileParseException;
+import org.springframework.batch.item.file.transform.FlatFileFormatException;
+import org.springframework.util.Assert;
+
+import com.pluralsight.springbatch.patientbatchloader.domain.PatientEntity;
+import com.pluralsight.springbatch.patientbatchloader.domain.PatientRecord;
+
+/**
+ * Writes the records a step skips to a side file, one line per record:
+ * <pre>
+ * line,phase,reason,record
+ * 42,read,"Incorrect number of tokens found in record at line 42",the,line,as,read
+ * </pre>
+ * The line number is only known for lines the flat file reader rejects. The
+ * record is the line as read, or the record put back into a patient line when
+ * it was rejected after it was read.
+ *
+ * The rejects of a chunk are held until it commits and dropped when it rolls
+ * back, so the file holds exactly the skips of the committed chunks and a
+ * restart appends to it without duplicates. Committed rejects are written in
+ * batches of flushSize and the rest when the step ends; the file is only
+ * created once there is something to write.
+ *
+ * One writer serves every thread of a multi-threaded step: rejects are kept
+ * per thread until their chunk commits.
+ */
+public class RejectedRecordWriter implements SkipListener<PatientRecord, PatientEntity>, ChunkListener,
+        StepExecutionListener {
+
+    private static final String HEADER = "line,phase,reason,record";
+
+    private static final DateTimeFormatter BIRTH_DATE = DateTimeFormatter.ofPattern("M/dd/yyyy");
+
+    private final Logger log = LoggerFactory.getLogger(RejectedRecordWriter.class);
+
+    private final Path file;
+    private final int flushSize;
+
+    private final ThreadLocal<List<String>> pending = ThreadLocal.withInitial(ArrayList::new);
+    private final List<String> committed = new ArrayList<>();
+    private BufferedWriter writer;
+    private long written;
+
+    public RejectedRecordWriter(Path file, int flushSize) {
+        Assert.isTrue(flushSize > 0, "The flush size must be greater than zero");
+        this.file = file;
+        this.flushSize = flushSize;
+    }
+
+    @Override
+    public void onSkipInRead(Throwable t) {
+        if (t instanceof FlatFileParseException) {
+            FlatFileParseException e = (FlatFileParseException) t;
+            reject(Integer.toString(e.getLineNumber()), "read", t, e.getInput());
+        } else if (t instanceof FlatFileFormatException) {
+            reject("", "read", t, ((FlatFileFormatException) t).getInput());
+        } else {
+            reject("", "read", t, "");
+        }
+    }
+
+    @Override
+    public void onSkipInProcess(PatientRecord item, Throwable t) {
+        reject("", "process", t, csv(item.getSourceId(), item.getFirstName(), item.getMiddleInitial(),
+            item.getLastName(), item.getEmailAddress(), item.getPhoneNumber(), item.getStreet(), item.getCity(),
+            item.getState(), item.getZip(), item.getBirthDate(), item.getAction(), item.getSsn()));
+    }
+
+    @Override
+    public void onSkipInWrite(PatientEntity item, Throwable t) {
+        reject("", "write", t, csv(item.getSourceId(), item.getFirstName(), item.getMiddleInitial(),
+            item.getLastName(), item.getEmailAddress(), item.getPhoneNumber(), item.getStreet(), item.getCity(),
+            item.getState(), item.getZipCode(),
+            item.getBirthDate() != null ? BIRTH_DATE.format(item.getBirthDate()) : "",
+            item.getAction() != null ? item.getAction().getCode() : "", item.getSocialSecurityNumber()));
+    }
+
+    private void reject(String line, String phase, Throwable t, String record) {
+        pending.get().add(line + "," + phase + "," + quote(reason(t)) + "," + (record != null ? record : ""));
+    }
+
+    @Override
+    public void beforeChunk(ChunkContext context) {
+        pending.get().clear();
+    }
+
+    @Override
+    public void afterChunk(ChunkContext context) {
+        List<String> rejects = pending.get();
+        if (rejects.isEmpty()) {
+            return;
+        }
+        synchronized (this) {
+            committed.addAll(rejects);
+            if (committed.size() >= flushSize) {
+                flush();
+            }
+        }
+        rejects.clear();
+    }
+
+    @Override
+    public void afterChunkError(ChunkContext context) {
+        pending.get().clear();
+    }
+
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+    }
+
+    @Override
+    public synchronized ExitStatus afterStep(StepExecution stepExecution) {
+        try {
+            flush();
+        } finally {
+            close();
+        }
+        if (written > 0) {
+            log.info("{} rejected records of step {} written to {}", written, stepExecution.getStepName(), file);
+        }
+        return null;
+    }
+
+    /**
+     * @return the number of rejected records written to the file so far
+     */
+    public synchronized long getWritten() {
+        return written;
+    }
+
+    private void flush() {
+        if (committed.isEmpty()) {
+            return;
+        }
+        try {
+            if (writer == null) {
+                open();
+            }
+            for (String reject : committed) {
+                writer.write(reject);
+                writer.newLine();
+            }
+            writer.flush();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to write rejected records to " + file, e);
+        }
+        written += committed.size();
+        committed.clear();
+    }
+
+    private void open() throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        boolean exists = Files.exists(file) && Files.size(file) > 0;
+        writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        if (!exists) {
+            writer.write(HEADER);
+            writer.newLine();
+        }
+    }
+
+    private void close() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            log.warn("Unable to close {}", file, e);
+        } finally {
+            writer = null;
+        }
+    }
+
+    private static String reason(Throwable t) {
+        Throwable cause = t instanceof FlatFileParseException && t.getCause() != null ? t.getCause() : t;
+        return cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+    }
+
+    private static String csv(String... values) {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            String value = values[i];
+            if (i > 0) {
+                line.append(',');
+            }
+            if (value == null) {
+                continue;
+            }
+            line.append(value.indexOf(',') >= 0 || value.indexOf('"') >= 0 ? quote(value) : value);
+        }
+        return line.toString();
+    }
+
+    private static String quote(String value) {
+        return '"' + value.replace("\"", "\"\"").replace('\r', ' ').replace('\n', ' ') + '"';
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * Spring Batch readers, processors, writers and policies for the patient job.
+ */
+package com.pluralsight.springbatch.patientbatchloader.batch;
@@ -2,6 +2,9 @@ package com.pluralsight.springbatch.patientbatchloader.config;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import com.pluralsight.springbatch.patientbatchloader.aop.logging.LoggingAspect;
+import com.pluralsight.springbatch.patientbatchloader.batch.PatientDuplicateIndex;
+
 /**
  * Properties specific to Patient Batch Loader.
  * <p>
@@ -11,13 +14,69 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 public class ApplicationProperties {
 
 	private final Batch batch = new Batch(); 
+
+	private final Logging logging = new Logging();
+
+	private final Query query = new Query();
+
+	private final Cache cache = new Cache();
 	
 	public Batch getBatch() {
 		return batch;
 	}
+
+	public Logging getLogging() {
+		return logging;
+	}
+
+	public Query getQuery() {
+		return query;
+	}
+
+	public Cache getCache() {
+		return cache;
+	}
 	
 	public static class Batch {
 		private String inputPath = "c:/input";
+
+		private int threads = 1;
+
+		private int partitions = 1;
+
+		private int filesInFlight = 2;
+
+		private ReaderType reader = ReaderType.FLAT_FILE;
+
+		private WriterType writer = WriterType.JPA;
+
+		private long stagingRetention = 7 * 24 * 60 * 60 * 1000L;
+
+		private int idBlockSize = 1000;
+
+		private int skipLimit = 100;
+
+		private int retryLimit = 3;
+
+		private long retryBackOff = 100;
+
+		private final Reject reject = new Reject();
+
+		private final Dedup dedup = new Dedup();
+
+		private final Chunk chunk = new Chunk();
+
+		private final Launcher launcher = new Launcher();
+
+		private final Preflight preflight = new Preflight();
+
+		private final Watch watch = new Watch();
+
+		private final Explorer explorer = new Explorer();
+
+		private final Repository repository = new Repository();
+
+		private final Export export = new Export();
 		
 		public String getInputPath() {
 			return this.inputPath;
@@ -26,5 +85,610 @@ public class ApplicationProperties {
 		public void setInputPath(String inputPath) {
 			this.inputPath = inputPath; 
 		}
+
+		/**
+		 * @return the number of threads processing chunks of the patient step.
+		 *         With more than one thread the reader no longer saves its
+		 *         position, so a restart reprocesses the file from the start.
+		 */
+		public int getThreads() {
+			return this.threads;
+		}
+
+		public void setThreads(int threads) {
+			this.threads = threads;
+		}
+
+		/**
+		 * @return the number of line aligned byte ranges the input file is split
+		 *         into. Above 1 every range runs as its own worker step execution
+		 *         and restarts independently of the others.
+		 */
+		public int getPartitions() {
+			return this.partitions;
+		}
+
+		public void setPartitions(int partitions) {
+			this.partitions = partitions;
+		}
+
+		/**
+		 * @return the number of files the files job loads at the same time
+		 */
+		public int getFilesInFlight() {
+			return this.filesInFlight;
+		}
+
+		public void setFilesInFlight(int filesInFlight) {
+			this.filesInFlight = filesInFlight;
+		}
+
+		public ReaderType getReader() {
+			return this.reader;
+		}
+
+		public void setReader(ReaderType reader) {
+			this.reader = reader;
+		}
+
+		public WriterType getWriter() {
+			return this.writer;
+		}
+
+		public void setWriter(WriterType writer) {
+			this.writer = writer;
+		}
+
+		/**
+		 * @return the milliseconds the staged records of a failed or stopped
+		 *         job instance are kept for a restart; once older, a merge
+		 *         clears them and abandons the instance
+		 */
+		public long getStagingRetention() {
+			return this.stagingRetention;
+		}
+
+		public void setStagingRetention(long stagingRetention) {
+			this.stagingRetention = stagingRetention;
+		}
+
+		/**
+		 * @return the number of patient ids allocated per sequence call. The
+		 *         patient_sequence increment is kept equal to it by Liquibase.
+		 */
+		public int getIdBlockSize() {
+			return this.idBlockSize;
+		}
+
+		public void setIdBlockSize(int idBlockSize) {
+			this.idBlockSize = idBlockSize;
+		}
+
+		/**
+		 * @return the number of malformed records a step execution skips
+		 *         before it fails
+		 */
+		public int getSkipLimit() {
+			return this.skipLimit;
+		}
+
+		public void setSkipLimit(int skipLimit) {
+			this.skipLimit = skipLimit;
+		}
+
+		/**
+		 * @return the number of attempts at writing a chunk that fails on a
+		 *         transient error or a concurrent insert of the same source id
+		 */
+		public int getRetryLimit() {
+			return this.retryLimit;
+		}
+
+		public void setRetryLimit(int retryLimit) {
+			this.retryLimit = retryLimit;
+		}
+
+		/**
+		 * @return the milliseconds to wait before the first retry of a chunk;
+		 *         the wait doubles with every further retry
+		 */
+		public long getRetryBackOff() {
+			return this.retryBackOff;
+		}
+
+		public void setRetryBackOff(long retryBackOff) {
+			this.retryBackOff = retryBackOff;
+		}
+
+		public Reject getReject() {
+			return this.reject;
+		}
+
+		public Dedup getDedup() {
+			return this.dedup;
+		}
+
+		public Chunk getChunk() {
+			return this.chunk;
+		}
+
+		public Launcher getLauncher() {
+			return this.launcher;
+		}
+
+		public Preflight getPreflight() {
+			return this.preflight;
+		}
+
+		public Watch getWatch() {
+			return this.watch;
+		}
+
+		public Explorer getExplorer() {
+			return this.explorer;
+		}
+
+		public Repository getRepository() {
+			return this.repository;
+		}
+
+		public Export getExport() {
+			return this.export;
+		}
 	}	
+
+	/**
+	 * How the patient step reads the input file.
+	 */
+	public enum ReaderType {
+		/**
+		 * Read lines through a buffered Reader, as a FlatFileItemReader does.
+		 */
+		FLAT_FILE,
+		/**
+		 * Split lines on memory mapped windows of the file.
+		 */
+		MAPPED
+	}
+
+	/**
+	 * How the patient step writes to the patient table.
+	 */
+	public enum WriterType {
+		/**
+		 * Apply every entity through the JPA persistence context.
+		 */
+		JPA,
+		/**
+		 * Apply rows with JDBC batch statements, bypassing JPA.
+		 */
+		JDBC,
+		/**
+		 * Append rows to the unindexed patient_staging table with JDBC batch
+		 * statements and merge them into the patient table in a step of their
+		 * own once the whole file is staged.
+		 */
+		STAGING
+	}
+
+	/**
+	 * Export of the patient table to a file of the path, by default the export
+	 * directory of the input path. The table is read pageSize patients at a
+	 * time, in patient id order, each page starting after the last id of the
+	 * one before; the file is written through a buffer of bufferSize chars.
+	 */
+	public static class Export {
+		private String path = "";
+		private int pageSize = 1000;
+		private int bufferSize = 1024 * 1024;
+
+		public String getPath() {
+			return this.path;
+		}
+
+		public void setPath(String path) {
+			this.path = path;
+		}
+
+		public int getPageSize() {
+			return this.pageSize;
+		}
+
+		public void setPageSize(int pageSize) {
+			this.pageSize = pageSize;
+		}
+
+		public int getBufferSize() {
+			return this.bufferSize;
+		}
+
+		public void setBufferSize(int bufferSize) {
+			this.bufferSize = bufferSize;
+		}
+	}
+
+	/**
+	 * Connection pool the JobExplorer reads job metadata with, kept apart from
+	 * the pool of the patient writers and the JobRepository so polling job
+	 * executions does not wait behind bulk inserts.
+	 */
+	public static class Explorer {
+		private int minIdle = 1;
+		private int maxPoolSize = 10;
+
+		public int getMinIdle() {
+			return this.minIdle;
+		}
+
+		public void setMinIdle(int minIdle) {
+			this.minIdle = minIdle;
+		}
+
+		public int getMaxPoolSize() {
+			return this.maxPoolSize;
+		}
+
+		public void setMaxPoolSize(int maxPoolSize) {
+			this.maxPoolSize = maxPoolSize;
+		}
+	}
+
+	/**
+	 * The JobRepository, which shares the chunk transactions of the writers and
+	 * so stays on their pool. Job executions are created at
+	 * isolationLevelForCreate, the name of a TransactionDefinition isolation
+	 * constant; a level below ISOLATION_SERIALIZABLE is cheaper but only safe
+	 * when the same job instance is never launched twice at the same time.
+	 */
+	public static class Repository {
+		private String isolationLevelForCreate = "ISOLATION_SERIALIZABLE";
+
+		public String getIsolationLevelForCreate() {
+			return this.isolationLevelForCreate;
+		}
+
+		public void setIsolationLevelForCreate(String isolationLevelForCreate) {
+			this.isolationLevelForCreate = isolationLevelForCreate;
+		}
+	}
+
+	/**
+	 * Commit interval settings for the patient step. When adaptive is enabled
+	 * the size is only the starting point; the commit interval is then tuned
+	 * at runtime between minSize and maxSize.
+	 */
+	public static class Chunk {
+		private int size = 100;
+		private boolean adaptive = false;
+		private int minSize = 10;
+		private int maxSize = 5000;
+		private long maxWriteLatency = 2000;
+
+		public int getSize() {
+			return this.size;
+		}
+
+		public void setSize(int size) {
+			this.size = size;
+		}
+
+		public boolean isAdaptive() {
+			return this.adaptive;
+		}
+
+		public void setAdaptive(boolean adaptive) {
+			this.adaptive = adaptive;
+		}
+
+		public int getMinSize() {
+			return this.minSize;
+		}
+
+		public void setMinSize(int minSize) {
+			this.minSize = minSize;
+		}
+
+		public int getMaxSize() {
+			return this.maxSize;
+		}
+
+		public void setMaxSize(int maxSize) {
+			this.maxSize = maxSize;
+		}
+
+		/**
+		 * @return the write latency, in milliseconds, above which the adaptive
+		 *         policy always shrinks the commit interval
+		 */
+		public long getMaxWriteLatency() {
+			return this.maxWriteLatency;
+		}
+
+		public void setMaxWriteLatency(long maxWriteLatency) {
+			this.maxWriteLatency = maxWriteLatency;
+		}
+	}
+
+	/**
+	 * Thread pool the job launcher runs jobs on. Launch requests beyond the
+	 * busy threads wait in a queue of at most queueCapacity; once the queue is
+	 * full further launches are rejected.
+	 */
+	public static class Launcher {
+		private int threads = 2;
+		private int queueCapacity = 10;
+
+		public int getThreads() {
+			return this.threads;
+		}
+
+		public void setThreads(int threads) {
+			this.threads = threads;
+		}
+
+		public int getQueueCapacity() {
+			return this.queueCapacity;
+		}
+
+		public void setQueueCapacity(int queueCapacity) {
+			this.queueCapacity = queueCapacity;
+		}
+	}
+
+	/**
+	 * Where the skipped records of a step are written. A blank path puts the
+	 * reject files in a rejected directory under the input path. Rejects are
+	 * written once flushSize of them have been committed.
+	 */
+	public static class Reject {
+		private String path = "";
+		private int flushSize = 100;
+
+		public String getPath() {
+			return this.path;
+		}
+
+		public void setPath(String path) {
+			this.path = path;
+		}
+
+		public int getFlushSize() {
+			return this.flushSize;
+		}
+
+		public void setFlushSize(int flushSize) {
+			this.flushSize = flushSize;
+		}
+	}
+
+	/**
+	 * Optional deduplication of the records of a file on their source id. The
+	 * file is indexed before it is loaded, keeping maxKeys source ids at most,
+	 * and only the record the rule picks for a source id is loaded.
+	 */
+	public static class Dedup {
+		private boolean enabled = false;
+		private PatientDuplicateIndex.Rule rule = PatientDuplicateIndex.Rule.LAST;
+		private int maxKeys = 2_000_000;
+
+		public boolean isEnabled() {
+			return this.enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public PatientDuplicateIndex.Rule getRule() {
+			return this.rule;
+		}
+
+		public void setRule(PatientDuplicateIndex.Rule rule) {
+			this.rule = rule;
+		}
+
+		public int getMaxKeys() {
+			return this.maxKeys;
+		}
+
+		public void setMaxKeys(int maxKeys) {
+			this.maxKeys = maxKeys;
+		}
+	}
+
+	/**
+	 * Optional validation of the whole input file before the patient step. The
+	 * file is checked on threads in parallel and indexed every indexInterval
+	 * lines; the partitioner cuts its ranges at indexed lines. The job fails
+	 * before loading when more lines are invalid than the skip limit.
+	 */
+	public static class Preflight {
+		private boolean enabled = false;
+		private int threads = 4;
+		private int indexInterval = 10000;
+
+		public boolean isEnabled() {
+			return this.enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public int getThreads() {
+			return this.threads;
+		}
+
+		public void setThreads(int threads) {
+			this.threads = threads;
+		}
+
+		public int getIndexInterval() {
+			return this.indexInterval;
+		}
+
+		public void setIndexInterval(int indexInterval) {
+			this.indexInterval = indexInterval;
+		}
+	}
+
+	/**
+	 * Optional watcher of the input path launching the patient job for every
+	 * file matching pattern once it is complete: when a marker file named
+	 * after it with markerSuffix exists or, with a blank markerSuffix, when
+	 * its size has not changed for stableTime milliseconds. At most
+	 * maxInFlight of its jobs are launched and not ended at a time.
+	 */
+	public static class Watch {
+		private boolean enabled = false;
+		private String pattern = "*.{csv,gz,zip}";
+		private String markerSuffix = "";
+		private long stableTime = 2000;
+		private int maxInFlight = 2;
+
+		public boolean isEnabled() {
+			return this.enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public String getPattern() {
+			return this.pattern;
+		}
+
+		public void setPattern(String pattern) {
+			this.pattern = pattern;
+		}
+
+		public String getMarkerSuffix() {
+			return this.markerSuffix;
+		}
+
+		public void setMarkerSuffix(String markerSuffix) {
+			this.markerSuffix = markerSuffix;
+		}
+
+		public long getStableTime() {
+			return this.stableTime;
+		}
+
+		public void setStableTime(long stableTime) {
+			this.stableTime = stableTime;
+		}
+
+		public int getMaxInFlight() {
+			return this.maxInFlight;
+		}
+
+		public void setMaxInFlight(int maxInFlight) {
+			this.maxInFlight = maxInFlight;
+		}
+	}
+
+	/**
+	 * Startup settings of the logging aspect; both can be changed at runtime
+	 * through the loggingaspect actuator endpoint.
+	 */
+	public static class Logging {
+		private LoggingAspect.Mode mode = LoggingAspect.Mode.SUMMARY;
+		private int sampleRate = 100;
+
+		public LoggingAspect.Mode getMode() {
+			return this.mode;
+		}
+
+		public void setMode(LoggingAspect.Mode mode) {
+			this.mode = mode;
+		}
+
+		public int getSampleRate() {
+			return this.sampleRate;
+		}
+
+		public void setSampleRate(int sampleRate) {
+			this.sampleRate = sampleRate;
+		}
+	}
+
+	/**
+	 * Pages of the patient REST resource: pageSize patients unless the request
+	 * asks for another size, which is capped at maxPageSize. Pages are written
+	 * by streamThreads threads; up to streamQueueCapacity more wait for one,
+	 * further requests are rejected.
+	 */
+	public static class Query {
+		private int pageSize = 100;
+		private int maxPageSize = 1000;
+		private int streamThreads = 8;
+		private int streamQueueCapacity = 100;
+
+		public int getPageSize() {
+			return this.pageSize;
+		}
+
+		public void setPageSize(int pageSize) {
+			this.pageSize = pageSize;
+		}
+
+		public int getMaxPageSize() {
+			return this.maxPageSize;
+		}
+
+		public void setMaxPageSize(int maxPageSize) {
+			this.maxPageSize = maxPageSize;
+		}
+
+		public int getStreamThreads() {
+			return this.streamThreads;
+		}
+
+		public void setStreamThreads(int streamThreads) {
+			this.streamThreads = streamThreads;
+		}
+
+		public int getStreamQueueCapacity() {
+			return this.streamQueueCapacity;
+		}
+
+		public void setStreamQueueCapacity(int streamQueueCapacity) {
+			this.streamQueueCapacity = streamQueueCapacity;
+		}
+	}
+
+	/**
+	 * Second-level cache of Hibernate for patients by id and source id and for
+	 * the cacheable patient queries; off unless enabled. Every region holds at
+	 * most maxEntries entries, each for at most timeToLive ms.
+	 */
+	public static class Cache {
+		private boolean enabled = false;
+		private int maxEntries = 10000;
+		private long timeToLive = 600000;
+
+		public boolean isEnabled() {
+			return this.enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public int getMaxEntries() {
+			return this.maxEntries;
+		}
+
+		public void setMaxEntries(int maxEntries) {
+			this.maxEntries = maxEntries;
+		}
+
+		public long getTimeToLive() {
+			return this.timeToLive;
+		}
+
+		public void setTimeToLive(long timeToLive) {
+			this.timeToLive = timeToLive;
+		}
+	}
 }
@@ -1,6 +1,7 @@
 package com.pluralsight.springbatch.patientbatchloader.config;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.sql.DataSource;
 
 import org.springframework.batch.core.configuration.annotation.BatchConfigurer;
@@ -13,6 +14,7 @@ import org.springframework.batch.core.repository.JobRepository;
 import org.springframework.batch.core.repository.support.JobRepositoryFactoryBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.PlatformTransactionManager;
 
@@ -22,6 +24,12 @@ import org.springframework.transaction.PlatformTransactionManager;
  * The @EnableBatchProcessing annotation gives you access to a variety of beans
  * related to batch processing. DefaultBatchConfigurer provides a default
  * strategy for the initialization of Spring Batch dependencies.
+ *
+ * The JobRepository works on the pool and transaction manager patient data is
+ * written with, so the patients of a chunk and the step execution recording
+ * it commit in one transaction. The JobExplorer, which only reads the job
+ * metadata, has a pool of its own so polling job executions does not wait
+ * behind the writers.
  */
 @Component
 @EnableBatchProcessing
@@ -30,6 +38,10 @@ public class BatchConfiguration implements BatchConfigurer {
     private JobRepository jobRepository;
     private JobExplorer jobExplorer;
     private JobLauncher jobLauncher;
+    private ThreadPoolTaskExecutor jobLauncherTaskExecutor;
+
+    @Autowired
+    private ApplicationProperties applicationProperties;
 
     @Autowired
     @Qualifier(value = "batchTransactionManager")
@@ -39,6 +51,10 @@ public class BatchConfiguration implements BatchConfigurer {
     @Qualifier(value = "batchDataSource")
     private DataSource batchDataSource;
 
+    @Autowired
+    @Qualifier(value = "metadataDataSource")
+    private DataSource metadataDataSource;
+
     @Override
     public JobRepository getJobRepository() throws Exception {
         return this.jobRepository;
@@ -63,15 +79,36 @@ public class BatchConfiguration implements BatchConfigurer {
     public void afterPropertiesSet() throws Exception {
         this.jobRepository = createJobRepository();
         JobExplorerFactoryBean jobExplorerFactoryBean = new JobExplorerFactoryBean();
-        jobExplorerFactoryBean.setDataSource(this.batchDataSource);
+        jobExplorerFactoryBean.setDataSource(this.metadataDataSource);
         jobExplorerFactoryBean.afterPropertiesSet();
         this.jobExplorer = jobExplorerFactoryBean.getObject();
         this.jobLauncher = createJobLauncher();
     }
 
+    @PreDestroy
+    public void destroy() {
+        if (this.jobLauncherTaskExecutor != null) {
+            this.jobLauncherTaskExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Jobs run on their own thread pool, so run() returns as soon as the
+     * execution has been created. Once all threads are busy and the queue is
+     * full, run() returns the execution with a FAILED status instead.
+     */
     protected JobLauncher createJobLauncher() throws Exception {
+        ApplicationProperties.Launcher launcher = applicationProperties.getBatch().getLauncher();
+        this.jobLauncherTaskExecutor = new ThreadPoolTaskExecutor();
+        this.jobLauncherTaskExecutor.setCorePoolSize(launcher.getThreads());
+        this.jobLauncherTaskExecutor.setMaxPoolSize(launcher.getThreads());
+        this.jobLauncherTaskExecutor.setQueueCapacity(launcher.getQueueCapacity());
+        this.jobLauncherTaskExecutor.setThreadNamePrefix("patient-job-");
+        this.jobLauncherTaskExecutor.initialize();
+
         SimpleJobLauncher jobLauncher = new SimpleJobLauncher();
         jobLauncher.setJobRepository(jobRepository);
+        jobLauncher.setTaskExecutor(this.jobLauncherTaskExecutor);
         jobLauncher.afterPropertiesSet();
         return jobLauncher;
     }
@@ -80,6 +117,8 @@ public class BatchConfiguration implements BatchConfigurer {
         JobRepositoryFactoryBean factory = new JobRepositoryFactoryBean();
         factory.setDataSource(this.batchDataSource);
         factory.setTransactionManager(getTransactionManager());
+        factory.setIsolationLevelForCreate(
+            applicationProperties.getBatch().getRepository().getIsolationLevelForCreate());
         factory.afterPropertiesSet();
         return factory.getObject();
     }
@@ -1,43 +1,104 @@
 package com.pluralsight.springbatch.patientbatchloader.config;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.List;
 import java.util.function.Function;
 
 import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
 
 import org.apache.commons.lang3.StringUtils;
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.ItemProcessListener;
+import org.springframework.batch.core.ItemReadListener;
+import org.springframework.batch.core.ItemWriteListener;
 import org.springframework.batch.core.Job;
 import org.springframework.batch.core.JobParameters;
 import org.springframework.batch.core.JobParametersInvalidException;
 import org.springframework.batch.core.JobParametersValidator;
+import org.springframework.batch.core.SkipListener;
 import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
 import org.springframework.batch.core.configuration.JobRegistry;
 import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
 import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
 import org.springframework.batch.core.configuration.annotation.StepScope;
 import org.springframework.batch.core.configuration.support.JobRegistryBeanPostProcessor;
-import org.springframework.batch.item.ItemReader;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.batch.core.job.builder.SimpleJobBuilder;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.step.builder.FaultTolerantStepBuilder;
+import org.springframework.batch.core.step.builder.TaskletStepBuilder;
+import org.springframework.batch.core.step.builder.SimpleStepBuilder;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.item.ItemProcessor;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.batch.item.database.JdbcPagingItemReader;
 import org.springframework.batch.item.database.JpaItemWriter;
+import org.springframework.batch.item.database.Order;
+import org.springframework.batch.item.database.builder.JdbcPagingItemReaderBuilder;
 import org.springframework.batch.item.file.FlatFileItemReader;
 import org.springframework.batch.item.file.LineMapper;
+import org.springframework.batch.item.file.FlatFileParseException;
 import org.springframework.batch.item.file.builder.FlatFileItemReaderBuilder;
-import org.springframework.batch.item.file.mapping.DefaultLineMapper;
-import org.springframework.batch.item.file.transform.DelimitedLineTokenizer;
+import org.springframework.batch.item.file.transform.FlatFileFormatException;
+import org.springframework.batch.item.support.SynchronizedItemStreamReader;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.core.io.PathResource;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.jdbc.support.incrementer.DataFieldMaxValueIncrementer;
+import org.springframework.retry.backoff.ExponentialRandomBackOffPolicy;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
+import com.pluralsight.springbatch.patientbatchloader.batch.AdaptiveChunkSizePolicy;
+import com.pluralsight.springbatch.patientbatchloader.batch.MalformedPatientRecordException;
+import com.pluralsight.springbatch.patientbatchloader.batch.MappedPatientFileReader;
+import com.pluralsight.springbatch.patientbatchloader.batch.PatientDuplicateFilter;
+import com.pluralsight.springbatch.patientbatchloader.batch.PatientCacheEvictionListener;
+import com.pluralsight.springbatch.patientbatchloader.batch.PatientExportItemWriter;
+import com.pluralsight.springbatch.patientbatchloader.batch.PatientExportPublishTasklet;
+import com.pluralsight.springbatch.patientbatchloader.batch.PatientFileCompression;
+import com.pluralsight.springbatch.patientbatchloader.batch.PatientFileIndex;
+import com.pluralsight.springbatch.patientbatchloader.batch.PatientFilePartitioner;
+import com.pluralsight.springbatch.patientbatchloader.batch.PatientFilesPartitioner;
+import com.pluralsight.springbatch.patientbatchloader.batch.PatientFileValidationTasklet;
+import com.pluralsight.springbatch.patientbatchloader.batch.PatientFileValidator;
+import com.pluralsight.springbatch.patientbatchloader.batch.PatientFileWatcher;
+import com.pluralsight.springbatch.patientbatchloader.batch.PatientFileRangeReader;
+import com.pluralsight.springbatch.patientbatchloader.batch.PatientJdbcItemWriter;
+import com.pluralsight.springbatch.patientbatchloader.batch.PatientJpaItemWriter;
+import com.pluralsight.springbatch.patientbatchloader.batch.PatientLineMapper;
+import com.pluralsight.springbatch.patientbatchloader.batch.PatientRecordDeduplicator;
+import com.pluralsight.springbatch.patientbatchloader.batch.PatientRecordMapper;
+import com.pluralsight.springbatch.patientbatchloader.batch.PatientRowMapper;
+import com.pluralsight.springbatch.patientbatchloader.batch.PatientStagingItemWriter;
+import com.pluralsight.springbatch.patientbatchloader.batch.PatientStagingMergeTasklet;
+import com.pluralsight.springbatch.patientbatchloader.batch.PatientStepMetricsListener;
+import com.pluralsight.springbatch.patientbatchloader.batch.PooledSequenceMaxValueIncrementer;
+import com.pluralsight.springbatch.patientbatchloader.batch.RejectedRecordWriter;
 import com.pluralsight.springbatch.patientbatchloader.domain.PatientEntity;
 import com.pluralsight.springbatch.patientbatchloader.domain.PatientRecord;
 
+import io.micrometer.core.instrument.MeterRegistry;
+
 @Configuration
 public class BatchJobConfiguration {
 
@@ -54,6 +115,13 @@ public class BatchJobConfiguration {
     @Qualifier(value="batchEntityManagerFactory")
     private EntityManagerFactory batchEntityManagerFactory;
 
+    @Autowired
+    @Qualifier(value="batchDataSource")
+    private DataSource batchDataSource;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     @Bean
     JobRegistryBeanPostProcessor jobRegistryBeanPostProcessor(JobRegistry jobRegistry) {
         JobRegistryBeanPostProcessor postProcessor = new JobRegistryBeanPostProcessor();
@@ -62,27 +130,413 @@ public class BatchJobConfiguration {
     }
 
     @Bean
-    public Job job(Step step) throws Exception {
+    @Primary
+    public Job job(@Qualifier("step") Step step,
+                   @Qualifier("partitionStep") Step partitionStep,
+                   @Qualifier("preflightStep") Step preflightStep,
+                   @Qualifier("mergeStep") Step mergeStep) throws Exception {
+        Step loadStep = applicationProperties.getBatch().getPartitions() > 1 ? partitionStep : step;
+        SimpleJobBuilder builder;
+        if (!applicationProperties.getBatch().getPreflight().isEnabled()) {
+            builder = this.jobBuilderFactory
+                .get(Constants.JOB_NAME)
+                .validator(validator())
+                .start(loadStep);
+        } else {
+            builder = this.jobBuilderFactory
+                .get(Constants.JOB_NAME)
+                .validator(validator())
+                .start(preflightStep)
+                .next(loadStep);
+        }
+        if (isStaged()) {
+            builder.next(mergeStep);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Loads every file of the input path matching the glob job parameter,
+     * filesInFlight files at a time. Every file is a partition, so a restart
+     * only loads the files that did not complete.
+     */
+    @Bean
+    public Job filesJob(@Qualifier("filesStep") Step filesStep,
+                        @Qualifier("mergeStep") Step mergeStep) {
+        SimpleJobBuilder builder = this.jobBuilderFactory
+            .get(Constants.FILES_JOB_NAME)
+            .validator(filesValidator())
+            .start(filesStep);
+        if (isStaged()) {
+            builder.next(mergeStep);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Writes the whole patient table to the file of the job parameter in the
+     * export path, then publishes it under its name. The export step keeps no
+     * restart state and runs again on a restart, as a failed publish step
+     * deletes what it wrote.
+     */
+    @Bean
+    public Job exportJob(@Qualifier("exportStep") Step exportStep,
+                         @Qualifier("exportPublishStep") Step exportPublishStep) {
         return this.jobBuilderFactory
-            .get(Constants.JOB_NAME)
-            .validator(validator())
-            .start(step)
+            .get(Constants.EXPORT_JOB_NAME)
+            .validator(exportValidator())
+            .start(exportStep)
+            .next(exportPublishStep)
+            .build();
+    }
+
+    @Bean
+    public Step exportStep(@Qualifier("exportReader") ItemStreamReader<PatientEntity> exportReader,
+                           @Qualifier("exportWriter") PatientExportItemWriter exportWriter) {
+        return this.stepBuilderFactory
+            .get(Constants.EXPORT_STEP_NAME)
+            .<PatientEntity, PatientEntity>chunk(applicationProperties.getBatch().getExport().getPageSize())
+            .reader(exportReader)
+            .writer(exportWriter)
+            .allowStartIfComplete(true)
+            .build();
+    }
+
+    @Bean
+    public Step exportPublishStep(@Qualifier("exportPublishTasklet") Tasklet exportPublishTasklet) {
+        return this.stepBuilderFactory
+            .get(Constants.EXPORT_PUBLISH_STEP_NAME)
+            .tasklet(exportPublishTasklet)
+            .build();
+    }
+
+    @Bean
+    @StepScope
+    public PatientExportPublishTasklet exportPublishTasklet(
+        @Value("#{jobParameters['" + Constants.JOB_PARAM_EXPORT_FILE_NAME + "']}")String fileName) {
+        return new PatientExportPublishTasklet(exportPath().resolve(fileName));
+    }
+
+    /**
+     * Reads the patient table a page at a time with keyset pagination: every
+     * page is a query on the primary key for the patients after the last id of
+     * the page before, so a page costs the same however deep into the table
+     * it is, and only one page is held in memory.
+     */
+    @Bean
+    @StepScope
+    public JdbcPagingItemReader<PatientEntity> exportReader() {
+        int pageSize = applicationProperties.getBatch().getExport().getPageSize();
+        return new JdbcPagingItemReaderBuilder<PatientEntity>()
+            .name(Constants.EXPORT_READER_NAME)
+            .dataSource(batchDataSource)
+            .selectClause("SELECT " + PatientRowMapper.COLUMNS)
+            .fromClause("FROM patient")
+            .sortKeys(Collections.singletonMap("patient_id", Order.ASCENDING))
+            .pageSize(pageSize)
+            .fetchSize(pageSize)
+            .rowMapper(new PatientRowMapper())
+            .saveState(false)
+            .build();
+    }
+
+    @Bean
+    @StepScope
+    public PatientExportItemWriter exportWriter(
+        @Value("#{jobParameters['" + Constants.JOB_PARAM_EXPORT_FILE_NAME + "']}")String fileName) {
+        ApplicationProperties.Export export = applicationProperties.getBatch().getExport();
+        return new PatientExportItemWriter(exportPath().resolve(fileName), export.getBufferSize());
+    }
+
+    /**
+     * Merges what the load steps staged, when the writer is staging. Of the
+     * records of a source id staged by the files job, those of the last file
+     * in name order win.
+     */
+    @Bean
+    public Step mergeStep(JobExplorer jobExplorer, JobRepository jobRepository) {
+        TaskletStepBuilder builder = this.stepBuilderFactory
+            .get(Constants.MERGE_STEP_NAME)
+            .tasklet(new PatientStagingMergeTasklet(batchDataSource, jobExplorer, jobRepository,
+                applicationProperties.getBatch().getStagingRetention()));
+        if (applicationProperties.getCache().isEnabled()) {
+            PatientCacheEvictionListener eviction = new PatientCacheEvictionListener(batchEntityManagerFactory);
+            builder.listener((ChunkListener) eviction);
+            builder.listener((StepExecutionListener) eviction);
+        }
+        return builder.build();
+    }
+
+    @Bean
+    public Step filesStep(@Qualifier("filesPartitioner") Partitioner filesPartitioner,
+                          @Qualifier("fileStep") Step fileStep) {
+        return this.stepBuilderFactory
+            .get(Constants.FILES_STEP_NAME)
+            .partitioner(Constants.FILE_STEP_NAME, filesPartitioner)
+            .step(fileStep)
+            .taskExecutor(filesTaskExecutor())
             .build();
     }
 
     @Bean
-    public Step step(ItemReader<PatientRecord> itemReader,
-                     Function<PatientRecord, PatientEntity> processor,
-                     JpaItemWriter<PatientEntity> writer) throws Exception {
+    public Step fileStep(@Qualifier("fileReader") ItemStreamReader<PatientRecord> fileReader,
+                         Function<PatientRecord, PatientEntity> processor) throws Exception {
+        return chunkStepBuilder(Constants.FILE_STEP_NAME)
+            .reader(fileReader)
+            .processor(deduplicated(processor))
+            .writer(patientWriter())
+            .build();
+    }
+
+    @Bean
+    @StepScope
+    public Partitioner filesPartitioner(
+        @Value("#{jobParameters['" + Constants.JOB_PARAM_FILE_PATTERN + "']}")String filePattern) {
+        return new PatientFilesPartitioner(Paths.get(applicationProperties.getBatch().getInputPath()), filePattern);
+    }
+
+    @Bean
+    @StepScope
+    public ItemStreamReader<PatientRecord> fileReader(
+        @Value("#{stepExecutionContext['" + PatientFilesPartitioner.FILE_NAME + "']}")String fileName) {
+        return flatFileReader(fileName);
+    }
+
+    /**
+     * Launches the patient job for every complete file landing in the input
+     * path, when application.batch.watch.enabled is set.
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "application.batch.watch", name = "enabled", havingValue = "true")
+    public PatientFileWatcher fileWatcher(JobLauncher jobLauncher, JobExplorer jobExplorer,
+                                          @Qualifier("job") Job job) {
+        ApplicationProperties.Watch watch = applicationProperties.getBatch().getWatch();
+        PatientFileWatcher watcher = new PatientFileWatcher(Paths.get(applicationProperties.getBatch().getInputPath()),
+            jobLauncher, jobExplorer, job, Constants.JOB_PARAM_FILE_NAME);
+        watcher.setPattern(watch.getPattern());
+        watcher.setMarkerSuffix(watch.getMarkerSuffix());
+        watcher.setStableTime(watch.getStableTime());
+        watcher.setMaxInFlight(watch.getMaxInFlight());
+        watcher.setMeterRegistry(meterRegistry);
+        return watcher;
+    }
+
+    @Bean
+    public Step preflightStep(@Qualifier("preflightTasklet") Tasklet preflightTasklet) {
+        return this.stepBuilderFactory
+            .get(Constants.PREFLIGHT_STEP_NAME)
+            .tasklet(preflightTasklet)
+            .build();
+    }
+
+    @Bean
+    @StepScope
+    public PatientFileValidationTasklet preflightTasklet(
+        @Value("#{jobParameters['" + Constants.JOB_PARAM_FILE_NAME + "']}")String fileName) {
+        ApplicationProperties.Preflight preflight = applicationProperties.getBatch().getPreflight();
+        PatientFileValidator validator = new PatientFileValidator(lineMapper(), new PatientRecordMapper());
+        validator.setThreads(preflight.getThreads());
+        validator.setIndexInterval(preflight.getIndexInterval());
+        return new PatientFileValidationTasklet(validator, inputFile(fileName), 1,
+            applicationProperties.getBatch().getSkipLimit());
+    }
+
+    @Bean
+    public Step step(@Qualifier("reader") ItemStreamReader<PatientRecord> flatFileReader,
+                     @Qualifier("mappedReader") ItemStreamReader<PatientRecord> mappedReader,
+                     Function<PatientRecord, PatientEntity> processor) throws Exception {
+        SimpleStepBuilder<PatientRecord, PatientEntity> builder = chunkStepBuilder(Constants.STEP_NAME);
+        ItemStreamReader<PatientRecord> itemReader =
+            applicationProperties.getBatch().getReader() == ApplicationProperties.ReaderType.MAPPED
+                ? mappedReader : flatFileReader;
+        int threads = applicationProperties.getBatch().getThreads();
+        if (threads > 1 && isStaged()) {
+            // the staging writer numbers rows in the order chunks are written, which threads would shuffle
+            throw new IllegalStateException("application.batch.writer=staging needs application.batch.threads=1, "
+                + "use application.batch.partitions to load a file in parallel");
+        }
+        if (threads > 1) {
+            SynchronizedItemStreamReader<PatientRecord> synchronizedReader =
+                new SynchronizedItemStreamReader<>();
+            synchronizedReader.setDelegate(itemReader);
+            builder.reader(synchronizedReader);
+            builder.taskExecutor(stepTaskExecutor());
+            builder.throttleLimit(threads);
+        } else {
+            builder.reader(itemReader);
+        }
+        return builder
+            .processor(deduplicated(processor))
+            .writer(patientWriter())
+            .build();
+    }
+
+    @Bean
+    public Step partitionStep(@Qualifier("partitioner") Partitioner partitioner,
+                              @Qualifier("workerStep") Step workerStep) {
+        int partitions = applicationProperties.getBatch().getPartitions();
         return this.stepBuilderFactory
-            .get(Constants.STEP_NAME)
-            .<PatientRecord, PatientEntity>chunk(2)
-            .reader(itemReader)
-            .processor(processor)
-            .writer(writer)
+            .get(Constants.PARTITION_STEP_NAME)
+            .partitioner(Constants.WORKER_STEP_NAME, partitioner)
+            .step(workerStep)
+            .gridSize(partitions)
+            .taskExecutor(partitionTaskExecutor())
             .build();
     }
 
+    @Bean
+    public Step workerStep(@Qualifier("rangeReader") ItemStreamReader<PatientRecord> rangeReader,
+                           Function<PatientRecord, PatientEntity> processor) throws Exception {
+        return chunkStepBuilder(Constants.WORKER_STEP_NAME)
+            .reader(rangeReader)
+            .processor(deduplicated(processor))
+            .writer(patientWriter())
+            .build();
+    }
+
+    private SimpleStepBuilder<PatientRecord, PatientEntity> chunkStepBuilder(String stepName) {
+        ApplicationProperties.Chunk chunk = applicationProperties.getBatch().getChunk();
+        AdaptiveChunkSizePolicy policy = null;
+        SimpleStepBuilder<PatientRecord, PatientEntity> simpleBuilder;
+        if (!chunk.isAdaptive()) {
+            simpleBuilder = this.stepBuilderFactory
+                .get(stepName)
+                .<PatientRecord, PatientEntity>chunk(chunk.getSize());
+        } else {
+            policy = new AdaptiveChunkSizePolicy(chunk.getSize(),
+                chunk.getMinSize(), chunk.getMaxSize(), chunk.getMaxWriteLatency());
+            simpleBuilder = this.stepBuilderFactory
+                .get(stepName)
+                .<PatientRecord, PatientEntity>chunk(policy);
+        }
+        // Malformed lines and records are skipped where they are read or processed, without
+        // rolling back the chunk. Records that would fail in the database are rejected while
+        // processing, so write errors are not skippable: skipping one would make Spring Batch
+        // rewrite the whole chunk item by item in a transaction each to find the bad record.
+        // A write that fails on a transient error or on a source id inserted concurrently by
+        // another partition is retried as a whole; the retry updates the row the other inserted.
+        ExponentialRandomBackOffPolicy backOffPolicy = new ExponentialRandomBackOffPolicy();
+        backOffPolicy.setInitialInterval(applicationProperties.getBatch().getRetryBackOff());
+        FaultTolerantStepBuilder<PatientRecord, PatientEntity> builder = simpleBuilder
+            .faultTolerant()
+            .skip(FlatFileParseException.class)
+            .skip(FlatFileFormatException.class)
+            .skip(MalformedPatientRecordException.class)
+            .noRollback(FlatFileParseException.class)
+            .noRollback(FlatFileFormatException.class)
+            .noRollback(MalformedPatientRecordException.class)
+            .skipLimit(applicationProperties.getBatch().getSkipLimit())
+            .retry(TransientDataAccessException.class)
+            .retry(DataIntegrityViolationException.class)
+            .retryLimit(applicationProperties.getBatch().getRetryLimit())
+            .backOffPolicy(backOffPolicy);
+        // faultTolerant() does not carry chunk listeners over, so listeners are registered after it
+        if (policy != null) {
+            builder.listener((ItemWriteListener<Object>) policy);
+            builder.listener((StepExecutionListener) policy);
+            builder.listener((ChunkListener) policy);
+        }
+        PatientStepMetricsListener metrics = new PatientStepMetricsListener(meterRegistry, stepName);
+        builder.listener((ItemReadListener<Object>) metrics);
+        builder.listener((ItemProcessListener<Object, Object>) metrics);
+        builder.listener((ItemWriteListener<Object>) metrics);
+        builder.listener((SkipListener<Object, Object>) metrics);
+        builder.listener((ChunkListener) metrics);
+        RejectedRecordWriter rejects = rejectedRecordWriter(null, null);
+        builder.listener((SkipListener<PatientRecord, PatientEntity>) rejects);
+        builder.listener((ChunkListener) rejects);
+        builder.listener((StepExecutionListener) rejects);
+        if (applicationProperties.getBatch().getDedup().isEnabled()) {
+            builder.listener((StepExecutionListener) duplicateFilter(null));
+        }
+        // the JPA writer goes through Hibernate, which evicts what it changes itself, and the
+        // changes of the staging writer reach the patient table in the merge step
+        if (applicationProperties.getCache().isEnabled()
+            && applicationProperties.getBatch().getWriter() == ApplicationProperties.WriterType.JDBC) {
+            PatientCacheEvictionListener eviction = new PatientCacheEvictionListener(batchEntityManagerFactory);
+            builder.listener((ChunkListener) eviction);
+            builder.listener((StepExecutionListener) eviction);
+        }
+        return builder;
+    }
+
+    /**
+     * Drops the records deduplication does not pick for their source id. They
+     * are mapped first all the same, so a malformed record is still rejected
+     * rather than silently dropped.
+     */
+    private ItemProcessor<PatientRecord, PatientEntity> deduplicated(Function<PatientRecord, PatientEntity> processor) {
+        if (!applicationProperties.getBatch().getDedup().isEnabled()) {
+            return processor::apply;
+        }
+        PatientDuplicateFilter filter = duplicateFilter(null);
+        return record -> {
+            PatientEntity entity = processor.apply(record);
+            return filter.isLoaded(record) ? entity : null;
+        };
+    }
+
+    @Bean
+    @StepScope
+    public PatientDuplicateFilter duplicateFilter(
+        @Value("#{stepExecutionContext['" + PatientFilesPartitioner.FILE_NAME + "'] ?: jobParameters['"
+            + Constants.JOB_PARAM_FILE_NAME + "']}")String fileName) {
+        return new PatientDuplicateFilter(deduplicator(), inputFile(fileName));
+    }
+
+    @Bean
+    public PatientRecordDeduplicator deduplicator() {
+        ApplicationProperties.Dedup dedup = applicationProperties.getBatch().getDedup();
+        return new PatientRecordDeduplicator(lineMapper(), processor(), dedup.getRule(), dedup.getMaxKeys());
+    }
+
+    /**
+     * Reject file of a step execution. The job instance and step name keep the
+     * files of partitions and reruns apart, while a restart appends to the file
+     * of the execution it restarts.
+     */
+    @Bean
+    @StepScope
+    public RejectedRecordWriter rejectedRecordWriter(
+        @Value("#{stepExecutionContext['" + PatientFilesPartitioner.FILE_NAME + "'] ?: jobParameters['"
+            + Constants.JOB_PARAM_FILE_NAME + "']}")String fileName,
+        @Value("#{stepExecution}")StepExecution stepExecution) {
+        ApplicationProperties.Reject reject = applicationProperties.getBatch().getReject();
+        Path directory = StringUtils.isBlank(reject.getPath())
+            ? Paths.get(applicationProperties.getBatch().getInputPath(), "rejected")
+            : Paths.get(reject.getPath());
+        String name = Paths.get(fileName).getFileName() + "-" + stepExecution.getJobExecution().getJobId()
+            + "-" + stepExecution.getStepName().replaceAll("[^A-Za-z0-9._-]", "_") + ".rejected.csv";
+        return new RejectedRecordWriter(directory.resolve(name), reject.getFlushSize());
+    }
+
+    @Bean
+    public TaskExecutor stepTaskExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(applicationProperties.getBatch().getThreads());
+        executor.setMaxPoolSize(applicationProperties.getBatch().getThreads());
+        executor.setThreadNamePrefix("patient-step-");
+        return executor;
+    }
+
+    @Bean
+    public TaskExecutor filesTaskExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(applicationProperties.getBatch().getFilesInFlight());
+        executor.setMaxPoolSize(applicationProperties.getBatch().getFilesInFlight());
+        executor.setThreadNamePrefix("patient-file-");
+        return executor;
+    }
+
+    @Bean
+    public TaskExecutor partitionTaskExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(applicationProperties.getBatch().getPartitions());
+        executor.setMaxPoolSize(applicationProperties.getBatch().getPartitions());
+        executor.setThreadNamePrefix("patient-partition-");
+        return executor;
+    }
+
     @Bean
     public JobParametersValidator validator() {
         return new JobParametersValidator() {
@@ -94,8 +548,7 @@ public class BatchJobConfiguration {
                 		"The patient-batch-loader.fileName parameter is required.");
                 }
                 try {
-                    Path file = Paths.get(applicationProperties.getBatch().getInputPath() + 
-                		File.separator + fileName);
+                    Path file = inputFile(fileName);
                     if (Files.notExists(file) || !Files.isReadable(file)) {
                         throw new Exception("File did not exist or was not readable");
                     }
@@ -108,62 +561,212 @@ public class BatchJobConfiguration {
         };
     }
 
+    @Bean
+    public JobParametersValidator exportValidator() {
+        return new JobParametersValidator() {
+            @Override
+            public void validate(JobParameters parameters) throws JobParametersInvalidException {
+                String fileName = parameters.getString(Constants.JOB_PARAM_EXPORT_FILE_NAME);
+                if (StringUtils.isBlank(fileName)) {
+                    throw new JobParametersInvalidException(
+                        "The patient-exporter.fileName parameter is required.");
+                }
+                Path file;
+                try {
+                    file = exportPath().resolve(fileName).normalize();
+                } catch (Exception e) {
+                    file = null;
+                }
+                if (file == null || !exportPath().normalize().equals(file.getParent())) {
+                    throw new JobParametersInvalidException(
+                        "The patient-exporter.fileName parameter needs to be a file name without a directory.");
+                }
+            }
+        };
+    }
+
+    @Bean
+    public JobParametersValidator filesValidator() {
+        return new JobParametersValidator() {
+            @Override
+            public void validate(JobParameters parameters) throws JobParametersInvalidException {
+                String filePattern = parameters.getString(Constants.JOB_PARAM_FILE_PATTERN);
+                if (StringUtils.isBlank(filePattern)) {
+                    throw new JobParametersInvalidException(
+                        "The patient-batch-loader.filePattern parameter is required.");
+                }
+                List<String> fileNames;
+                try {
+                    fileNames = PatientFilesPartitioner.fileNames(
+                        Paths.get(applicationProperties.getBatch().getInputPath()), filePattern);
+                } catch (Exception e) {
+                    throw new JobParametersInvalidException(
+                        "The patient-batch-loader.filePattern parameter needs to be a valid glob.");
+                }
+                if (fileNames.isEmpty()) {
+                    throw new JobParametersInvalidException(
+                        "No file in the input path matches the patient-batch-loader.filePattern parameter.");
+                }
+            }
+        };
+    }
+
     @Bean
     @StepScope
     public FlatFileItemReader<PatientRecord> reader(
         @Value("#{jobParameters['" + Constants.JOB_PARAM_FILE_NAME + "']}")String fileName) {
-        return new FlatFileItemReaderBuilder<PatientRecord>()
+        return flatFileReader(fileName);
+    }
+
+    /**
+     * Reads the input file through a buffered Reader, decompressing it on the
+     * fly when it is a gzip or zip file. The restart position is a line count,
+     * which holds for the decompressed lines just the same.
+     */
+    private FlatFileItemReader<PatientRecord> flatFileReader(String fileName) {
+        FlatFileItemReader<PatientRecord> reader = new FlatFileItemReaderBuilder<PatientRecord>()
             .name(Constants.ITEM_READER_NAME)
-            .resource(
-                new PathResource(
-                    Paths.get(applicationProperties.getBatch().getInputPath() +
-                        File.separator + fileName)))
+            .resource(PatientFileCompression.resource(inputFile(fileName)))
             .linesToSkip(1)
             .lineMapper(lineMapper())
+            // the line count is meaningless when several threads share the reader
+            .saveState(applicationProperties.getBatch().getThreads() <= 1)
             .build();
+        // UTF-8 like the other readers and the duplicate index, whatever the platform default
+        reader.setEncoding(StandardCharsets.UTF_8.name());
+        return reader;
     }
 
+    /**
+     * A compressed file can not be mapped, so it is read by the flat file
+     * reader instead.
+     */
     @Bean
     @StepScope
+    public ItemStreamReader<PatientRecord> mappedReader(
+        @Value("#{jobParameters['" + Constants.JOB_PARAM_FILE_NAME + "']}")String fileName) {
+        if (isCompressed(fileName)) {
+            return flatFileReader(fileName);
+        }
+        MappedPatientFileReader reader =
+            new MappedPatientFileReader(inputFile(fileName), 0, Long.MAX_VALUE, lineMapper());
+        reader.setName(Constants.ITEM_READER_NAME);
+        reader.setLinesToSkip(1);
+        // the position is meaningless when several threads share the reader
+        reader.setSaveState(applicationProperties.getBatch().getThreads() <= 1);
+        return reader;
+    }
+
+    @Bean
+    @StepScope
+    public Partitioner partitioner(
+        @Value("#{jobParameters['" + Constants.JOB_PARAM_FILE_NAME + "']}")String fileName,
+        @Value("#{jobExecutionContext['" + PatientFileIndex.CONTEXT_KEY + "']}")PatientFileIndex index) {
+        PatientFilePartitioner partitioner = new PatientFilePartitioner(inputFile(fileName), 1);
+        partitioner.setIndex(index);
+        partitioner.setIndexInterval(applicationProperties.getBatch().getPreflight().getIndexInterval());
+        return partitioner;
+    }
+
+    @Bean
+    @StepScope
+    public ItemStreamReader<PatientRecord> rangeReader(
+        @Value("#{jobParameters['" + Constants.JOB_PARAM_FILE_NAME + "']}")String fileName,
+        @Value("#{stepExecutionContext['" + PatientFilePartitioner.START_OFFSET + "']}")Long startOffset,
+        @Value("#{stepExecutionContext['" + PatientFilePartitioner.END_OFFSET + "']}")Long endOffset) {
+        if (applicationProperties.getBatch().getReader() == ApplicationProperties.ReaderType.MAPPED
+                && !isCompressed(fileName)) {
+            MappedPatientFileReader reader =
+                new MappedPatientFileReader(inputFile(fileName), startOffset, endOffset, lineMapper());
+            reader.setName(Constants.ITEM_READER_NAME);
+            return reader;
+        }
+        PatientFileRangeReader reader =
+            new PatientFileRangeReader(inputFile(fileName), startOffset, endOffset, lineMapper());
+        reader.setName(Constants.ITEM_READER_NAME);
+        return reader;
+    }
+
+    @Bean
     public Function<PatientRecord, PatientEntity> processor() {
-        return (patientRecord) ->  {
-            return new PatientEntity(
-                patientRecord.getSourceId(),
-                patientRecord.getFirstName(),
-                patientRecord.getMiddleInitial(),
-                patientRecord.getLastName(),
-                patientRecord.getEmailAddress(),
-                patientRecord.getPhoneNumber(),
-                patientRecord.getStreet(),
-                patientRecord.getCity(),
-                patientRecord.getState(),
-                patientRecord.getZip(),
-                LocalDate.parse(patientRecord.getBirthDate(), DateTimeFormatter.ofPattern("M/dd/yyyy")),
-                patientRecord.getSsn());
-        };
+        return new PatientRecordMapper();
     }
 
     @Bean
     @StepScope
     public JpaItemWriter<PatientEntity> writer() {
-        JpaItemWriter<PatientEntity> writer = new JpaItemWriter<>();
+        PatientJpaItemWriter writer = new PatientJpaItemWriter();
         writer.setEntityManagerFactory(batchEntityManagerFactory);
+        writer.setMeterRegistry(meterRegistry);
         return writer;
     }
 
+    /**
+     * Staging writer of a step. The rows of a file of the files job are
+     * numbered above those of the files before it in name order, every file
+     * being allowed 2^44 bytes.
+     */
+    @Bean
+    @StepScope
+    public PatientStagingItemWriter stagingWriter(
+        @Value("#{stepExecution}")StepExecution stepExecution,
+        @Value("#{stepExecutionContext['" + PatientFilePartitioner.START_OFFSET + "'] ?: 0}")long startOffset,
+        @Value("#{stepExecutionContext['" + PatientFilePartitioner.END_OFFSET + "'] ?: " + (1L << 44) + "L}")
+            long endOffset,
+        @Value("#{stepExecutionContext['" + PatientFilesPartitioner.FILE_INDEX + "'] ?: 0}")long fileIndex) {
+        return new PatientStagingItemWriter(batchDataSource, patientIdIncrementer(),
+            stepExecution.getJobExecution().getJobId(), (fileIndex << 44) + startOffset,
+            (fileIndex << 44) + endOffset);
+    }
+
+    @Bean
+    public PatientJdbcItemWriter jdbcWriter() {
+        return new PatientJdbcItemWriter(batchDataSource, patientIdIncrementer());
+    }
+
+    @Bean
+    public DataFieldMaxValueIncrementer patientIdIncrementer() {
+        return new PooledSequenceMaxValueIncrementer(batchDataSource, PatientEntity.ID_SEQUENCE,
+            applicationProperties.getBatch().getIdBlockSize());
+    }
+
+    private ItemWriter<PatientEntity> patientWriter() {
+        switch (applicationProperties.getBatch().getWriter()) {
+            case JDBC:
+                return jdbcWriter();
+            case STAGING:
+                return stagingWriter(null, 0, 0, 0);
+            default:
+                return writer();
+        }
+    }
+
     @Bean
     public LineMapper<PatientRecord> lineMapper() {
-        DefaultLineMapper<PatientRecord> mapper = new DefaultLineMapper<>();
-        mapper.setFieldSetMapper((fieldSet) -> new PatientRecord(
-            fieldSet.readString(0), fieldSet.readString(1),
-            fieldSet.readString(2), fieldSet.readString(3),
-            fieldSet.readString(4), fieldSet.readString(5),
-            fieldSet.readString(6), fieldSet.readString(7),
-            fieldSet.readString(8), fieldSet.readString(9),
-            fieldSet.readString(10), fieldSet.readString(11),
-            fieldSet.readString(12)));
-        mapper.setLineTokenizer(new DelimitedLineTokenizer());
-        return mapper;
+        return new PatientLineMapper();
+    }
+
+    private boolean isStaged() {
+        return applicationProperties.getBatch().getWriter() == ApplicationProperties.WriterType.STAGING;
+    }
+
+    private Path inputFile(String fileName) {
+        return Paths.get(applicationProperties.getBatch().getInputPath() + File.separator + fileName);
+    }
+
+    private Path exportPath() {
+        ApplicationProperties.Export export = applicationProperties.getBatch().getExport();
+        return StringUtils.isBlank(export.getPath())
+            ? Paths.get(applicationProperties.getBatch().getInputPath(), "export")
+            : Paths.get(export.getPath());
+    }
+
+    private boolean isCompressed(String fileName) {
+        try {
+            return PatientFileCompression.of(inputFile(fileName)).isCompressed();
+        } catch (IOException e) {
+            throw new ItemStreamException("Unable to read " + fileName, e);
+        }
     }
 
 }
@@ -0,0 +1,66 @@
+package com.pluralsight.springbatch.patientbatchloader.config;
+
+import java.time.Duration;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+
+import org.ehcache.config.builders.CacheConfigurationBuilder;
+import org.ehcache.config.builders.ExpiryPolicyBuilder;
+import org.ehcache.config.builders.ResourcePoolsBuilder;
+import org.ehcache.jsr107.Eh107Configuration;
+import org.ehcache.jsr107.EhcacheCachingProvider;
+import org.hibernate.cache.internal.StandardQueryCache;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.pluralsight.springbatch.patientbatchloader.domain.PatientEntity;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.JCacheMetrics;
+
+/**
+ * Local second-level cache of Hibernate, when application.cache.enabled is
+ * set: patients by id, and the results of the cacheable patient queries,
+ * such as the lookup by source id. DatabaseConfiguration hands the
+ * CacheManager over to Hibernate, which finds these regions in it.
+ *
+ * Every region keeps at most maxEntries entries on the heap, evicting the
+ * least recently used, for at most timeToLive ms. The statistics of each are
+ * bound to the MeterRegistry as cache.gets, cache.puts, cache.removals and
+ * cache.evictions, tagged with the region name.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "application.cache", name = "enabled", havingValue = "true")
+public class CacheConfiguration {
+
+    private static final String[] REGIONS = { PatientEntity.class.getName(), StandardQueryCache.class.getName() };
+
+    private final ApplicationProperties applicationProperties;
+
+    public CacheConfiguration(ApplicationProperties applicationProperties) {
+        this.applicationProperties = applicationProperties;
+    }
+
+    @Bean(name = "patientCacheManager", destroyMethod = "close")
+    public CacheManager patientCacheManager(MeterRegistry meterRegistry) {
+        ApplicationProperties.Cache cache = applicationProperties.getCache();
+        javax.cache.configuration.Configuration<Object, Object> configuration =
+            Eh107Configuration.fromEhcacheCacheConfiguration(CacheConfigurationBuilder
+                .newCacheConfigurationBuilder(Object.class, Object.class,
+                    ResourcePoolsBuilder.heap(cache.getMaxEntries()))
+                .withExpiry(ExpiryPolicyBuilder.timeToLiveExpiration(Duration.ofMillis(cache.getTimeToLive())))
+                .build());
+        CacheManager cacheManager = Caching.getCachingProvider(EhcacheCachingProvider.class.getName())
+            .getCacheManager();
+        for (String region : REGIONS) {
+            if (cacheManager.getCache(region) == null) {
+                cacheManager.createCache(region, configuration);
+            }
+            cacheManager.enableStatistics(region, true);
+            JCacheMetrics.monitor(meterRegistry, cacheManager.getCache(region));
+        }
+        return cacheManager;
+    }
+}
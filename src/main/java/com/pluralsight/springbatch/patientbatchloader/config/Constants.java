@@ -41,16 +41,81 @@ public final class Constants {
 	 * Name of the step
 	 */
 	public static final String STEP_NAME = "process-patients-step";
+
+	/**
+	 * Name of the step splitting the file into byte range partitions
+	 */
+	public static final String PARTITION_STEP_NAME = "partition-patients-step";
+
+	/**
+	 * Name of the step processing a single byte range partition
+	 */
+	public static final String WORKER_STEP_NAME = "process-patients-partition-step";
+
+	/**
+	 * Name of the optional step validating and indexing the file before it is loaded
+	 */
+	public static final String PREFLIGHT_STEP_NAME = "validate-patients-step";
+
+	/**
+	 * Name of the step merging the staged records into the patient table
+	 */
+	public static final String MERGE_STEP_NAME = "merge-patient-staging-step";
+
+	/**
+	 * Name of the job loading every file matching a glob
+	 */
+	public static final String FILES_JOB_NAME = "patient-files-loader";
+
+	/**
+	 * Name of the step splitting the matching files into one partition per file
+	 */
+	public static final String FILES_STEP_NAME = "partition-patient-files-step";
+
+	/**
+	 * Name of the step loading a single file of the files job
+	 */
+	public static final String FILE_STEP_NAME = "process-patient-file-step";
+	
+	/**
+	 * Name of the job exporting the patient table to a file
+	 */
+	public static final String EXPORT_JOB_NAME = "patient-exporter";
+
+	/**
+	 * Name of the step of the export job
+	 */
+	public static final String EXPORT_STEP_NAME = "export-patients-step";
+
+	/**
+	 * Name of the step publishing the file of the export job
+	 */
+	public static final String EXPORT_PUBLISH_STEP_NAME = "publish-export-step";
 	
 	/**
 	 * Job parameter name for job file name
 	 */
 	public static final String JOB_PARAM_FILE_NAME = "patient-batch-loader.fileName"; 
+
+	/**
+	 * Job parameter name for the glob of the files job
+	 */
+	public static final String JOB_PARAM_FILE_PATTERN = "patient-batch-loader.filePattern";
+	
+	/**
+	 * Job parameter name for the file the export job writes
+	 */
+	public static final String JOB_PARAM_EXPORT_FILE_NAME = "patient-exporter.fileName";
 	
 	/**
 	 * Item reader name for the job
 	 */
 	public static final String ITEM_READER_NAME = "patient-item-reader";
+
+	/**
+	 * Item reader name for the export job
+	 */
+	public static final String EXPORT_READER_NAME = "patient-export-reader";
 	
 	private Constants() {
 	}
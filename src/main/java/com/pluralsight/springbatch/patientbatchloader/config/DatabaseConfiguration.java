@@ -1,14 +1,17 @@
 package com.pluralsight.springbatch.patientbatchloader.config;
 
+import javax.cache.CacheManager;
 import javax.sql.DataSource;
 
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.autoconfigure.liquibase.LiquibaseProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.core.env.Environment;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
 import org.springframework.jmx.export.MBeanExporter;
@@ -21,6 +24,7 @@ import org.springframework.transaction.annotation.EnableTransactionManagement;
 
 import liquibase.integration.spring.SpringLiquibase;
 
+import java.util.Collections;
 import java.util.Properties;
 
 /**
@@ -33,7 +37,8 @@ import java.util.Properties;
 @Configuration
 @EnableJpaRepositories(
 	value = "com.pluralsight.springbatch.patientbatchloader",
-	entityManagerFactoryRef = "batchEntityManagerFactory")
+	entityManagerFactoryRef = "batchEntityManagerFactory",
+	transactionManagerRef = "batchTransactionManager")
 @EnableTransactionManagement
 public class DatabaseConfiguration {
 
@@ -41,10 +46,18 @@ public class DatabaseConfiguration {
 
 	private final Environment env;
 
-	public DatabaseConfiguration(Environment env) {
+	private final ApplicationProperties applicationProperties;
+
+	private final ObjectProvider<CacheManager> patientCacheManager;
+
+	public DatabaseConfiguration(Environment env, ApplicationProperties applicationProperties,
+			ObjectProvider<CacheManager> patientCacheManager) {
 		this.env = env;
+		this.applicationProperties = applicationProperties;
+		this.patientCacheManager = patientCacheManager;
 	}
 
+    @Primary
     @Bean(name = "batchDataSource")
     public DataSource batchDataSource() {
         HikariConfig config = new HikariConfig();
@@ -56,6 +69,27 @@ public class DatabaseConfiguration {
         config.setMaximumPoolSize(env.getProperty("spring.datasource.max-active",
             Integer.class, 100));
         config.setTransactionIsolation("TRANSACTION_READ_COMMITTED");
+        config.setPoolName("batch");
+        config.setRegisterMbeans(true);
+        return new HikariDataSource(config);
+    }
+
+    /**
+     * Pool of the JobExplorer, on the same database as the patient data but
+     * sized on its own. The JobRepository stays on the batch pool, as its
+     * step execution updates have to commit with the chunks they record.
+     */
+    @Bean(name = "metadataDataSource")
+    public DataSource metadataDataSource() {
+        ApplicationProperties.Explorer explorer = applicationProperties.getBatch().getExplorer();
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl(env.getRequiredProperty("spring.datasource.url"));
+        config.setUsername(env.getProperty("spring.datasource.username"));
+        config.setPassword(env.getProperty("spring.datasource.password"));
+        config.setMinimumIdle(explorer.getMinIdle());
+        config.setMaximumPoolSize(explorer.getMaxPoolSize());
+        config.setTransactionIsolation("TRANSACTION_READ_COMMITTED");
+        config.setPoolName("metadata");
         config.setRegisterMbeans(true);
         return new HikariDataSource(config);
     }
@@ -92,6 +126,17 @@ public class DatabaseConfiguration {
             jpaProps.put("hibernate.order_updates", "true");
         }
 
+        jpaProps.put(PooledSequenceIdGenerator.BLOCK_SIZE_SETTING,
+            applicationProperties.getBatch().getIdBlockSize());
+
+        // the second-level and query cache, when CacheConfiguration is enabled
+        CacheManager cacheManager = patientCacheManager.getIfAvailable();
+        jpaProps.put("hibernate.cache.use_second_level_cache", cacheManager != null);
+        jpaProps.put("hibernate.cache.use_query_cache", cacheManager != null);
+        if (cacheManager != null) {
+            jpaProps.put("hibernate.cache.region.factory_class", new ManagedJCacheRegionFactory(cacheManager));
+        }
+
         jpaProps.put("hibernate.show_sql", env.getProperty(
             "spring.jpa.properties.hibernate.show_sql", "false"));
         jpaProps.put("hibernate.format_sql",env.getProperty(
@@ -109,7 +154,7 @@ public class DatabaseConfiguration {
     @Bean
     public MBeanExporter exporter() {
         final MBeanExporter exporter = new MBeanExporter();
-        exporter.setExcludedBeans("batchDataSource");
+        exporter.setExcludedBeans("batchDataSource", "metadataDataSource");
         return exporter;
     }
 
@@ -121,6 +166,8 @@ public class DatabaseConfiguration {
 		liquibase.setContexts(liquibaseProperties.getContexts());
 		liquibase.setDefaultSchema(liquibaseProperties.getDefaultSchema());
 		liquibase.setDropFirst(liquibaseProperties.isDropFirst());
+		liquibase.setChangeLogParameters(Collections.singletonMap("patientIdBlockSize",
+				String.valueOf(applicationProperties.getBatch().getIdBlockSize())));
 		if (env.acceptsProfiles(Constants.SPRING_PROFILE_NO_LIQUIBASE)) {
 			liquibase.setShouldRun(false);
 		} else {
@@ -6,18 +6,29 @@ import org.springframework.context.annotation.EnableAspectJAutoProxy;
 import org.springframework.core.env.Environment;
 
 import com.pluralsight.springbatch.patientbatchloader.aop.logging.LoggingAspect;
+import com.pluralsight.springbatch.patientbatchloader.aop.logging.LoggingAspectEndpoint;
+
+import io.micrometer.core.instrument.MeterRegistry;
 
 /**
  * Enables the logging aspect. If eventually using this for production, its
  * recommended to annotate the class for the Spring Profile "dev" only so that
- * the logging aspect isn't applied in production mode.
+ * the logging aspect isn't applied in production mode. Its default summary
+ * mode only times calls; see {@link LoggingAspect.Mode}.
  */
 @Configuration
 @EnableAspectJAutoProxy
 public class LoggingAspectConfiguration {
 
 	@Bean
-	public LoggingAspect loggingAspect(Environment env) {
-		return new LoggingAspect(env);
+	public LoggingAspect loggingAspect(Environment env, MeterRegistry meterRegistry,
+			ApplicationProperties applicationProperties) {
+		ApplicationProperties.Logging logging = applicationProperties.getLogging();
+		return new LoggingAspect(env, meterRegistry, logging.getMode(), logging.getSampleRate());
+	}
+
+	@Bean
+	public LoggingAspectEndpoint loggingAspectEndpoint(LoggingAspect loggingAspect) {
+		return new LoggingAspectEndpoint(loggingAspect);
 	}
 }
@@ -0,0 +1,31 @@
+package com.pluralsight.springbatch.patientbatchloader.config;
+
+import java.util.Properties;
+
+import javax.cache.CacheManager;
+
+import org.hibernate.cache.jcache.JCacheRegionFactory;
+
+/**
+ * JCacheRegionFactory building the regions of Hibernate in a CacheManager of
+ * the application context rather than in one it looks up itself, so it finds
+ * the caches CacheConfiguration sized. Regions without a cache there, only
+ * the timestamps of the last table updates, get the JCache defaults.
+ *
+ * Stopping the factory closes the CacheManager, as it would its own.
+ */
+public class ManagedJCacheRegionFactory extends JCacheRegionFactory {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient CacheManager cacheManager;
+
+    public ManagedJCacheRegionFactory(CacheManager cacheManager) {
+        this.cacheManager = cacheManager;
+    }
+
+    @Override
+    protected CacheManager getCacheManager(Properties properties) {
+        return cacheManager;
+    }
+}
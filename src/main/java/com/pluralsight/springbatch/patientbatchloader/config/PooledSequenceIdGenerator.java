@@ -0,0 +1,34 @@
+package com.pluralsight.springbatch.patientbatchloader.config;
+
+import java.util.Properties;
+
+import org.hibernate.MappingException;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+/**
+ * Sequence generator whose increment (the number of ids handed out per
+ * sequence call) is taken from the JPA properties instead of the mapping, so
+ * the block size can follow the application configuration. Meant to be used
+ * with the pooled-lo optimizer and a database sequence incrementing by the
+ * same block size.
+ */
+public class PooledSequenceIdGenerator extends SequenceStyleGenerator {
+
+	/**
+	 * JPA property holding the id block size.
+	 */
+	public static final String BLOCK_SIZE_SETTING = "patient-batch-loader.id.block_size";
+
+	@Override
+	public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) throws MappingException {
+		Object blockSize = serviceRegistry.getService(ConfigurationService.class).getSettings()
+				.get(BLOCK_SIZE_SETTING);
+		if (blockSize != null) {
+			params.setProperty(INCREMENT_PARAM, blockSize.toString());
+		}
+		super.configure(type, params, serviceRegistry);
+	}
+}
@@ -11,19 +11,26 @@ import org.springframework.boot.web.servlet.ServletRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.env.Environment;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 /**
  * Configuration of web application with Servlet 3.0 APIs.
  */
 @Configuration
-public class WebConfiguration implements ServletContextInitializer {
+public class WebConfiguration implements ServletContextInitializer, WebMvcConfigurer {
 
     private final Logger log = LoggerFactory.getLogger(WebConfiguration.class);
 
     private final Environment env;
 
-    public WebConfiguration(Environment env) {
+    private final ApplicationProperties applicationProperties;
+
+    public WebConfiguration(Environment env, ApplicationProperties applicationProperties) {
         this.env = env;
+        this.applicationProperties = applicationProperties;
     }
 
     @Override
@@ -34,6 +41,26 @@ public class WebConfiguration implements ServletContextInitializer {
         log.info("Web application fully configured");
     }
 
+    /**
+     * Runs the streamed responses of the patient resource on a bounded pool,
+     * rather than on a new thread per request.
+     */
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(streamTaskExecutor());
+    }
+
+    @Bean
+    public AsyncTaskExecutor streamTaskExecutor() {
+        ApplicationProperties.Query query = applicationProperties.getQuery();
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(query.getStreamThreads());
+        executor.setMaxPoolSize(query.getStreamThreads());
+        executor.setQueueCapacity(query.getStreamQueueCapacity());
+        executor.setThreadNamePrefix("patient-stream-");
+        return executor;
+    }
+
 	@Bean
     @SuppressWarnings({"rawtypes", "unchecked"})
     public ServletRegistrationBean h2servletRegistration(){
@@ -0,0 +1,48 @@
+package com.pluralsight.springbatch.patientbatchloader.domain;
+
+/**
+ * What a patient record of the input file asks for, from its action column.
+ * Inserts and updates are both applied as an upsert on the source id, so a
+ * feed can be re-sent without creating duplicates.
+ */
+public enum PatientAction {
+
+	INSERT("I"),
+
+	UPDATE("U"),
+
+	DELETE("D");
+
+	private final String code;
+
+	PatientAction(String code) {
+		this.code = code;
+	}
+
+	public String getCode() {
+		return code;
+	}
+
+	/**
+	 * @return the action of the code in the input file, or null if there is
+	 *         no such action
+	 */
+	public static PatientAction fromCode(String code) {
+		if (code == null || code.length() != 1) {
+			return null;
+		}
+		switch (code.charAt(0)) {
+			case 'I':
+			case 'i':
+				return INSERT;
+			case 'U':
+			case 'u':
+				return UPDATE;
+			case 'D':
+			case 'd':
+				return DELETE;
+			default:
+				return null;
+		}
+	}
+}
@@ -8,19 +8,42 @@ import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
-import javax.persistence.SequenceGenerator;
 import javax.persistence.Table;
+import javax.persistence.Transient;
 import javax.validation.constraints.NotNull;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+
+/**
+ * A patient, identified by its source id. With the second-level cache enabled
+ * patients are cached by id; writers changing the table past Hibernate have to
+ * evict them.
+ */
 @Entity
 @Table(name = "patient")
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 public class PatientEntity implements Serializable {
 
 	private static final long serialVersionUID = 1L;
 
+	/**
+	 * Database sequence backing the patient ids. Every value starts a block of
+	 * ids (pooled-lo), see PooledSequenceIdGenerator.
+	 */
+	public static final String ID_SEQUENCE = "patient_sequence";
+
 	@Id
-	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "sequenceGenerator")
-	@SequenceGenerator(name = "sequenceGenerator")
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "patientSequenceGenerator")
+	@GenericGenerator(
+		name = "patientSequenceGenerator",
+		strategy = "com.pluralsight.springbatch.patientbatchloader.config.PooledSequenceIdGenerator",
+		parameters = {
+			@Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = ID_SEQUENCE),
+			@Parameter(name = SequenceStyleGenerator.OPT_PARAM, value = "pooled-lo") })
 	@Column(name = "patient_id")
 	private Long id;
 
@@ -70,6 +93,13 @@ public class PatientEntity implements Serializable {
 	@Column(name = "social_security_number", nullable = false)
 	private String socialSecurityNumber;
 
+	/**
+	 * Action of the input record the entity was mapped from, not persisted.
+	 * Null is treated as an insert.
+	 */
+	@Transient
+	private PatientAction action;
+
 	public PatientEntity() {
 
 	}
@@ -308,6 +338,21 @@ public class PatientEntity implements Serializable {
 		this.socialSecurityNumber = socialSecurityNumber;
 	}
 
+	/**
+	 * @return the action
+	 */
+	public PatientAction getAction() {
+		return action;
+	}
+
+	/**
+	 * @param action
+	 *            the action to set
+	 */
+	public void setAction(PatientAction action) {
+		this.action = action;
+	}
+
     @Override
     public String toString() {
         return "PatientEntity{" +
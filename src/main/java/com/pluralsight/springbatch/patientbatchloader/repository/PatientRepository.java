@@ -1,11 +1,50 @@
 package com.pluralsight.springbatch.patientbatchloader.repository;
 
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import javax.persistence.QueryHint;
+
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.pluralsight.springbatch.patientbatchloader.domain.PatientEntity;
+import com.pluralsight.springbatch.patientbatchloader.web.rest.vm.PatientVM;
 
+/**
+ * Besides the JpaRepository methods, queries selecting patients straight into
+ * {@link PatientVM}s, without hydrating entities. The streaming queries return
+ * the patients after a patient id in patient id order, the pageable only
+ * limiting how many; the next page starts after the last id returned. They
+ * have to run in a transaction and their stream has to be closed.
+ *
+ * The lookup by source id is cacheable: with the query cache enabled, its
+ * result stays cached until the patient table is written or it expires.
+ */
 @Repository
 public interface PatientRepository extends JpaRepository<PatientEntity, Long> {
 
+	String SELECT_VM = "select new com.pluralsight.springbatch.patientbatchloader.web.rest.vm.PatientVM("
+		+ "p.id, p.sourceId, p.firstName, p.middleInitial, p.lastName, p.emailAddress, p.phoneNumber, p.street, "
+		+ "p.city, p.state, p.zipCode, p.birthDate, p.socialSecurityNumber) from PatientEntity p ";
+
+	@Query(SELECT_VM + "where p.sourceId = :sourceId")
+	@QueryHints(@QueryHint(name = org.hibernate.annotations.QueryHints.CACHEABLE, value = "true"))
+	Optional<PatientVM> findVMBySourceId(@Param("sourceId") String sourceId);
+
+	@Query(SELECT_VM + "where p.id > :after order by p.id")
+	Stream<PatientVM> streamVMs(@Param("after") long after, Pageable pageable);
+
+	// ordered by all the columns of the index, which the database then reads in order, stopping at the page size
+	@Query(SELECT_VM + "where p.socialSecurityNumber = :ssn and p.id > :after order by p.socialSecurityNumber, p.id")
+	Stream<PatientVM> streamVMsBySocialSecurityNumber(@Param("ssn") String ssn, @Param("after") long after,
+			Pageable pageable);
+
+	@Query(SELECT_VM + "where p.lastName = :lastName and p.id > :after order by p.lastName, p.id")
+	Stream<PatientVM> streamVMsByLastName(@Param("lastName") String lastName, @Param("after") long after,
+			Pageable pageable);
 }
@@ -0,0 +1,358 @@
+package com.pluralsight.springbatch.patientbatchloader.tools;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.UUID;
+
+import org.springframework.util.Assert;
+
+/**
+ * Writes synthetic patient files in the 13 column layout of the patient job,
+ * for load testing partitioning, restarts and the writer modes at any size.
+ *
+ * Rows are inserts by default. A configurable share of the rows updates or
+ * deletes a patient inserted earlier in the file, re-sends an earlier insert
+ * (a duplicate), or is malformed: a wrong column count, an unparseable birth
+ * date, an unterminated quote or an unknown action. Source ids are derived
+ * from the seed and the insert number, so earlier patients are referred to
+ * without keeping anything in memory and the same seed always produces the
+ * same file. Malformed rows number their source ids from -1 down, so none
+ * of them is the source id of a patient of the file.
+ *
+ * Run from the command line with
+ * <pre>
+ * ./gradlew generatePatients -Prows=5000000 -Poutput=data/patients-5m.csv -Pupdates=0.05 -Pmalformed=0.001
+ * </pre>
+ * or call main with the same options as --name=value arguments.
+ */
+public class PatientFileGenerator {
+
+    private static final String HEADER = "source_id,first_name,middle_initial,last_name,email_address,"
+        + "phone_number,street,city,state,zip,birth_date,action,ssn";
+
+    private static final String[] FIRST_NAMES = { "Hettie", "Carl", "Maria", "James", "Linnie", "Jeremy",
+        "Ora", "Dylan", "Essie", "Nathaniel", "Lula", "Victor", "Rosa", "Alvin", "Bertha", "Leon", "Mae",
+        "Owen", "Nellie", "Marcus", "Ida", "Howard", "Cora", "Luis", "Elva", "Gordon", "Sadie", "Hunter" };
+
+    private static final String[] LAST_NAMES = { "Schmidt", "Ramirez", "Hodges", "Patton", "Fleming",
+        "Vasquez", "Cobb", "Larson", "Guerrero", "Wagner", "Daniel", "McCoy", "Steele", "Obrien", "Harper",
+        "Nguyen", "Stokes", "Barber", "Lowe", "Holland", "Frazier", "Bishop", "Maldonado", "Reyes" };
+
+    private static final String[] STREET_NAMES = { "Hutij", "Zolir", "Pemte", "Afewa", "Bunug", "Kisav",
+        "Nuhog", "Vemot", "Ofiju", "Ragac", "Dujep", "Toweb", "Luvro", "Sipaj", "Ecuva", "Gefoz" };
+
+    private static final String[] STREET_SUFFIXES = { "Terrace", "Street", "Avenue", "Road", "Lane",
+        "Court", "Parkway", "Way", "Place", "Boulevard" };
+
+    private static final String[] CITIES = { "Kahgepu", "Zudiwa", "Pobcuno", "Leperi", "Ewaoju", "Vadnaha",
+        "Jitsoci", "Okguvep", "Rumlosu", "Nisfovi", "Hevabu", "Tiaskon" };
+
+    private static final String[] STATES = { "AL", "AK", "AZ", "AR", "CA", "CO", "CT", "DE", "FL", "GA",
+        "HI", "ID", "IL", "IN", "IA", "KS", "KY", "LA", "ME", "MD", "MA", "MI", "MN", "MS", "MO", "MT",
+        "NE", "NV", "NH", "NJ", "NM", "NY", "NC", "ND", "OH", "OK", "OR", "PA", "RI", "SC", "SD", "TN",
+        "TX", "UT", "VT", "VA", "WA", "WV", "WI", "WY" };
+
+    private static final String[] EMAIL_DOMAINS = { "uge.li", "wuh.gov", "kozta.edu", "ivbo.net",
+        "jutnev.org", "gec.com" };
+
+    private long rows = 10_000;
+    private long seed = 42;
+    private double updates;
+    private double deletes;
+    private double duplicates;
+    private double malformed;
+
+    private final Counts counts = new Counts();
+
+    public void setRows(long rows) {
+        Assert.isTrue(rows >= 0, "The number of rows must not be negative");
+        this.rows = rows;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * @param updates share of the rows updating a patient inserted earlier
+     */
+    public void setUpdates(double updates) {
+        this.updates = share(updates);
+    }
+
+    /**
+     * @param deletes share of the rows deleting a patient inserted earlier
+     */
+    public void setDeletes(double deletes) {
+        this.deletes = share(deletes);
+    }
+
+    /**
+     * @param duplicates share of the rows re-sending an earlier insert
+     */
+    public void setDuplicates(double duplicates) {
+        this.duplicates = share(duplicates);
+    }
+
+    /**
+     * @param malformed share of the rows the job has to skip
+     */
+    public void setMalformed(double malformed) {
+        this.malformed = share(malformed);
+    }
+
+    /**
+     * @return the number of rows of each kind written by the last generate
+     */
+    public Counts getCounts() {
+        return counts;
+    }
+
+    public void generate(Path file) throws IOException {
+        try (Writer writer = new BufferedWriter(
+                new OutputStreamWriter(Files.newOutputStream(file), StandardCharsets.UTF_8), 1 << 20)) {
+            generate(writer);
+        }
+    }
+
+    /**
+     * Writes the header and the rows. Only the current line is held in
+     * memory, whatever the number of rows.
+     */
+    public void generate(Writer writer) throws IOException {
+        Assert.isTrue(updates + deletes + duplicates + malformed <= 1, "The shares must not add up to more than 1");
+        counts.reset();
+        SplitMix random = new SplitMix(seed);
+        StringBuilder line = new StringBuilder(256);
+        writer.write(HEADER);
+        writer.write('\n');
+        for (long row = 0; row < rows; row++) {
+            line.setLength(0);
+            double kind = random.nextDouble();
+            // the first row is always an insert, so there is a patient to refer to
+            if (counts.inserts == 0 || kind >= updates + deletes + duplicates + malformed) {
+                appendPatient(line, sourceId(counts.inserts++), "I", random);
+            } else if (kind < updates) {
+                appendPatient(line, sourceId(random.nextLong(counts.inserts)), "U", random);
+                counts.updates++;
+            } else if (kind < updates + deletes) {
+                appendPatient(line, sourceId(random.nextLong(counts.inserts)), "D", random);
+                counts.deletes++;
+            } else if (kind < updates + deletes + duplicates) {
+                // the attributes of the original insert are not kept, only its source id
+                appendPatient(line, sourceId(random.nextLong(counts.inserts)), "I", random);
+                counts.duplicates++;
+            } else {
+                appendMalformed(line, sourceId(-1 - counts.malformed++), random);
+            }
+            line.append('\n');
+            writer.append(line);
+        }
+    }
+
+    private UUID sourceId(long insert) {
+        return new UUID(SplitMix.mix(seed ^ insert), SplitMix.mix(~seed + insert));
+    }
+
+    private static void appendPatient(StringBuilder line, UUID sourceId, String action, SplitMix random) {
+        String firstName = pick(FIRST_NAMES, random);
+        String lastName = pick(LAST_NAMES, random);
+        line.append(sourceId).append(',')
+            .append(firstName).append(',')
+            .append((char) ('A' + random.nextInt(26))).append(',')
+            .append(lastName).append(',');
+        line.append(Character.toLowerCase(firstName.charAt(0))).append(lastName.toLowerCase())
+            .append(random.nextInt(1000)).append('@').append(pick(EMAIL_DOMAINS, random)).append(',');
+        line.append('(');
+        digits(line, 200 + random.nextInt(800), 3).append(") ");
+        digits(line, 200 + random.nextInt(800), 3).append('-');
+        digits(line, random.nextInt(10_000), 4).append(',');
+        line.append(pick(STREET_NAMES, random)).append(' ').append(pick(STREET_SUFFIXES, random)).append(',')
+            .append(pick(CITIES, random)).append(',')
+            .append(pick(STATES, random)).append(',');
+        digits(line, random.nextInt(100_000), 5).append(',');
+        int month = 1 + random.nextInt(12);
+        line.append(month).append('/');
+        digits(line, 1 + random.nextInt(month == 2 ? 28 : 30), 2).append('/')
+            .append(1920 + random.nextInt(99)).append(',');
+        line.append(action).append(',');
+        digits(line, 1 + random.nextInt(899), 3).append('-');
+        digits(line, 1 + random.nextInt(99), 2).append('-');
+        digits(line, 1 + random.nextInt(9999), 4);
+    }
+
+    private static void appendMalformed(StringBuilder line, UUID sourceId, SplitMix random) {
+        appendPatient(line, sourceId, "I", random);
+        switch (random.nextInt(4)) {
+            case 0:
+                // a column too many
+                line.append(",extra");
+                break;
+            case 1:
+                replaceColumn(line, 10, "13/45/1961");
+                break;
+            case 2:
+                replaceColumn(line, 1, "\"Unterminated");
+                break;
+            default:
+                replaceColumn(line, 11, "X");
+                break;
+        }
+    }
+
+    private static void replaceColumn(StringBuilder line, int column, String value) {
+        int start = 0;
+        for (int i = 0; i < column; i++) {
+            start = line.indexOf(",", start) + 1;
+        }
+        int end = line.indexOf(",", start);
+        line.replace(start, end < 0 ? line.length() : end, value);
+    }
+
+    private static StringBuilder digits(StringBuilder line, int value, int width) {
+        for (int i = Integer.toString(value).length(); i < width; i++) {
+            line.append('0');
+        }
+        return line.append(value);
+    }
+
+    private static String pick(String[] values, SplitMix random) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private static double share(double share) {
+        Assert.isTrue(share >= 0 && share <= 1, "A share must be between 0 and 1");
+        return share;
+    }
+
+    public static void main(String[] args) throws IOException {
+        PatientFileGenerator generator = new PatientFileGenerator();
+        Path output = Paths.get("patients.csv");
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Expected --name=value but got " + arg);
+            }
+            String name = arg.substring(2, separator);
+            String value = arg.substring(separator + 1);
+            switch (name) {
+                case "rows":
+                    generator.setRows(Long.parseLong(value));
+                    break;
+                case "output":
+                    output = Paths.get(value);
+                    break;
+                case "seed":
+                    generator.setSeed(Long.parseLong(value));
+                    break;
+                case "updates":
+                    generator.setUpdates(Double.parseDouble(value));
+                    break;
+                case "deletes":
+                    generator.setDeletes(Double.parseDouble(value));
+                    break;
+                case "duplicates":
+                    generator.setDuplicates(Double.parseDouble(value));
+                    break;
+                case "malformed":
+                    generator.setMalformed(Double.parseDouble(value));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option --" + name + ", expected one of "
+                        + "rows, output, seed, updates, deletes, duplicates, malformed");
+            }
+        }
+        long start = System.nanoTime();
+        generator.generate(output);
+        System.out.printf("Wrote %s in %d ms: %s%n", output.toAbsolutePath(),
+            (System.nanoTime() - start) / 1_000_000, generator.getCounts());
+    }
+
+    /**
+     * Number of rows of each kind in a generated file.
+     */
+    public static class Counts {
+
+        private long inserts;
+        private long updates;
+        private long deletes;
+        private long duplicates;
+        private long malformed;
+
+        void reset() {
+            inserts = 0;
+            updates = 0;
+            deletes = 0;
+            duplicates = 0;
+            malformed = 0;
+        }
+
+        public long getInserts() {
+            return inserts;
+        }
+
+        public long getUpdates() {
+            return updates;
+        }
+
+        public long getDeletes() {
+            return deletes;
+        }
+
+        public long getDuplicates() {
+            return duplicates;
+        }
+
+        public long getMalformed() {
+            return malformed;
+        }
+
+        @Override
+        public String toString() {
+            return inserts + " inserts, " + updates + " updates, " + deletes + " deletes, "
+                + duplicates + " duplicates, " + malformed + " malformed";
+        }
+    }
+
+    /**
+     * SplitMix64, a small and fast seeded generator. Unlike java.util.Random
+     * there is no synchronization per call.
+     */
+    private static final class SplitMix {
+
+        private long state;
+
+        SplitMix(long seed) {
+            this.state = seed;
+        }
+
+        static long mix(long z) {
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            return z ^ (z >>> 31);
+        }
+
+        long nextLong() {
+            state += 0x9E3779B97F4A7C15L;
+            return mix(state);
+        }
+
+        long nextLong(long bound) {
+            return (nextLong() >>> 1) % bound;
+        }
+
+        int nextInt(int bound) {
+            return (int) nextLong(bound);
+        }
+
+        double nextDouble() {
+            return (nextLong() >>> 11) * 0x1.0p-53;
+        }
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * Command line tools run next to the application, such as the synthetic patient file generator.
+ */
+package com.pluralsight.springbatch.patientbatchloader.tools;
@@ -1,52 +1,144 @@
 package com.pluralsight.springbatch.patientbatchloader.web.rest;
 
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.springframework.batch.core.BatchStatus;
 import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
 import org.springframework.batch.core.JobParameter;
 import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.JobParametersInvalidException;
+import org.springframework.batch.core.explore.JobExplorer;
 import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.batch.core.repository.JobExecutionAlreadyRunningException;
+import org.springframework.batch.core.repository.JobInstanceAlreadyCompleteException;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.pluralsight.springbatch.patientbatchloader.config.Constants;
+import com.pluralsight.springbatch.patientbatchloader.web.rest.vm.JobExecutionVM;
 
 /**
- * REST controller for getting the audit events.
+ * REST controller for starting patient jobs and following their executions.
  */
 @RestController
 @RequestMapping("/job")
 public class JobResource {
 
 	private final JobLauncher jobLauncher;
+	private final JobExplorer jobExplorer;
 	private final Job job;
+	private final Job filesJob;
+	private final Job exportJob;
 
-	public JobResource(JobLauncher jobLauncher, Job job) {
+	public JobResource(JobLauncher jobLauncher, JobExplorer jobExplorer, Job job,
+			@Qualifier("filesJob") Job filesJob, @Qualifier("exportJob") Job exportJob) {
 		this.jobLauncher = jobLauncher;
+		this.jobExplorer = jobExplorer;
 		this.job = job;
+		this.filesJob = filesJob;
+		this.exportJob = exportJob;
 	}
 
 	/**
-	 * POST /job/:fileName : post to execute a job using the file name given
+	 * GET /job/:fileName : start a job for the file name given. The job runs
+	 * in the background, its progress is available from the Location returned.
 	 *
 	 * @param fileName
 	 *            the fileName of the job file to run
-	 * @return the ResponseEntity with status 200 (OK) or status 500 (Job Failure)
+	 * @return the ResponseEntity with status 202 (Accepted) and the job
+	 *         execution, status 400 (Bad Request) if the file is not valid,
+	 *         status 409 (Conflict) if the file is loading or loaded already,
+	 *         status 503 (Service Unavailable) if too many jobs are waiting
+	 *         already, or status 500 (Job Failure)
 	 */
 	@GetMapping("/{fileName:.+}")
-	public ResponseEntity<String> runJob(@PathVariable String fileName) {
+	public ResponseEntity<?> runJob(@PathVariable String fileName) throws URISyntaxException {
 		Map<String, JobParameter> parameterMap = new HashMap<>();
 		parameterMap.put(Constants.JOB_PARAM_FILE_NAME, new JobParameter(fileName));
+		return run(job, new JobParameters(parameterMap));
+	}
+
+	/**
+	 * GET /job/files?pattern=:glob : start a job loading every file of the
+	 * input path whose name matches the glob, e.g. patients-*.csv.gz. The
+	 * files are loaded a few at a time; running the same glob again after a
+	 * failure loads only the files that did not complete.
+	 *
+	 * @param pattern
+	 *            the glob the file names have to match
+	 * @return the same as for a single file, with status 400 (Bad Request) if
+	 *         no file matches
+	 */
+	@GetMapping(value = "/files", params = "pattern")
+	public ResponseEntity<?> runFilesJob(@RequestParam String pattern) throws URISyntaxException {
+		Map<String, JobParameter> parameterMap = new HashMap<>();
+		parameterMap.put(Constants.JOB_PARAM_FILE_PATTERN, new JobParameter(pattern));
+		return run(filesJob, new JobParameters(parameterMap));
+	}
+
+	/**
+	 * GET /job/export/:fileName : start a job writing the whole patient table
+	 * to the file name given in the export path, gzip compressed when it ends
+	 * with .gz. The file only appears once the export completed.
+	 *
+	 * @param fileName
+	 *            the name of the file to write
+	 * @return the same as for loading a file, with status 409 (Conflict) if
+	 *         the file is being or has been exported already
+	 */
+	@GetMapping("/export/{fileName:.+}")
+	public ResponseEntity<?> runExportJob(@PathVariable String fileName) throws URISyntaxException {
+		Map<String, JobParameter> parameterMap = new HashMap<>();
+		parameterMap.put(Constants.JOB_PARAM_EXPORT_FILE_NAME, new JobParameter(fileName));
+		return run(exportJob, new JobParameters(parameterMap));
+	}
+
+	private ResponseEntity<?> run(Job job, JobParameters jobParameters) throws URISyntaxException {
+		JobExecution jobExecution;
 		try {
-			jobLauncher.run(job, new JobParameters(parameterMap));
+			jobExecution = jobLauncher.run(job, jobParameters);
+		} catch (JobParametersInvalidException e) {
+			return new ResponseEntity<String>("Failure: " + e.getMessage(), HttpStatus.BAD_REQUEST);
+		} catch (JobExecutionAlreadyRunningException | JobInstanceAlreadyCompleteException e) {
+			return new ResponseEntity<String>("Failure: " + e.getMessage(), HttpStatus.CONFLICT);
 		} catch (Exception e) {
 			return new ResponseEntity<String>("Failure: " + e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
 		}
-		return new ResponseEntity<String>("Success", HttpStatus.OK);
+		if (jobExecution.getStatus() == BatchStatus.FAILED && jobExecution.getStartTime() == null) {
+			// the launcher fails the executions it could not queue before they start
+			return new ResponseEntity<String>("Failure: too many jobs are waiting to run, try again later",
+				HttpStatus.SERVICE_UNAVAILABLE);
+		}
+		return ResponseEntity.accepted()
+			.location(new URI("/job/executions/" + jobExecution.getId()))
+			.body(new JobExecutionVM(jobExecution));
+	}
+
+	/**
+	 * GET /job/executions/:executionId : get the status and item counts of a
+	 * job execution.
+	 *
+	 * @param executionId
+	 *            the id of the job execution
+	 * @return the ResponseEntity with status 200 (OK) and the job execution, or
+	 *         with status 404 (Not Found)
+	 */
+	@GetMapping("/executions/{executionId}")
+	public ResponseEntity<JobExecutionVM> getJobExecution(@PathVariable Long executionId) {
+		JobExecution jobExecution = jobExplorer.getJobExecution(executionId);
+		if (jobExecution == null) {
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		}
+		return new ResponseEntity<>(new JobExecutionVM(jobExecution), HttpStatus.OK);
 	}
 }
@@ -0,0 +1,176 @@
+package com.pluralsight.springbatch.patientbatchloader.web.rest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.pluralsight.springbatch.patientbatchloader.config.ApplicationProperties;
+import com.pluralsight.springbatch.patientbatchloader.repository.PatientRepository;
+import com.pluralsight.springbatch.patientbatchloader.web.rest.vm.PatientSearchVM;
+import com.pluralsight.springbatch.patientbatchloader.web.rest.vm.PatientVM;
+
+/**
+ * REST controller for reading loaded patients.
+ */
+@RestController
+@RequestMapping("/patients")
+public class PatientResource {
+
+	private final PatientRepository patientRepository;
+	private final TransactionTemplate transactionTemplate;
+	private final ObjectMapper objectMapper;
+	private final ObjectWriter patientWriter;
+	private final ApplicationProperties.Query query;
+
+	public PatientResource(PatientRepository patientRepository,
+			@Qualifier("batchTransactionManager") PlatformTransactionManager transactionManager,
+			ObjectMapper objectMapper, ApplicationProperties applicationProperties) {
+		this.patientRepository = patientRepository;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.transactionTemplate.setReadOnly(true);
+		this.objectMapper = objectMapper;
+		// the generator is flushed by its buffer filling up, not after every patient
+		this.patientWriter = objectMapper.writerFor(PatientVM.class)
+			.without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+		this.query = applicationProperties.getQuery();
+	}
+
+	/**
+	 * GET /patients/:sourceId : get the patient of a source id.
+	 *
+	 * @param sourceId
+	 *            the source id of the patient
+	 * @return the ResponseEntity with status 200 (OK) and the patient, or with
+	 *         status 404 (Not Found)
+	 */
+	@GetMapping("/{sourceId:.+}")
+	public ResponseEntity<PatientVM> getPatient(@PathVariable String sourceId) {
+		return patientRepository.findVMBySourceId(sourceId)
+			.map(patient -> new ResponseEntity<>(patient, HttpStatus.OK))
+			.orElse(new ResponseEntity<>(HttpStatus.NOT_FOUND));
+	}
+
+	/**
+	 * GET /patients?after=:patientId&size=:size : get a page of the patients,
+	 * all of them or those of a last name, in patient id order:
+	 * <pre>
+	 * {"patients": [...], "next": 4711}
+	 * </pre>
+	 * The next page is the one after the patient id of next, which is null on
+	 * the last page. A page is written as it is read, whatever its size.
+	 *
+	 * @param lastName
+	 *            the last name of the patients, optional
+	 * @param after
+	 *            the patient id the page starts after, 0 for the first page
+	 * @param size
+	 *            the number of patients per page, optional
+	 * @return the ResponseEntity with status 200 (OK) and the page
+	 */
+	@GetMapping
+	public ResponseEntity<StreamingResponseBody> getPatients(@RequestParam(required = false) String lastName,
+			@RequestParam(defaultValue = "0") long after, @RequestParam(required = false) Integer size) {
+		int pageSize = pageSize(size);
+		PageRequest page = PageRequest.of(0, pageSize);
+		return page(pageSize, () -> lastName != null
+			? patientRepository.streamVMsByLastName(lastName, after, page)
+			: patientRepository.streamVMs(after, page));
+	}
+
+	/**
+	 * POST /patients/search : get a page of the patients of an SSN, which is
+	 * posted rather than part of the URL, so it does not end up in access
+	 * logs:
+	 * <pre>
+	 * {"ssn": "071-81-2500", "after": 0, "size": 100}
+	 * </pre>
+	 * The page is the one of GET /patients.
+	 *
+	 * @param search
+	 *            the SSN, the patient id the page starts after and the
+	 *            optional number of patients per page
+	 * @return the ResponseEntity with status 200 (OK) and the page, or with
+	 *         status 400 (Bad Request) if there is no SSN
+	 */
+	@PostMapping("/search")
+	public ResponseEntity<StreamingResponseBody> searchPatients(@RequestBody PatientSearchVM search) {
+		if (search.getSsn() == null || search.getSsn().trim().isEmpty()) {
+			return ResponseEntity.badRequest().contentType(MediaType.TEXT_PLAIN)
+				.body(out -> out.write("Failure: an ssn is required".getBytes(StandardCharsets.UTF_8)));
+		}
+		int pageSize = pageSize(search.getSize());
+		PageRequest page = PageRequest.of(0, pageSize);
+		return page(pageSize, () -> patientRepository.streamVMsBySocialSecurityNumber(search.getSsn(),
+			search.getAfter(), page));
+	}
+
+	private int pageSize(Integer size) {
+		return size == null ? query.getPageSize() : Math.max(1, Math.min(size, query.getMaxPageSize()));
+	}
+
+	/**
+	 * Streams the patients of the query in a transaction of their own, on a
+	 * thread of the executor WebConfiguration sets up for async requests.
+	 */
+	private ResponseEntity<StreamingResponseBody> page(int pageSize, Supplier<Stream<PatientVM>> stream) {
+		StreamingResponseBody body = out -> transactionTemplate.execute(status -> {
+			try (Stream<PatientVM> patients = stream.get()) {
+				writePage(out, patients.iterator(), pageSize);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			return null;
+		});
+		return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON_UTF8).body(body);
+	}
+
+	private void writePage(OutputStream out, Iterator<PatientVM> patients, int pageSize) throws IOException {
+		try (JsonGenerator json = objectMapper.getFactory().createGenerator(out)) {
+			if (objectMapper.isEnabled(SerializationFeature.INDENT_OUTPUT)) {
+				json.useDefaultPrettyPrinter();
+			}
+			json.writeStartObject();
+			json.writeArrayFieldStart("patients");
+			int count = 0;
+			long last = 0;
+			while (patients.hasNext()) {
+				PatientVM patient = patients.next();
+				patientWriter.writeValue(json, patient);
+				last = patient.getPatientId();
+				count++;
+			}
+			json.writeEndArray();
+			json.writeFieldName("next");
+			if (count == pageSize) {
+				json.writeNumber(last);
+			} else {
+				json.writeNull();
+			}
+			json.writeEndObject();
+		}
+	}
+}
@@ -0,0 +1,195 @@
+package com.pluralsight.springbatch.patientbatchloader.web.rest.vm;
+
+import java.util.Date;
+
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepExecution;
+
+import com.pluralsight.springbatch.patientbatchloader.config.Constants;
+
+/**
+ * View Model of a patient job execution: its status and the item counts of
+ * its steps so far.
+ */
+public class JobExecutionVM {
+
+	private Long executionId;
+
+	private String fileName;
+
+	private String status;
+
+	private String exitCode;
+
+	private String exitDescription;
+
+	private Date startTime;
+
+	private Date endTime;
+
+	private long readCount;
+
+	private long writeCount;
+
+	private long filterCount;
+
+	private long skipCount;
+
+	private long rollbackCount;
+
+	private double itemsPerSecond;
+
+	public JobExecutionVM() {
+		// Empty constructor needed for Jackson.
+	}
+
+	public JobExecutionVM(JobExecution jobExecution) {
+		this.executionId = jobExecution.getId();
+		this.fileName = jobExecution.getJobParameters().getString(Constants.JOB_PARAM_FILE_NAME,
+			// the files job shows its glob instead, the export job the file it writes
+			jobExecution.getJobParameters().getString(Constants.JOB_PARAM_FILE_PATTERN,
+				jobExecution.getJobParameters().getString(Constants.JOB_PARAM_EXPORT_FILE_NAME)));
+		this.status = jobExecution.getStatus().name();
+		this.exitCode = jobExecution.getExitStatus().getExitCode();
+		this.exitDescription = jobExecution.getExitStatus().getExitDescription();
+		this.startTime = jobExecution.getStartTime();
+		this.endTime = jobExecution.getEndTime();
+		for (StepExecution stepExecution : jobExecution.getStepExecutions()) {
+			// the partition steps only add up the counts of their workers
+			if (Constants.PARTITION_STEP_NAME.equals(stepExecution.getStepName())
+					|| Constants.FILES_STEP_NAME.equals(stepExecution.getStepName())) {
+				continue;
+			}
+			this.readCount += stepExecution.getReadCount();
+			this.writeCount += stepExecution.getWriteCount();
+			this.filterCount += stepExecution.getFilterCount();
+			this.skipCount += stepExecution.getSkipCount();
+			this.rollbackCount += stepExecution.getRollbackCount();
+		}
+		if (this.startTime != null) {
+			long end = this.endTime != null ? this.endTime.getTime() : System.currentTimeMillis();
+			long elapsed = end - this.startTime.getTime();
+			this.itemsPerSecond = elapsed > 0 ? this.writeCount * 1000d / elapsed : 0;
+		}
+	}
+
+	public Long getExecutionId() {
+		return executionId;
+	}
+
+	public void setExecutionId(Long executionId) {
+		this.executionId = executionId;
+	}
+
+	public String getFileName() {
+		return fileName;
+	}
+
+	public void setFileName(String fileName) {
+		this.fileName = fileName;
+	}
+
+	public String getStatus() {
+		return status;
+	}
+
+	public void setStatus(String status) {
+		this.status = status;
+	}
+
+	public String getExitCode() {
+		return exitCode;
+	}
+
+	public void setExitCode(String exitCode) {
+		this.exitCode = exitCode;
+	}
+
+	public String getExitDescription() {
+		return exitDescription;
+	}
+
+	public void setExitDescription(String exitDescription) {
+		this.exitDescription = exitDescription;
+	}
+
+	public Date getStartTime() {
+		return startTime;
+	}
+
+	public void setStartTime(Date startTime) {
+		this.startTime = startTime;
+	}
+
+	public Date getEndTime() {
+		return endTime;
+	}
+
+	public void setEndTime(Date endTime) {
+		this.endTime = endTime;
+	}
+
+	public long getReadCount() {
+		return readCount;
+	}
+
+	public void setReadCount(long readCount) {
+		this.readCount = readCount;
+	}
+
+	public long getWriteCount() {
+		return writeCount;
+	}
+
+	public void setWriteCount(long writeCount) {
+		this.writeCount = writeCount;
+	}
+
+	public long getFilterCount() {
+		return filterCount;
+	}
+
+	public void setFilterCount(long filterCount) {
+		this.filterCount = filterCount;
+	}
+
+	public long getSkipCount() {
+		return skipCount;
+	}
+
+	public void setSkipCount(long skipCount) {
+		this.skipCount = skipCount;
+	}
+
+	public long getRollbackCount() {
+		return rollbackCount;
+	}
+
+	public void setRollbackCount(long rollbackCount) {
+		this.rollbackCount = rollbackCount;
+	}
+
+	/**
+	 * @return the items written per second since the job started, up to now
+	 *         while it is running
+	 */
+	public double getItemsPerSecond() {
+		return itemsPerSecond;
+	}
+
+	public void setItemsPerSecond(double itemsPerSecond) {
+		this.itemsPerSecond = itemsPerSecond;
+	}
+
+	@Override
+	public String toString() {
+		return "JobExecutionVM{" +
+			"executionId=" + executionId +
+			", fileName='" + fileName + "'" +
+			", status='" + status + "'" +
+			", readCount=" + readCount +
+			", writeCount=" + writeCount +
+			", skipCount=" + skipCount +
+			"}";
+	}
+}
@@ -0,0 +1,47 @@
+package com.pluralsight.springbatch.patientbatchloader.web.rest.vm;
+
+/**
+ * View Model of a search for patients by a value that must not appear in a
+ * URL, and so in the access logs, posted as the request body instead.
+ */
+public class PatientSearchVM {
+
+	private String ssn;
+
+	private long after;
+
+	private Integer size;
+
+	public String getSsn() {
+		return ssn;
+	}
+
+	public void setSsn(String ssn) {
+		this.ssn = ssn;
+	}
+
+	public long getAfter() {
+		return after;
+	}
+
+	public void setAfter(long after) {
+		this.after = after;
+	}
+
+	public Integer getSize() {
+		return size;
+	}
+
+	public void setSize(Integer size) {
+		this.size = size;
+	}
+
+	@Override
+	public String toString() {
+		// without the SSN, as the logging aspect logs the arguments of the REST endpoints
+		return "PatientSearchVM{" +
+			"after=" + after +
+			", size=" + size +
+			"}";
+	}
+}
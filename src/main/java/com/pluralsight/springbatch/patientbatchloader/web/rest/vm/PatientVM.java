@@ -0,0 +1,171 @@
+package com.pluralsight.springbatch.patientbatchloader.web.rest.vm;
+
+import java.time.LocalDate;
+
+/**
+ * View Model of a patient. Selected straight into by the queries of the
+ * PatientRepository, so no PatientEntity is hydrated or managed to serve it.
+ */
+public class PatientVM {
+
+	private Long patientId;
+
+	private String sourceId;
+
+	private String firstName;
+
+	private String middleInitial;
+
+	private String lastName;
+
+	private String emailAddress;
+
+	private String phoneNumber;
+
+	private String street;
+
+	private String city;
+
+	private String state;
+
+	private String zipCode;
+
+	private LocalDate birthDate;
+
+	private String socialSecurityNumber;
+
+	public PatientVM() {
+		// Empty constructor needed for Jackson.
+	}
+
+	public PatientVM(Long patientId, String sourceId, String firstName, String middleInitial, String lastName,
+			String emailAddress, String phoneNumber, String street, String city, String state, String zipCode,
+			LocalDate birthDate, String socialSecurityNumber) {
+		this.patientId = patientId;
+		this.sourceId = sourceId;
+		this.firstName = firstName;
+		this.middleInitial = middleInitial;
+		this.lastName = lastName;
+		this.emailAddress = emailAddress;
+		this.phoneNumber = phoneNumber;
+		this.street = street;
+		this.city = city;
+		this.state = state;
+		this.zipCode = zipCode;
+		this.birthDate = birthDate;
+		this.socialSecurityNumber = socialSecurityNumber;
+	}
+
+	public Long getPatientId() {
+		return patientId;
+	}
+
+	public void setPatientId(Long patientId) {
+		this.patientId = patientId;
+	}
+
+	public String getSourceId() {
+		return sourceId;
+	}
+
+	public void setSourceId(String sourceId) {
+		this.sourceId = sourceId;
+	}
+
+	public String getFirstName() {
+		return firstName;
+	}
+
+	public void setFirstName(String firstName) {
+		this.firstName = firstName;
+	}
+
+	public String getMiddleInitial() {
+		return middleInitial;
+	}
+
+	public void setMiddleInitial(String middleInitial) {
+		this.middleInitial = middleInitial;
+	}
+
+	public String getLastName() {
+		return lastName;
+	}
+
+	public void setLastName(String lastName) {
+		this.lastName = lastName;
+	}
+
+	public String getEmailAddress() {
+		return emailAddress;
+	}
+
+	public void setEmailAddress(String emailAddress) {
+		this.emailAddress = emailAddress;
+	}
+
+	public String getPhoneNumber() {
+		return phoneNumber;
+	}
+
+	public void setPhoneNumber(String phoneNumber) {
+		this.phoneNumber = phoneNumber;
+	}
+
+	public String getStreet() {
+		return street;
+	}
+
+	public void setStreet(String street) {
+		this.street = street;
+	}
+
+	public String getCity() {
+		return city;
+	}
+
+	public void setCity(String city) {
+		this.city = city;
+	}
+
+	public String getState() {
+		return state;
+	}
+
+	public void setState(String state) {
+		this.state = state;
+	}
+
+	public String getZipCode() {
+		return zipCode;
+	}
+
+	public void setZipCode(String zipCode) {
+		this.zipCode = zipCode;
+	}
+
+	public LocalDate getBirthDate() {
+		return birthDate;
+	}
+
+	public void setBirthDate(LocalDate birthDate) {
+		this.birthDate = birthDate;
+	}
+
+	public String getSocialSecurityNumber() {
+		return socialSecurityNumber;
+	}
+
+	public void setSocialSecurityNumber(String socialSecurityNumber) {
+		this.socialSecurityNumber = socialSecurityNumber;
+	}
+
+	@Override
+	public String toString() {
+		return "PatientVM{" +
+			"patientId=" + patientId +
+			", sourceId='" + sourceId + "'" +
+			", lastName='" + lastName + "'" +
+			"}";
+	}
+}
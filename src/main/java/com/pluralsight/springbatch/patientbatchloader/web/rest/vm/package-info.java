@@ -0,0 +1,4 @@
+/**
+ * View Models used by Spring MVC REST controllers.
+ */
+package com.pluralsight.springbatch.patientbatchloader.web.rest.vm;
@@ -0,0 +1,159 @@
+package com.pluralsight.springbatch.patientbatchloader.aop.logging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.mock.env.MockEnvironment;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class LoggingAspectTest {
+
+	private static final String SSN = "071-81-2500";
+
+	private final MeterRegistry registry = new SimpleMeterRegistry();
+
+	private final Logger logger = (Logger) LoggerFactory.getLogger(LoggingAspect.class);
+
+	private final ListAppender<ILoggingEvent> events = new ListAppender<>();
+
+	private Level level;
+
+	@Before
+	public void setUp() {
+		level = logger.getLevel();
+		logger.setLevel(Level.DEBUG);
+		events.start();
+		logger.addAppender(events);
+	}
+
+	@After
+	public void tearDown() {
+		logger.detachAppender(events);
+		logger.setLevel(level);
+	}
+
+	@Test
+	public void testOffProceedsWithoutTiming() throws Throwable {
+		LoggingAspect aspect = aspect(LoggingAspect.Mode.OFF, 1);
+		ProceedingJoinPoint joinPoint = joinPoint();
+
+		assertEquals("patient", aspect.logAround(joinPoint));
+
+		verify(joinPoint).proceed();
+		assertTrue(aspect.getTimers().isEmpty());
+		assertTrue(registry.getMeters().isEmpty());
+		assertTrue(events.list.isEmpty());
+	}
+
+	@Test
+	public void testSummaryTimesWithoutLogging() throws Throwable {
+		LoggingAspect aspect = aspect(LoggingAspect.Mode.SUMMARY, 1);
+
+		for (int i = 0; i < 3; i++) {
+			aspect.logAround(joinPoint());
+		}
+
+		assertEquals(3, registry.get("application.method").tag("class", "LoggingAspectTest")
+			.tag("method", "findPatient").timer().count());
+		assertEquals(1, aspect.getTimers().size());
+		assertTrue(aspect.getTimers().containsKey("LoggingAspectTest.findPatient()"));
+		assertTrue(events.list.isEmpty());
+	}
+
+	@Test
+	public void testSampledLogsOneCallInEverySampleRate() throws Throwable {
+		LoggingAspect aspect = aspect(LoggingAspect.Mode.SAMPLED, 3);
+
+		for (int i = 0; i < 7; i++) {
+			aspect.logAround(joinPoint());
+		}
+
+		// calls 3 and 6, entered and exited
+		assertEquals(4, events.list.size());
+		assertEquals(7, registry.get("application.method").timer().count());
+	}
+
+	@Test
+	public void testFullLogsOnlyArgumentTypes() throws Throwable {
+		LoggingAspect aspect = aspect(LoggingAspect.Mode.FULL, 1000);
+
+		aspect.logAround(joinPoint());
+
+		assertEquals(2, events.list.size());
+		assertEquals("Enter: com.pluralsight.Service.findPatient() with argument[s] of type [String, Integer]",
+			events.list.get(0).getFormattedMessage());
+		assertEquals("Exit: com.pluralsight.Service.findPatient() with result of type String",
+			events.list.get(1).getFormattedMessage());
+		for (ILoggingEvent event : events.list) {
+			assertFalse(event.getFormattedMessage().contains(SSN));
+		}
+	}
+
+	@Test
+	public void testEndpointRejectsBadModeOrRate() {
+		LoggingAspect aspect = aspect(LoggingAspect.Mode.SUMMARY, 10);
+		LoggingAspectEndpoint endpoint = new LoggingAspectEndpoint(aspect);
+
+		try {
+			endpoint.configure("verbose", null);
+			fail("verbose is no mode");
+		} catch (InvalidEndpointRequestException e) {
+			assertEquals(LoggingAspect.Mode.SUMMARY, aspect.getMode());
+		}
+		try {
+			endpoint.configure("full", 0);
+			fail("the sample rate must be positive");
+		} catch (InvalidEndpointRequestException e) {
+			assertEquals(LoggingAspect.Mode.SUMMARY, aspect.getMode());
+			assertEquals(10, aspect.getSampleRate());
+		}
+
+		endpoint.configure(" Sampled ", 100);
+
+		assertEquals(LoggingAspect.Mode.SAMPLED, aspect.getMode());
+		assertEquals(100, aspect.getSampleRate());
+		assertEquals(LoggingAspect.Mode.SAMPLED, endpoint.summary().get("mode"));
+	}
+
+	private LoggingAspect aspect(LoggingAspect.Mode mode, int sampleRate) {
+		return new LoggingAspect(new MockEnvironment(), registry, mode, sampleRate);
+	}
+
+	private static ProceedingJoinPoint joinPoint() throws Throwable {
+		MethodSignature signature = mock(MethodSignature.class);
+		when(signature.getDeclaringTypeName()).thenReturn("com.pluralsight.Service");
+		when(signature.getName()).thenReturn("findPatient");
+		when(signature.getMethod())
+			.thenReturn(LoggingAspectTest.class.getDeclaredMethod("findPatient", String.class, Integer.class));
+		ProceedingJoinPoint joinPoint = mock(ProceedingJoinPoint.class);
+		when(joinPoint.getSignature()).thenReturn(signature);
+		when(joinPoint.getArgs()).thenReturn(new Object[] { SSN, 20 });
+		when(joinPoint.proceed()).thenReturn("patient");
+		return joinPoint;
+	}
+
+	/**
+	 * The advised method the join points stand for.
+	 */
+	private static String findPatient(String ssn, Integer size) {
+		return "patient";
+	}
+}
@@ -0,0 +1,105 @@
+package com.pluralsight.springbatch.patientbatchloader.batch;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.springframework.batch.repeat.RepeatContext;
+
+public class AdaptiveChunkSizePolicyTest {
+
+	private long nanos;
+
+	@Test
+	public void testKeepsDirectionWhileThroughputImproves() {
+		AdaptiveChunkSizePolicy policy = policy(100, 10, 1000);
+
+		chunk(policy, 100, 100, 100, 10);
+		assertEquals(125, policy.getChunkSize());
+		chunk(policy, 125, 125, 100, 10);
+		assertEquals(156, policy.getChunkSize());
+		// 780 items/s after 1250, the direction reverses
+		chunk(policy, 156, 156, 200, 10);
+		assertEquals(117, policy.getChunkSize());
+		chunk(policy, 117, 117, 100, 10);
+		assertEquals(88, policy.getChunkSize());
+	}
+
+	@Test
+	public void testShrinksWhenAWriteExceedsTheLatency() {
+		AdaptiveChunkSizePolicy policy = policy(100, 10, 1000);
+
+		chunk(policy, 100, 100, 1500, 1100);
+		assertEquals(75, policy.getChunkSize());
+		// faster, but the write is still too slow
+		chunk(policy, 75, 75, 1200, 1100);
+		assertEquals(57, policy.getChunkSize());
+	}
+
+	@Test
+	public void testClampsToTheRange() {
+		AdaptiveChunkSizePolicy policy = policy(5000, 10, 200);
+		assertEquals(200, policy.getChunkSize());
+		chunk(policy, 200, 200, 100, 10);
+		assertEquals(200, policy.getChunkSize());
+
+		policy = policy(20, 16, 200);
+		chunk(policy, 20, 20, 2000, 1500);
+		assertEquals(16, policy.getChunkSize());
+		chunk(policy, 16, 16, 2000, 1500);
+		assertEquals(16, policy.getChunkSize());
+	}
+
+	@Test
+	public void testIgnoresTheShortLastChunk() {
+		AdaptiveChunkSizePolicy policy = policy(100, 10, 1000);
+
+		chunk(policy, 50, 50, 100, 10);
+
+		assertEquals(100, policy.getChunkSize());
+	}
+
+	@Test
+	public void testChunkWithSkippedItemsIsFull() {
+		AdaptiveChunkSizePolicy policy = policy(100, 10, 1000);
+
+		chunk(policy, 100, 60, 100, 10);
+
+		assertEquals(125, policy.getChunkSize());
+	}
+
+	@Test
+	public void testBeforeStepStartsOver() {
+		AdaptiveChunkSizePolicy policy = policy(100, 10, 1000);
+		chunk(policy, 100, 100, 100, 10);
+
+		policy.beforeStep(null);
+
+		assertEquals(100, policy.getChunkSize());
+	}
+
+	private AdaptiveChunkSizePolicy policy(int initialSize, int minSize, int maxSize) {
+		AdaptiveChunkSizePolicy policy = new AdaptiveChunkSizePolicy(initialSize, minSize, maxSize, 1000);
+		policy.setNanoClock(() -> nanos);
+		return policy;
+	}
+
+	/**
+	 * Reads up to available items and writes written of them, as skips and filters leave fewer.
+	 */
+	private void chunk(AdaptiveChunkSizePolicy policy, int available, int written, long chunkMillis,
+			long writeMillis) {
+		policy.beforeChunk(null);
+		RepeatContext context = policy.start(null);
+		for (int i = 0; i < available && !policy.isComplete(context); i++) {
+			policy.update(context);
+		}
+		nanos += TimeUnit.MILLISECONDS.toNanos(chunkMillis - writeMillis);
+		policy.beforeWrite(Collections.nCopies(written, "item"));
+		nanos += TimeUnit.MILLISECONDS.toNanos(writeMillis);
+		policy.afterWrite(Collections.nCopies(written, "item"));
+		policy.afterChunk(null);
+	}
+}
@@ -0,0 +1,51 @@
+package com.pluralsight.springbatch.patientbatchloader.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+
+import org.junit.Test;
+
+import com.pluralsight.springbatch.patientbatchloader.domain.PatientRecord;
+
+public class BirthDateParserTest {
+
+	private final BirthDateParser parser = new BirthDateParser();
+
+	@Test
+	public void testParsesOneAndTwoDigitMonths() {
+		assertEquals(LocalDate.of(1961, 6, 14), parser.parse("6/14/1961"));
+		assertEquals(LocalDate.of(1999, 12, 1), parser.parse("12/01/1999"));
+		assertEquals(LocalDate.of(2000, 2, 29), parser.parse("02/29/2000"));
+	}
+
+	@Test
+	public void testRepeatedDatesShareAnInstance() {
+		assertSame(parser.parse("6/14/1961"), parser.parse(new String("6/14/1961")));
+	}
+
+	@Test
+	public void testRejectsMalformedDates() {
+		for (String text : new String[] { null, "", "6/4/1961", "6-14-1961", "6/14/61", "13/14/1961",
+				"2/30/1961", "6/1a/1961", "123/14/1961" }) {
+			try {
+				parser.parse(text);
+				fail("Expected '" + text + "' to be rejected");
+			} catch (DateTimeParseException e) {
+				// expected
+			}
+		}
+	}
+
+	@Test(expected = MalformedBirthDateException.class)
+	public void testMapperReportsMalformedBirthDate() {
+		PatientRecord record = new PatientRecord();
+		record.setSourceId("72739d22-3c12-539b-b3c2-13d9d4224d40");
+		record.setBirthDate("14/6/1961");
+		record.setAction("U");
+		new PatientRecordMapper().apply(record);
+	}
+}
@@ -0,0 +1,135 @@
+package com.pluralsight.springbatch.patientbatchloader.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.file.FlatFileParseException;
+
+import com.pluralsight.springbatch.patientbatchloader.domain.PatientRecord;
+
+public class MappedPatientFileReaderTest {
+
+	private static final String LINE = "%d,Hettie,P,Schmidt,rodo@uge.li,(805) 384-3727,Hutij Terrace,Kahgepu,ID,40239,6/14/1961,I,071-81-2500";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testReadsEveryLineAcrossMappingWindows() throws Exception {
+		Path file = writePatients(50, "\r\n");
+		MappedPatientFileReader reader = new MappedPatientFileReader(file, 0, Long.MAX_VALUE, new PatientLineMapper());
+		reader.setName("reader");
+		reader.setLinesToSkip(1);
+		// a window holds less than two lines, so most lines cross a window boundary
+		reader.setWindowSize(200);
+
+		List<String> sourceIds = readAll(reader, new ExecutionContext());
+
+		assertEquals(50, sourceIds.size());
+		assertEquals("0", sourceIds.get(0));
+		assertEquals("49", sourceIds.get(49));
+	}
+
+	@Test
+	public void testSkipsLinesLongerThanTheMappingWindow() throws Exception {
+		Path file = folder.newFile().toPath();
+		String longLine = String.format(LINE, 1) + String.join("", Collections.nCopies(50, " x"));
+		Files.write(file, (String.format(LINE, 0) + "\n" + longLine + "\n" + String.format(LINE, 2) + "\n")
+			.getBytes(StandardCharsets.UTF_8));
+		MappedPatientFileReader reader = new MappedPatientFileReader(file, 0, Long.MAX_VALUE, new PatientLineMapper());
+		reader.setName("reader");
+		// a window holds one line, but not the second one
+		reader.setWindowSize(150);
+		reader.open(new ExecutionContext());
+		try {
+			assertEquals("0", reader.read().getSourceId());
+			try {
+				reader.read();
+				fail("the second line does not fit the window");
+			} catch (FlatFileParseException e) {
+				assertEquals(2, e.getLineNumber());
+			}
+			assertEquals("2", reader.read().getSourceId());
+			assertNull(reader.read());
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testRestartContinuesAtSavedPosition() throws Exception {
+		Path file = writePatients(10, "\n");
+		ExecutionContext executionContext = new ExecutionContext();
+		MappedPatientFileReader reader = new MappedPatientFileReader(file, 0, Long.MAX_VALUE, new PatientLineMapper());
+		reader.setName("reader");
+		reader.setLinesToSkip(1);
+		reader.open(executionContext);
+		for (int i = 0; i < 4; i++) {
+			reader.read();
+		}
+		reader.update(executionContext);
+		reader.close();
+
+		MappedPatientFileReader restarted = new MappedPatientFileReader(file, 0, Long.MAX_VALUE, new PatientLineMapper());
+		restarted.setName("reader");
+		restarted.setLinesToSkip(1);
+		List<String> sourceIds = readAll(restarted, executionContext);
+
+		assertEquals(6, sourceIds.size());
+		assertEquals("4", sourceIds.get(0));
+	}
+
+	@Test
+	public void testReadsOnlyTheGivenRange() throws Exception {
+		Path file = writePatients(20, "\n");
+		ExecutionContext partition = new PatientFilePartitioner(file, 1).partition(3).get("partition1");
+		MappedPatientFileReader reader = new MappedPatientFileReader(file,
+			partition.getLong(PatientFilePartitioner.START_OFFSET),
+			partition.getLong(PatientFilePartitioner.END_OFFSET), new PatientLineMapper());
+		reader.setName("reader");
+
+		List<String> sourceIds = readAll(reader, new ExecutionContext());
+
+		assertEquals(7, sourceIds.size());
+		assertEquals("7", sourceIds.get(0));
+		assertEquals("13", sourceIds.get(6));
+	}
+
+	private Path writePatients(int count, String lineSeparator) throws Exception {
+		StringBuilder content = new StringBuilder("source_id,first_name,...").append(lineSeparator);
+		for (int i = 0; i < count; i++) {
+			content.append(String.format(LINE, i)).append(lineSeparator);
+		}
+		Path file = folder.newFile().toPath();
+		Files.write(file, content.toString().getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+
+	private static List<String> readAll(MappedPatientFileReader reader, ExecutionContext executionContext)
+			throws Exception {
+		List<String> sourceIds = new ArrayList<>();
+		reader.open(executionContext);
+		try {
+			PatientRecord record;
+			while ((record = reader.read()) != null) {
+				sourceIds.add(record.getSourceId());
+			}
+			assertNull(reader.read());
+		} finally {
+			reader.close();
+		}
+		return sourceIds;
+	}
+}
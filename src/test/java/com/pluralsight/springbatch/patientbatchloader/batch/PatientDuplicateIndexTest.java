@@ -0,0 +1,93 @@
+package com.pluralsight.springbatch.patientbatchloader.batch;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.pluralsight.springbatch.patientbatchloader.domain.PatientRecord;
+
+public class PatientDuplicateIndexTest {
+
+	private static final String UUID = "a759ea27-d472-7622-12ce-2a752fc94c05";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testLoadsLastOrFirstRecord() {
+		PatientRecord first = record(UUID, "Jane", "I");
+		PatientRecord second = record(UUID, "Janet", "U");
+		PatientRecord other = record("42", "John", "I");
+
+		PatientDuplicateIndex last = new PatientDuplicateIndex(PatientDuplicateIndex.Rule.LAST, 10);
+		PatientDuplicateIndex firstWins = new PatientDuplicateIndex(PatientDuplicateIndex.Rule.FIRST, 10);
+		for (PatientRecord record : Arrays.asList(first, other, second)) {
+			last.add(record);
+			firstWins.add(record);
+		}
+
+		assertEquals(2, last.size());
+		assertFalse(last.isLoaded(first));
+		assertTrue(last.isLoaded(second));
+		assertTrue(last.isLoaded(other));
+		assertTrue(firstWins.isLoaded(first));
+		assertFalse(firstWins.isLoaded(second));
+		// an identical copy of the record to load is loaded as well
+		assertTrue(last.isLoaded(record(UUID, "Janet", "U")));
+	}
+
+	@Test
+	public void testSourceIdsBeyondMaxKeysAreLoaded() {
+		PatientDuplicateIndex index = new PatientDuplicateIndex(PatientDuplicateIndex.Rule.LAST, 2000);
+		for (int i = 0; i < 3000; i++) {
+			index.add(record(Integer.toString(i), "Jane", "I"));
+			index.add(record(Integer.toString(i), "Janet", "U"));
+		}
+
+		assertEquals(2000, index.size());
+		assertEquals(2000, index.getUnindexed());
+		assertFalse(index.isLoaded(record("1999", "Jane", "I")));
+		assertTrue(index.isLoaded(record("2000", "Jane", "I")));
+	}
+
+	@Test
+	public void testUuidSourceIdIsItsOwnKey() {
+		assertArrayEquals(new long[] {0xa759ea27d4727622L, 0x12ce2a752fc94c05L}, PatientDuplicateIndex.key(UUID));
+		assertFalse(Arrays.equals(PatientDuplicateIndex.key(UUID), PatientDuplicateIndex.key(UUID.toUpperCase())));
+	}
+
+	@Test
+	public void testBuildSkipsHeaderAndMalformedLines() throws Exception {
+		Path file = folder.getRoot().toPath().resolve("patients.csv");
+		Files.write(file, Arrays.asList(
+			"source_id,first_name,middle_initial,last_name,email_address,phone_number,street,city,state,zip,birth_date,action,ssn",
+			"1,Jane,P,Doe,jd@uge.li,(805) 384-3727,Hutij Terrace,Kahgepu,ID,40239,6/14/1961,I,071-81-2500",
+			"1,Jane,P,Doe,jd@uge.li,(805) 384-3727,Hutij Terrace,Kahgepu,ID,40239,6/14/1961,X,071-81-2500",
+			"2,too,few,columns"), StandardCharsets.UTF_8);
+
+		PatientDuplicateIndex index = PatientDuplicateIndex.build(file, 1, new PatientLineMapper(),
+			new PatientRecordMapper(), PatientDuplicateIndex.Rule.LAST, 10);
+
+		assertEquals(1, index.size());
+		assertEquals(1, index.getRecords());
+	}
+
+	private static PatientRecord record(String sourceId, String firstName, String action) {
+		PatientRecord record = new PatientRecord();
+		record.setSourceId(sourceId);
+		record.setFirstName(firstName);
+		record.setLastName("Doe");
+		record.setAction(action);
+		return record;
+	}
+}
@@ -0,0 +1,114 @@
+package com.pluralsight.springbatch.patientbatchloader.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.item.ExecutionContext;
+
+import com.pluralsight.springbatch.patientbatchloader.domain.PatientAction;
+import com.pluralsight.springbatch.patientbatchloader.domain.PatientEntity;
+import com.pluralsight.springbatch.patientbatchloader.domain.PatientRecord;
+
+public class PatientExportItemWriterTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testWritesLinesTheLoaderReads() throws Exception {
+		Path file = folder.getRoot().toPath().resolve("export").resolve("patients.csv.gz");
+		PatientExportItemWriter writer = new PatientExportItemWriter(file, 16);
+		writer.open(new ExecutionContext());
+		writer.write(Arrays.asList(patient("1", "Doe"), patient("2", "Doe, \"Jr.\"")));
+		assertFalse(Files.exists(file));
+
+		writer.afterStep(stepExecution(BatchStatus.COMPLETED));
+		writer.close();
+		assertFalse(Files.exists(file));
+		new PatientExportPublishTasklet(file).execute(null, null);
+
+		List<String> lines;
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(PatientFileCompression.open(file), StandardCharsets.UTF_8))) {
+			lines = reader.lines().collect(Collectors.toList());
+		}
+		assertEquals(3, lines.size());
+		assertEquals("1,Jane,P,Doe,jd@uge.li,,,,,,6/04/1961,I,071-81-2500", lines.get(1));
+		PatientRecord record = new PatientLineMapper().mapLine(lines.get(2), 3);
+		assertEquals("Doe, \"Jr.\"", record.getLastName());
+		assertEquals(LocalDate.of(1961, 6, 4), new BirthDateParser().parse(record.getBirthDate()));
+		assertFalse(Files.exists(file.resolveSibling("patients.csv.gz.part")));
+	}
+
+	@Test
+	public void testFailedStepLeavesNoFile() throws Exception {
+		Path file = folder.getRoot().toPath().resolve("patients.csv");
+		PatientExportItemWriter writer = new PatientExportItemWriter(file, 1024);
+		writer.open(new ExecutionContext());
+		writer.write(Arrays.asList(patient("1", "Doe")));
+
+		writer.afterStep(stepExecution(BatchStatus.FAILED));
+		writer.close();
+
+		assertFalse(Files.exists(file));
+		assertTrue(Files.notExists(file.resolveSibling("patients.csv.part")));
+	}
+
+	@Test
+	public void testFailedPublishDeletesThePartFile() throws Exception {
+		Path file = folder.getRoot().toPath().resolve("patients.csv");
+		// a directory in the way of the export
+		Files.createDirectories(file.resolve("taken"));
+		PatientExportItemWriter writer = new PatientExportItemWriter(file, 1024);
+		writer.open(new ExecutionContext());
+		writer.write(Arrays.asList(patient("1", "Doe")));
+		writer.afterStep(stepExecution(BatchStatus.COMPLETED));
+		writer.close();
+		assertTrue(Files.exists(file.resolveSibling("patients.csv.part")));
+
+		try {
+			new PatientExportPublishTasklet(file).execute(null, null);
+			fail("the export cannot replace a directory");
+		} catch (IOException e) {
+			assertTrue(Files.notExists(file.resolveSibling("patients.csv.part")));
+			assertTrue(Files.isDirectory(file));
+		}
+	}
+
+	private static StepExecution stepExecution(BatchStatus status) {
+		StepExecution stepExecution = new StepExecution("step", null);
+		stepExecution.setStatus(status);
+		return stepExecution;
+	}
+
+	private static PatientEntity patient(String sourceId, String lastName) {
+		PatientEntity patient = new PatientEntity();
+		patient.setSourceId(sourceId);
+		patient.setFirstName("Jane");
+		patient.setMiddleInitial("P");
+		patient.setLastName(lastName);
+		patient.setEmailAddress("jd@uge.li");
+		patient.setBirthDate(LocalDate.of(1961, 6, 4));
+		patient.setSocialSecurityNumber("071-81-2500");
+		patient.setAction(PatientAction.INSERT);
+		return patient;
+	}
+}
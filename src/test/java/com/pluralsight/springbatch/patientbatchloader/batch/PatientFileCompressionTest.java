@@ -0,0 +1,126 @@
+package com.pluralsight.springbatch.patientbatchloader.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.util.StreamUtils;
+
+import com.pluralsight.springbatch.patientbatchloader.domain.PatientRecord;
+
+public class PatientFileCompressionTest {
+
+	private static final String LINE = "%d,Hettie,P,Schmidt,rodo@uge.li,(805) 384-3727,Hutij Terrace,Kahgepu,ID,40239,6/14/1961,I,071-81-2500";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testDetectsByExtensionAndMagicBytes() throws Exception {
+		byte[] content = patients(3);
+		assertEquals(PatientFileCompression.NONE, PatientFileCompression.of(write("plain.csv", content)));
+		assertEquals(PatientFileCompression.GZIP, PatientFileCompression.of(write("patients.csv.gz", gzip(content))));
+		assertEquals(PatientFileCompression.GZIP, PatientFileCompression.of(write("patients.csv", gzip(content))));
+		assertEquals(PatientFileCompression.ZIP, PatientFileCompression.of(write("patients.dat", zip(content))));
+	}
+
+	@Test
+	public void testDecompressesZipEntry() throws Exception {
+		byte[] content = patients(5);
+		Path file = write("patients.zip", zip(content));
+
+		assertEquals(new String(content, StandardCharsets.UTF_8),
+			StreamUtils.copyToString(PatientFileCompression.resource(file).getInputStream(), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testRangeReaderRestartsAtDecompressedOffset() throws Exception {
+		Path file = write("patients.csv.gz", gzip(patients(10)));
+		ExecutionContext partition = new PatientFilePartitioner(file, 1).partition(3).get("partition0");
+		ExecutionContext executionContext = new ExecutionContext(partition);
+		PatientFileRangeReader reader = rangeReader(file, partition);
+		reader.open(executionContext);
+		for (int i = 0; i < 4; i++) {
+			reader.read();
+		}
+		reader.update(executionContext);
+		reader.close();
+
+		List<String> sourceIds = readAll(rangeReader(file, partition), executionContext);
+
+		assertEquals(6, sourceIds.size());
+		assertEquals("4", sourceIds.get(0));
+	}
+
+	private static PatientFileRangeReader rangeReader(Path file, ExecutionContext partition) {
+		PatientFileRangeReader reader = new PatientFileRangeReader(file,
+			partition.getLong(PatientFilePartitioner.START_OFFSET),
+			partition.getLong(PatientFilePartitioner.END_OFFSET), new PatientLineMapper());
+		reader.setName("reader");
+		return reader;
+	}
+
+	private static List<String> readAll(PatientFileRangeReader reader, ExecutionContext executionContext)
+			throws Exception {
+		List<String> sourceIds = new ArrayList<>();
+		reader.open(executionContext);
+		try {
+			PatientRecord record;
+			while ((record = reader.read()) != null) {
+				sourceIds.add(record.getSourceId());
+			}
+			assertNull(reader.read());
+		} finally {
+			reader.close();
+		}
+		return sourceIds;
+	}
+
+	private static byte[] patients(int count) {
+		StringBuilder content = new StringBuilder("source_id,first_name,...\n");
+		for (int i = 0; i < count; i++) {
+			content.append(String.format(LINE, i)).append('\n');
+		}
+		return content.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static byte[] gzip(byte[] content) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (OutputStream output = new GZIPOutputStream(bytes)) {
+			output.write(content);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static byte[] zip(byte[] content) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ZipOutputStream output = new ZipOutputStream(bytes)) {
+			output.putNextEntry(new ZipEntry("extract/"));
+			output.closeEntry();
+			output.putNextEntry(new ZipEntry("extract/patients.csv"));
+			output.write(content);
+			output.closeEntry();
+		}
+		return bytes.toByteArray();
+	}
+
+	private Path write(String name, byte[] content) throws Exception {
+		Path file = folder.getRoot().toPath().resolve(name);
+		Files.write(file, content);
+		return file;
+	}
+}
@@ -0,0 +1,110 @@
+package com.pluralsight.springbatch.patientbatchloader.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.batch.item.ExecutionContext;
+
+public class PatientFilePartitionerTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testPartitionsCoverEveryLineOnce() throws Exception {
+		StringBuilder content = new StringBuilder("source_id,first_name\n");
+		for (int i = 0; i < 97; i++) {
+			content.append("id-").append(i).append(",name-").append(i % 7 == 0 ? "longer-name" : "x").append('\n');
+		}
+		Path file = folder.newFile("patients.csv").toPath();
+		Files.write(file, content.toString().getBytes(StandardCharsets.UTF_8));
+		byte[] bytes = Files.readAllBytes(file);
+
+		Map<String, ExecutionContext> partitions = new PatientFilePartitioner(file, 1).partition(8);
+
+		assertEquals(8, partitions.size());
+		List<String> lines = new ArrayList<>();
+		for (int i = 0; i < partitions.size(); i++) {
+			ExecutionContext context = partitions.get("partition" + i);
+			int start = (int) context.getLong(PatientFilePartitioner.START_OFFSET);
+			int end = (int) context.getLong(PatientFilePartitioner.END_OFFSET);
+			assertTrue(start < end);
+			assertEquals('\n', bytes[start - 1]);
+			assertEquals('\n', bytes[end - 1]);
+			for (String line : new String(bytes, start, end - start, StandardCharsets.UTF_8).split("\n")) {
+				lines.add(line);
+			}
+		}
+		assertEquals(97, lines.size());
+		assertEquals("id-0,name-longer-name", lines.get(0));
+		assertEquals("id-96,name-x", lines.get(96));
+	}
+
+	@Test
+	public void testRebuildsTheStaleIndexOfACompressedFile() throws Exception {
+		Path file = folder.newFile("patients.csv.gz").toPath();
+		Files.write(file, gzip(lines(10)));
+		PatientFileIndex index = new PatientFileValidator(new PatientLineMapper(), new PatientRecordMapper())
+				.validate(file, 1).getIndex();
+		// the file is replaced by a longer one after it was indexed
+		byte[] content = lines(40);
+		Files.write(file, gzip(content));
+		Files.setLastModifiedTime(file, FileTime.fromMillis(index.getLastModified() + 1000));
+
+		PatientFilePartitioner partitioner = new PatientFilePartitioner(file, 1);
+		partitioner.setIndex(index);
+		partitioner.setIndexInterval(5);
+		Map<String, ExecutionContext> partitions = partitioner.partition(4);
+
+		assertEquals(4, partitions.size());
+		long start = content.length - new String(content, StandardCharsets.UTF_8).split("\n", 2)[1].length();
+		for (int i = 0; i < partitions.size(); i++) {
+			ExecutionContext context = partitions.get("partition" + i);
+			assertEquals(start, context.getLong(PatientFilePartitioner.START_OFFSET));
+			assertEquals('\n', content[(int) start - 1]);
+			start = context.getLong(PatientFilePartitioner.END_OFFSET);
+		}
+		assertEquals(content.length, start);
+	}
+
+	@Test
+	public void testSmallFileYieldsFewerPartitions() throws Exception {
+		Path file = folder.newFile("small.csv").toPath();
+		Files.write(file, "header\nfirst\nsecond".getBytes(StandardCharsets.UTF_8));
+
+		Map<String, ExecutionContext> partitions = new PatientFilePartitioner(file, 1).partition(4);
+
+		assertEquals(2, partitions.size());
+		assertEquals(7, partitions.get("partition0").getLong(PatientFilePartitioner.START_OFFSET));
+		assertEquals(Files.size(file), partitions.get("partition1").getLong(PatientFilePartitioner.END_OFFSET));
+	}
+
+	private static byte[] lines(int count) {
+		StringBuilder content = new StringBuilder("source_id,first_name\n");
+		for (int i = 0; i < count; i++) {
+			content.append("id-").append(i).append(",name-").append(i).append('\n');
+		}
+		return content.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static byte[] gzip(byte[] content) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (GZIPOutputStream output = new GZIPOutputStream(bytes)) {
+			output.write(content);
+		}
+		return bytes.toByteArray();
+	}
+}
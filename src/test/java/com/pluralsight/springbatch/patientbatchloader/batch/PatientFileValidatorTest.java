@@ -0,0 +1,121 @@
+package com.pluralsight.springbatch.patientbatchloader.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.batch.item.ExecutionContext;
+
+public class PatientFileValidatorTest {
+
+	private static final String VALID = ",Hettie,P,Schmidt,rodo@uge.li,(805) 384-3727,Hutij Terrace,Kahgepu,ID,"
+			+ "40239,6/14/1961,I,071-81-2500";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final PatientFileValidator validator =
+			new PatientFileValidator(new PatientLineMapper(), new PatientRecordMapper());
+
+	@Test
+	public void testValidateAndIndex() throws Exception {
+		StringBuilder content = new StringBuilder("header\r\n");
+		for (int i = 0; i < 1000; i++) {
+			String line = "id-" + i + VALID;
+			if (i == 10) {
+				line = line.replace("6/14/1961", "14/6/1961");
+			} else if (i == 500) {
+				line = line.replace("071-81-2500", "071812500");
+			} else if (i == 998) {
+				line = line + ",extra";
+			}
+			content.append(line).append("\r\n");
+		}
+		Path file = folder.newFile("patients.csv").toPath();
+		Files.write(file, content.toString().getBytes(StandardCharsets.UTF_8));
+		validator.setThreads(3);
+		validator.setIndexInterval(100);
+
+		PatientFileValidator.Result result = validator.validate(file, 1);
+
+		assertEquals(3, result.getInvalidLines());
+		assertEquals(Arrays.asList("Line 12: birth date is not M/dd/yyyy", "Line 502: SSN is not ddd-dd-dddd",
+				"Line 1000: expected 13 columns but found 14"), result.getErrors());
+		PatientFileIndex index = result.getIndex();
+		assertEquals(1000, index.getLineCount());
+		assertEquals(8, index.dataStart());
+		byte[] bytes = Files.readAllBytes(file);
+		for (int i = 0; i < index.getLines().length; i++) {
+			int offset = (int) index.getOffsets()[i];
+			assertTrue(new String(bytes, offset, 10, StandardCharsets.UTF_8)
+					.startsWith("id-" + index.getLines()[i] + ","));
+		}
+	}
+
+	@Test
+	public void testReportsLineMapperErrorsByType() throws Exception {
+		PatientLineMapper lineMapper = new PatientLineMapper();
+		PatientFileValidator validator = new PatientFileValidator((line, lineNumber) -> {
+			if (line.startsWith("id-2,")) {
+				throw new IllegalStateException("mapper failure");
+			}
+			return lineMapper.mapLine(line, lineNumber);
+		}, new PatientRecordMapper());
+		Path file = folder.newFile("patients.csv").toPath();
+		Files.write(file, ("header\nid-0" + VALID + "\nid-1" + VALID.replace(",Hettie,", ",\"Hettie,") + "\nid-2"
+				+ VALID + "\n").getBytes(StandardCharsets.UTF_8));
+
+		PatientFileValidator.Result result = validator.validate(file, 1);
+
+		assertEquals(Arrays.asList("Line 3: unterminated quoted field",
+				"Line 4: IllegalStateException: mapper failure"), result.getErrors());
+	}
+
+	@Test
+	public void testPartitionByIndex() throws Exception {
+		StringBuilder content = new StringBuilder("header\n");
+		for (int i = 0; i < 1000; i++) {
+			content.append("id-").append(i).append(i < 500 ? VALID : VALID.replace("Hettie", "Hettie-Marie-Louise"))
+					.append('\n');
+		}
+		Path file = folder.newFile("patients.csv").toPath();
+		Files.write(file, content.toString().getBytes(StandardCharsets.UTF_8));
+		validator.setIndexInterval(10);
+		PatientFilePartitioner partitioner = new PatientFilePartitioner(file, 1);
+		partitioner.setIndex(validator.validate(file, 1).getIndex());
+
+		Map<String, ExecutionContext> partitions = partitioner.partition(4);
+
+		// split on lines, where a split on bytes would give the short lines fewer partitions
+		byte[] bytes = Files.readAllBytes(file);
+		assertEquals(4, partitions.size());
+		for (int i = 0; i < 4; i++) {
+			int start = (int) partitions.get("partition" + i).getLong(PatientFilePartitioner.START_OFFSET);
+			assertTrue(new String(bytes, start, 10, StandardCharsets.UTF_8).startsWith("id-" + (i * 250) + ","));
+		}
+		assertEquals(bytes.length, partitions.get("partition3").getLong(PatientFilePartitioner.END_OFFSET));
+	}
+
+	@Test
+	public void testZipAndSsnShapes() {
+		assertTrue(PatientFileValidator.isZip("40239"));
+		assertTrue(PatientFileValidator.isZip("239"));
+		assertTrue(PatientFileValidator.isZip("40239-1234"));
+		assertFalse(PatientFileValidator.isZip(""));
+		assertFalse(PatientFileValidator.isZip("402391"));
+		assertFalse(PatientFileValidator.isZip("40239-12"));
+		assertFalse(PatientFileValidator.isZip("4O239"));
+		assertTrue(PatientFileValidator.isSsn("071-81-2500"));
+		assertFalse(PatientFileValidator.isSsn("071812500"));
+		assertFalse(PatientFileValidator.isSsn("071-8a-2500"));
+	}
+}
@@ -0,0 +1,144 @@
+package com.pluralsight.springbatch.patientbatchloader.batch;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.explore.support.MapJobExplorerFactoryBean;
+import org.springframework.batch.core.job.SimpleJob;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.repository.support.MapJobRepositoryFactoryBean;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class PatientFileWatcherTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final List<JobExecution> launched = new CopyOnWriteArrayList<>();
+
+	private JobRepository jobRepository;
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	private PatientFileWatcher watcher;
+
+	@Before
+	public void setUp() throws Exception {
+		MapJobRepositoryFactoryBean repositoryFactory = new MapJobRepositoryFactoryBean();
+		jobRepository = repositoryFactory.getObject();
+		JobLauncher launcher = (job, parameters) -> {
+			JobExecution execution = jobRepository.createJobExecution(job.getName(), parameters);
+			launched.add(execution);
+			return execution;
+		};
+		watcher = new PatientFileWatcher(folder.getRoot().toPath(), launcher,
+			new MapJobExplorerFactoryBean(repositoryFactory).getObject(), new SimpleJob("job"), "fileName");
+		watcher.setPattern("*.csv");
+		watcher.setMeterRegistry(registry);
+	}
+
+	@After
+	public void tearDown() {
+		watcher.stop();
+	}
+
+	@Test
+	public void testLaunchesStableFilesOneAtATime() throws Exception {
+		watcher.setStableTime(200);
+		watcher.setMaxInFlight(1);
+		write("first.csv");
+		write("ignored.txt");
+		watcher.start();
+		awaitLaunched(1);
+		write("second.csv");
+
+		// second.csv is complete once stable, but has to wait for first.csv to end
+		awaitWaiting(1);
+		assertLaunchedFor(1, 1000);
+
+		JobExecution first = launched.get(0);
+		first.setStatus(BatchStatus.COMPLETED);
+		first.setEndTime(new Date());
+		jobRepository.update(first);
+
+		awaitLaunched(2);
+		assertEquals(Arrays.asList("first.csv", "second.csv"), fileNames());
+	}
+
+	@Test
+	public void testWaitsForMarkerFile() throws Exception {
+		watcher.setMarkerSuffix(".done");
+		watcher.setStableTime(0);
+		watcher.start();
+		write("patients.csv");
+
+		awaitWaiting(1);
+		assertLaunchedFor(0, 1000);
+
+		write("patients.csv.done");
+		awaitLaunched(1);
+		assertEquals("patients.csv", fileNames().get(0));
+	}
+
+	private List<String> fileNames() {
+		List<String> fileNames = new ArrayList<>();
+		for (JobExecution execution : launched) {
+			fileNames.add(execution.getJobParameters().getString("fileName"));
+		}
+		return fileNames;
+	}
+
+	private void awaitLaunched(int count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (launched.size() < count && System.currentTimeMillis() < deadline) {
+			Thread.sleep(50);
+		}
+		assertEquals(count, launched.size());
+	}
+
+	private void awaitWaiting(int count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (waiting() != count && System.currentTimeMillis() < deadline) {
+			Thread.sleep(50);
+		}
+		assertEquals(count, waiting());
+	}
+
+	/**
+	 * Checks that the number of launched jobs stays the same for the given
+	 * milliseconds, several watcher polls.
+	 */
+	private void assertLaunchedFor(int count, long millis) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + millis;
+		do {
+			assertEquals(count, launched.size());
+			Thread.sleep(50);
+		} while (System.currentTimeMillis() < deadline);
+		assertEquals(count, launched.size());
+	}
+
+	private int waiting() {
+		return (int) registry.get("patient.batch.watch.waiting").gauge().value();
+	}
+
+	private void write(String name) throws Exception {
+		Path file = folder.getRoot().toPath().resolve(name);
+		Files.write(file, "source_id\n".getBytes());
+	}
+}
@@ -0,0 +1,32 @@
+package com.pluralsight.springbatch.patientbatchloader.batch;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.batch.item.ExecutionContext;
+
+public class PatientFilesPartitionerTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testPartitionPerMatchingFile() throws Exception {
+		folder.newFile("drop-2.csv");
+		folder.newFile("drop-1.csv.gz");
+		folder.newFile("other.csv");
+		folder.newFolder("drop-3.csv");
+
+		Map<String, ExecutionContext> partitions =
+			new PatientFilesPartitioner(folder.getRoot().toPath(), "drop-*").partition(1);
+
+		assertEquals(new TreeSet<>(Arrays.asList("drop-1.csv.gz", "drop-2.csv")), new TreeSet<>(partitions.keySet()));
+		assertEquals("drop-2.csv", partitions.get("drop-2.csv").getString(PatientFilesPartitioner.FILE_NAME));
+	}
+}
@@ -0,0 +1,162 @@
+package com.pluralsight.springbatch.patientbatchloader.batch;
+
+import static org.junit.Assert.assertEquals;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.pluralsight.springbatch.patientbatchloader.domain.PatientAction;
+import com.pluralsight.springbatch.patientbatchloader.domain.PatientEntity;
+
+import liquibase.integration.spring.SpringLiquibase;
+
+public class PatientJdbcItemWriterTest {
+
+	private static final int BLOCK_SIZE = 1000;
+
+	private JdbcDataSource dataSource;
+	private JdbcTemplate jdbcTemplate;
+	private TransactionTemplate transactionTemplate;
+	private PatientJdbcItemWriter writer;
+
+	@Before
+	public void setUp() throws Exception {
+		dataSource = new JdbcDataSource();
+		dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+		SpringLiquibase liquibase = new SpringLiquibase();
+		liquibase.setDataSource(dataSource);
+		liquibase.setChangeLog("classpath:config/liquibase/master.xml");
+		liquibase.setChangeLogParameters(Collections.singletonMap("patientIdBlockSize", String.valueOf(BLOCK_SIZE)));
+		liquibase.setResourceLoader(new DefaultResourceLoader());
+		liquibase.afterPropertiesSet();
+		jdbcTemplate = new JdbcTemplate(dataSource);
+		transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+		writer = new PatientJdbcItemWriter(dataSource, incrementer());
+		patient(1, "existing");
+	}
+
+	@After
+	public void tearDown() {
+		jdbcTemplate.execute("SHUTDOWN");
+	}
+
+	@Test
+	public void testInsertsNewAndUpdatesExistingPatients() {
+		write(patient("new", PatientAction.INSERT, "Roe"),
+			patient("existing", PatientAction.UPDATE, "Poe"),
+			patient("unknown", PatientAction.UPDATE, "Doe"));
+
+		assertEquals(Collections.singletonList(1L), patientIds("existing"));
+		assertEquals("Poe", lastName("existing"));
+		// an update of an unknown patient inserts it, as an insert of a stored one updates it
+		assertEquals("Roe", lastName("new"));
+		assertEquals("Doe", lastName("unknown"));
+		assertEquals(3, count());
+	}
+
+	@Test
+	public void testInsertUpdateDeleteAcrossChunks() {
+		write(patient("new", PatientAction.INSERT, "Roe"));
+		List<Long> ids = patientIds("new");
+		assertEquals(1, ids.size());
+
+		write(patient("new", PatientAction.UPDATE, "Poe"));
+		assertEquals(ids, patientIds("new"));
+		assertEquals("Poe", lastName("new"));
+
+		write(patient("new", PatientAction.DELETE, null),
+			patient("unknown", PatientAction.DELETE, null));
+		assertEquals(Collections.emptyList(), patientIds("new"));
+		assertEquals(1, count());
+	}
+
+	@Test
+	public void testAppliesTheLastRecordOfASourceId() {
+		write(patient("new", PatientAction.INSERT, "Roe"),
+			patient("existing", PatientAction.DELETE, null),
+			patient("new", PatientAction.UPDATE, "Poe"),
+			patient("existing", PatientAction.INSERT, "Doe"),
+			patient("gone", PatientAction.INSERT, "Roe"),
+			patient("gone", PatientAction.DELETE, null));
+
+		assertEquals(1, patientIds("new").size());
+		assertEquals("Poe", lastName("new"));
+		assertEquals(Collections.singletonList(1L), patientIds("existing"));
+		assertEquals("Doe", lastName("existing"));
+		assertEquals(Collections.emptyList(), patientIds("gone"));
+		assertEquals(2, count());
+	}
+
+	@Test
+	public void testTakesIdsFromPooledSequenceBlocks() {
+		write(patient("a", PatientAction.INSERT, "Roe"), patient("b", PatientAction.INSERT, "Roe"));
+		PatientJdbcItemWriter otherWriter = new PatientJdbcItemWriter(dataSource, incrementer());
+		write(otherWriter, patient("c", PatientAction.INSERT, "Roe"));
+		write(patient("d", PatientAction.INSERT, "Roe"));
+
+		// the sequence restarts at 1000, every value starts a block of BLOCK_SIZE ids
+		assertEquals(Collections.singletonList(1000L), patientIds("a"));
+		assertEquals(Collections.singletonList(1001L), patientIds("b"));
+		assertEquals(Collections.singletonList(2000L), patientIds("c"));
+		assertEquals(Collections.singletonList(1002L), patientIds("d"));
+	}
+
+	private PooledSequenceMaxValueIncrementer incrementer() {
+		return new PooledSequenceMaxValueIncrementer(dataSource, PatientEntity.ID_SEQUENCE, BLOCK_SIZE);
+	}
+
+	private void write(PatientEntity... patients) {
+		write(writer, patients);
+	}
+
+	private void write(PatientJdbcItemWriter writer, PatientEntity... patients) {
+		transactionTemplate.execute((status) -> {
+			try {
+				writer.write(Arrays.asList(patients));
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+			return null;
+		});
+	}
+
+	private static PatientEntity patient(String sourceId, PatientAction action, String lastName) {
+		PatientEntity patient = new PatientEntity(sourceId, "Hettie", "P", lastName, "rodo@uge.li", "(805) 384-3727",
+			"Hutij Terrace", "Kahgepu", "ID", "40239", LocalDate.of(1961, 6, 14), "071-81-2500");
+		patient.setAction(action);
+		return patient;
+	}
+
+	private void patient(long patientId, String sourceId) {
+		jdbcTemplate.update("INSERT INTO patient (patient_id, source_id, first_name, middle_initial, last_name, "
+			+ "email_address, phone_number, street, city, state, zip_code, birth_date, social_security_number) "
+			+ "VALUES (?, ?, 'Hettie', 'P', 'Schmidt', 'rodo@uge.li', '(805) 384-3727', 'Hutij Terrace', "
+			+ "'Kahgepu', 'ID', '40239', DATE '1961-06-14', '071-81-2500')", patientId, sourceId);
+	}
+
+	private List<Long> patientIds(String sourceId) {
+		return jdbcTemplate.queryForList("SELECT patient_id FROM patient WHERE source_id = ?", Long.class, sourceId);
+	}
+
+	private String lastName(String sourceId) {
+		List<String> lastNames = jdbcTemplate.queryForList("SELECT last_name FROM patient WHERE source_id = ?",
+			String.class, sourceId);
+		return lastNames.isEmpty() ? null : lastNames.get(0);
+	}
+
+	private int count() {
+		return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM patient", Integer.class);
+	}
+}
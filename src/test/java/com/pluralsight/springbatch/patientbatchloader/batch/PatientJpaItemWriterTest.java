@@ -0,0 +1,203 @@
+package com.pluralsight.springbatch.patientbatchloader.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.pluralsight.springbatch.patientbatchloader.config.PooledSequenceIdGenerator;
+import com.pluralsight.springbatch.patientbatchloader.domain.PatientAction;
+import com.pluralsight.springbatch.patientbatchloader.domain.PatientEntity;
+
+import liquibase.integration.spring.SpringLiquibase;
+
+public class PatientJpaItemWriterTest {
+
+	private JdbcDataSource dataSource;
+	private JdbcTemplate jdbcTemplate;
+	private LocalContainerEntityManagerFactoryBean entityManagerFactoryBean;
+	private EntityManagerFactory entityManagerFactory;
+	private TransactionTemplate transactionTemplate;
+	private PatientJpaItemWriter writer;
+
+	@Before
+	public void setUp() throws Exception {
+		dataSource = new JdbcDataSource();
+		dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+		jdbcTemplate = new JdbcTemplate(dataSource);
+		// a feed loaded twice before source_id was unique
+		migrate("classpath:config/liquibase/before-source-id-index.xml");
+		patient(1, "existing", "Roe");
+		patient(2, "existing", "Poe");
+		patient(3, "other", "Doe");
+		migrate("classpath:config/liquibase/master.xml");
+
+		entityManagerFactoryBean = new LocalContainerEntityManagerFactoryBean();
+		entityManagerFactoryBean.setDataSource(dataSource);
+		entityManagerFactoryBean.setPackagesToScan("com.pluralsight.springbatch.patientbatchloader.domain");
+		entityManagerFactoryBean.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+		Properties jpaProperties = new Properties();
+		jpaProperties.put("hibernate.id.new_generator_mappings", "true");
+		jpaProperties.put("hibernate.generate_statistics", "true");
+		jpaProperties.put("hibernate.cache.use_second_level_cache", "false");
+		jpaProperties.put(PooledSequenceIdGenerator.BLOCK_SIZE_SETTING, "1000");
+		entityManagerFactoryBean.setJpaProperties(jpaProperties);
+		entityManagerFactoryBean.afterPropertiesSet();
+		entityManagerFactory = entityManagerFactoryBean.getObject();
+		transactionTemplate = new TransactionTemplate(new JpaTransactionManager(entityManagerFactory));
+		writer = new PatientJpaItemWriter();
+		writer.setEntityManagerFactory(entityManagerFactory);
+	}
+
+	@After
+	public void tearDown() {
+		entityManagerFactoryBean.destroy();
+		jdbcTemplate.execute("SHUTDOWN");
+	}
+
+	@Test
+	public void testMigrationKeepsTheLastLoadedRowOfASourceId() {
+		assertEquals(Collections.singletonList(2L), patientIds("existing"));
+		assertEquals("Poe", lastName("existing"));
+		assertEquals(Collections.singletonList(3L), patientIds("other"));
+		try {
+			patient(4, "other", "Roe");
+			fail("source_id is unique after the migration");
+		} catch (DuplicateKeyException e) {
+			assertEquals(Collections.singletonList(3L), patientIds("other"));
+		}
+	}
+
+	@Test
+	public void testInsertUpdateDeleteAcrossChunks() {
+		write(patient("new", PatientAction.INSERT, "Roe"));
+		List<Long> ids = patientIds("new");
+		assertEquals(1, ids.size());
+		assertEquals("Roe", lastName("new"));
+
+		write(patient("new", PatientAction.UPDATE, "Poe"));
+		assertEquals(ids, patientIds("new"));
+		assertEquals("Poe", lastName("new"));
+
+		write(patient("new", PatientAction.DELETE, null));
+		assertEquals(Collections.emptyList(), patientIds("new"));
+		assertEquals(2, count());
+	}
+
+	@Test
+	public void testAppliesTheLastRecordOfASourceIdWithOneLookup() {
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+
+		write(patient("new", PatientAction.INSERT, "Roe"),
+			patient("existing", PatientAction.DELETE, null),
+			patient("new", PatientAction.UPDATE, "Poe"),
+			patient("existing", PatientAction.INSERT, "Doe"),
+			patient("other", PatientAction.UPDATE, "Roe"),
+			patient("other", PatientAction.DELETE, null),
+			patient("gone", PatientAction.INSERT, "Roe"),
+			patient("gone", PatientAction.DELETE, null));
+
+		assertEquals(1, statistics.getQueryExecutionCount());
+		assertEquals(1, patientIds("new").size());
+		assertEquals("Poe", lastName("new"));
+		// an insert of a stored patient updates it in place
+		assertEquals(Collections.singletonList(2L), patientIds("existing"));
+		assertEquals("Doe", lastName("existing"));
+		assertEquals(Collections.emptyList(), patientIds("other"));
+		assertEquals(Collections.emptyList(), patientIds("gone"));
+		assertEquals(2, count());
+	}
+
+	@Test
+	public void testDuplicateKeyIsADataIntegrityViolation() {
+		PatientJpaItemWriter racingWriter = new PatientJpaItemWriter() {
+			@Override
+			protected void doWrite(EntityManager entityManager, List<? extends PatientEntity> items) {
+				super.doWrite(entityManager, items);
+				// another partition commits the same source id once this chunk looked it up
+				CompletableFuture.runAsync(() -> patient(4, "new", "Doe")).join();
+			}
+		};
+		racingWriter.setEntityManagerFactory(entityManagerFactory);
+
+		try {
+			transactionTemplate.execute((status) -> {
+				racingWriter.write(Collections.singletonList(patient("new", PatientAction.INSERT, "Roe")));
+				return null;
+			});
+			fail("the source id was inserted concurrently");
+		} catch (DataIntegrityViolationException e) {
+			assertEquals(Collections.singletonList(4L), patientIds("new"));
+			assertEquals("Doe", lastName("new"));
+		}
+	}
+
+	private void write(PatientEntity... patients) {
+		transactionTemplate.execute((status) -> {
+			writer.write(Arrays.asList(patients));
+			return null;
+		});
+	}
+
+	private void migrate(String changeLog) throws Exception {
+		SpringLiquibase liquibase = new SpringLiquibase();
+		liquibase.setDataSource(dataSource);
+		liquibase.setChangeLog(changeLog);
+		liquibase.setChangeLogParameters(Collections.singletonMap("patientIdBlockSize", "1000"));
+		liquibase.setResourceLoader(new DefaultResourceLoader());
+		liquibase.afterPropertiesSet();
+	}
+
+	static PatientEntity patient(String sourceId, PatientAction action, String lastName) {
+		PatientEntity patient = new PatientEntity(sourceId, "Hettie", "P", lastName, "rodo@uge.li", "(805) 384-3727",
+			"Hutij Terrace", "Kahgepu", "ID", "40239", LocalDate.of(1961, 6, 14), "071-81-2500");
+		patient.setAction(action);
+		return patient;
+	}
+
+	private void patient(long patientId, String sourceId, String lastName) {
+		jdbcTemplate.update("INSERT INTO patient (patient_id, source_id, first_name, middle_initial, last_name, "
+			+ "email_address, phone_number, street, city, state, zip_code, birth_date, social_security_number) "
+			+ "VALUES (?, ?, 'Hettie', 'P', ?, 'rodo@uge.li', '(805) 384-3727', 'Hutij Terrace', "
+			+ "'Kahgepu', 'ID', '40239', DATE '1961-06-14', '071-81-2500')", patientId, sourceId, lastName);
+	}
+
+	private List<Long> patientIds(String sourceId) {
+		return jdbcTemplate.queryForList("SELECT patient_id FROM patient WHERE source_id = ?", Long.class, sourceId);
+	}
+
+	private String lastName(String sourceId) {
+		List<String> lastNames = jdbcTemplate.queryForList("SELECT last_name FROM patient WHERE source_id = ?",
+			String.class, sourceId);
+		return lastNames.isEmpty() ? null : lastNames.get(0);
+	}
+
+	private int count() {
+		return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM patient", Integer.class);
+	}
+}
@@ -0,0 +1,61 @@
+package com.pluralsight.springbatch.patientbatchloader.batch;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.springframework.batch.item.file.transform.FlatFileFormatException;
+import org.springframework.batch.item.file.transform.IncorrectTokenCountException;
+
+import com.pluralsight.springbatch.patientbatchloader.domain.PatientRecord;
+
+public class PatientLineMapperTest {
+
+	private final PatientLineMapper mapper = new PatientLineMapper();
+
+	@Test
+	public void testMapLine() throws Exception {
+		PatientRecord patient = mapper.mapLine("72739d22-3c12-539b-b3c2-13d9d4224d40,Hettie,P,Schmidt,"
+				+ "rodo@uge.li,(805) 384-3727,Hutij Terrace,Kahgepu,ID,40239,6/14/1961,I,071-81-2500", 1);
+		assertEquals("72739d22-3c12-539b-b3c2-13d9d4224d40", patient.getSourceId());
+		assertEquals("Hettie", patient.getFirstName());
+		assertEquals("P", patient.getMiddleInitial());
+		assertEquals("Schmidt", patient.getLastName());
+		assertEquals("rodo@uge.li", patient.getEmailAddress());
+		assertEquals("(805) 384-3727", patient.getPhoneNumber());
+		assertEquals("Hutij Terrace", patient.getStreet());
+		assertEquals("Kahgepu", patient.getCity());
+		assertEquals("ID", patient.getState());
+		assertEquals("40239", patient.getZip());
+		assertEquals("6/14/1961", patient.getBirthDate());
+		assertEquals("I", patient.getAction());
+		assertEquals("071-81-2500", patient.getSsn());
+	}
+
+	@Test
+	public void testQuotedFields() throws Exception {
+		PatientRecord patient = mapper.mapLine("id, \"Hettie\" ,,\"O\"\"Brien, Jr.\",a@b.c,\"(805) 384-3727\","
+				+ "\"1 Main St, Apt 2\",Kahgepu,ID,40239,6/14/1961,I,\"\"", 1);
+		assertEquals("id", patient.getSourceId());
+		assertEquals("Hettie", patient.getFirstName());
+		assertEquals("", patient.getMiddleInitial());
+		assertEquals("O\"Brien, Jr.", patient.getLastName());
+		assertEquals("1 Main St, Apt 2", patient.getStreet());
+		assertEquals("Kahgepu", patient.getCity());
+		assertEquals("", patient.getSsn());
+	}
+
+	@Test(expected = IncorrectTokenCountException.class)
+	public void testTooFewFields() throws Exception {
+		mapper.mapLine("id,Hettie,P,Schmidt", 1);
+	}
+
+	@Test(expected = IncorrectTokenCountException.class)
+	public void testTooManyFields() throws Exception {
+		mapper.mapLine("a,b,c,d,e,f,g,h,i,j,k,l,m,n", 1);
+	}
+
+	@Test(expected = FlatFileFormatException.class)
+	public void testUnterminatedQuote() throws Exception {
+		mapper.mapLine("a,b,c,d,e,f,g,h,i,j,k,l,\"m", 1);
+	}
+}
@@ -0,0 +1,216 @@
+package com.pluralsight.springbatch.patientbatchloader.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.explore.support.JobExplorerFactoryBean;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.repository.support.JobRepositoryFactoryBean;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.scope.context.StepContext;
+import org.springframework.batch.test.MetaDataInstanceFactory;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import liquibase.integration.spring.SpringLiquibase;
+
+public class PatientStagingMergeTaskletTest {
+
+	private static final long JOB_INSTANCE_ID = 1000;
+
+	private JdbcDataSource dataSource;
+	private JdbcTemplate jdbcTemplate;
+	private JobRepository jobRepository;
+	private JobExplorer jobExplorer;
+
+	private long seq;
+
+	@Before
+	public void setUp() throws Exception {
+		dataSource = new JdbcDataSource();
+		dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+		SpringLiquibase liquibase = new SpringLiquibase();
+		liquibase.setDataSource(dataSource);
+		liquibase.setChangeLog("classpath:config/liquibase/master.xml");
+		liquibase.setChangeLogParameters(Collections.singletonMap("patientIdBlockSize", "1000"));
+		liquibase.setResourceLoader(new DefaultResourceLoader());
+		liquibase.afterPropertiesSet();
+		jdbcTemplate = new JdbcTemplate(dataSource);
+
+		JobRepositoryFactoryBean repositoryFactory = new JobRepositoryFactoryBean();
+		repositoryFactory.setDataSource(dataSource);
+		repositoryFactory.setTransactionManager(new DataSourceTransactionManager(dataSource));
+		repositoryFactory.afterPropertiesSet();
+		jobRepository = repositoryFactory.getObject();
+		JobExplorerFactoryBean explorerFactory = new JobExplorerFactoryBean();
+		explorerFactory.setDataSource(dataSource);
+		explorerFactory.afterPropertiesSet();
+		jobExplorer = explorerFactory.getObject();
+	}
+
+	@After
+	public void tearDown() {
+		jdbcTemplate.execute("SHUTDOWN");
+	}
+
+	@Test
+	public void testInsertThenDeleteLeavesNoPatient() throws Exception {
+		patient(1, "existing");
+		stage("existing", "I", 11, "Doe");
+		stage("existing", "D", null, null);
+		stage("new", "I", 12, "Doe");
+		stage("new", "D", null, null);
+
+		merge();
+
+		assertEquals(0, count());
+	}
+
+	@Test
+	public void testDeleteThenInsertGivesANewPatientId() throws Exception {
+		patient(1, "existing");
+		stage("existing", "U", 11, "Roe");
+		stage("existing", "D", null, null);
+		stage("existing", "I", 12, "Poe");
+
+		merge();
+
+		assertEquals(Collections.singletonList(12L), patientIds("existing"));
+		assertEquals("Poe", lastName("existing"));
+	}
+
+	@Test
+	public void testDeleteOnlyDeletesExistingPatients() throws Exception {
+		patient(1, "existing");
+		patient(2, "kept");
+		stage("existing", "D", null, null);
+		stage("unknown", "D", null, null);
+
+		merge();
+
+		assertEquals(Collections.emptyList(), patientIds("existing"));
+		assertEquals(Collections.singletonList(2L), patientIds("kept"));
+		assertEquals(1, count());
+	}
+
+	@Test
+	public void testInsertThenUpdateKeepsOnePatient() throws Exception {
+		patient(1, "existing");
+		stage("existing", "I", 11, "Roe");
+		stage("existing", "U", 12, "Poe");
+		stage("new", "I", 13, "Roe");
+		stage("new", "U", 14, "Poe");
+
+		merge();
+
+		assertEquals(Collections.singletonList(1L), patientIds("existing"));
+		assertEquals("Poe", lastName("existing"));
+		assertEquals(Collections.singletonList(14L), patientIds("new"));
+		assertEquals("Poe", lastName("new"));
+		assertEquals(0, (int) jdbcTemplate.queryForObject("SELECT COUNT(*) FROM patient_staging", Integer.class));
+	}
+
+	@Test
+	public void testClearsRowsOfInstancesThatWillNotMerge() throws Exception {
+		JobExecution failed = jobRepository.createJobExecution("job", parameters("failed"));
+		failed.setStartTime(new Date(0));
+		failed.setEndTime(new Date(1));
+		failed.setStatus(BatchStatus.FAILED);
+		jobRepository.update(failed);
+		JobExecution running = jobRepository.createJobExecution("job", parameters("running"));
+		running.setStartTime(new Date());
+		running.setStatus(BatchStatus.STARTED);
+		jobRepository.update(running);
+		stage(failed.getJobId(), "failed", "I", 11, "Doe");
+		stage(running.getJobId(), "running", "I", 12, "Doe");
+		stage(JOB_INSTANCE_ID + 1, "gone", "I", 13, "Doe");
+
+		merge();
+
+		List<Map<String, Object>> staged = jdbcTemplate.queryForList("SELECT job_instance_id FROM patient_staging");
+		assertEquals(1, staged.size());
+		assertEquals(running.getJobId().longValue(), ((Number) staged.get(0).get("job_instance_id")).longValue());
+		assertEquals(BatchStatus.ABANDONED, jobExplorer.getJobExecution(failed.getId()).getStatus());
+		assertEquals(BatchStatus.STARTED, jobExplorer.getJobExecution(running.getId()).getStatus());
+		assertEquals(0, count());
+	}
+
+	@Test
+	public void testKeepsRowsOfRecentlyFailedInstances() throws Exception {
+		JobExecution failed = jobRepository.createJobExecution("job", parameters("failed"));
+		failed.setStartTime(new Date());
+		failed.setEndTime(new Date());
+		failed.setStatus(BatchStatus.FAILED);
+		jobRepository.update(failed);
+		stage(failed.getJobId(), "failed", "I", 11, "Doe");
+
+		merge();
+
+		assertEquals(1, (int) jdbcTemplate.queryForObject("SELECT COUNT(*) FROM patient_staging", Integer.class));
+		assertEquals(BatchStatus.FAILED, jobExplorer.getJobExecution(failed.getId()).getStatus());
+		assertNull(lastName("failed"));
+	}
+
+	private void merge() throws Exception {
+		JobExecution jobExecution = MetaDataInstanceFactory.createJobExecution("job", JOB_INSTANCE_ID, 1L);
+		StepExecution stepExecution = jobExecution.createStepExecution("merge");
+		new PatientStagingMergeTasklet(dataSource, jobExplorer, jobRepository, 60 * 60 * 1000)
+			.execute(new StepContribution(stepExecution), new ChunkContext(new StepContext(stepExecution)));
+	}
+
+	private void patient(long patientId, String sourceId) {
+		jdbcTemplate.update("INSERT INTO patient (patient_id, source_id, first_name, middle_initial, last_name, "
+			+ "email_address, phone_number, street, city, state, zip_code, birth_date, social_security_number) "
+			+ "VALUES (?, ?, 'Hettie', 'P', 'Schmidt', 'rodo@uge.li', '(805) 384-3727', 'Hutij Terrace', "
+			+ "'Kahgepu', 'ID', '40239', DATE '1961-06-14', '071-81-2500')", patientId, sourceId);
+	}
+
+	private void stage(String sourceId, String action, Integer patientId, String lastName) {
+		stage(JOB_INSTANCE_ID, sourceId, action, patientId, lastName);
+	}
+
+	private void stage(long jobInstanceId, String sourceId, String action, Integer patientId, String lastName) {
+		boolean delete = "D".equals(action);
+		jdbcTemplate.update("INSERT INTO patient_staging (job_instance_id, seq, action, patient_id, source_id, "
+			+ "first_name, middle_initial, last_name, email_address, phone_number, street, city, state, zip_code, "
+			+ "birth_date, social_security_number) VALUES (?, ?, ?, ?, ?, ?, 'P', ?, 'rodo@uge.li', "
+			+ "'(805) 384-3727', 'Hutij Terrace', 'Kahgepu', 'ID', '40239', DATE '1961-06-14', '071-81-2500')",
+			jobInstanceId, seq++, action, patientId, sourceId, delete ? null : "Hettie", lastName);
+	}
+
+	private static JobParameters parameters(String fileName) {
+		return new JobParametersBuilder().addString("fileName", fileName).toJobParameters();
+	}
+
+	private List<Long> patientIds(String sourceId) {
+		return jdbcTemplate.queryForList("SELECT patient_id FROM patient WHERE source_id = ?", Long.class, sourceId);
+	}
+
+	private String lastName(String sourceId) {
+		List<String> lastNames = jdbcTemplate.queryForList("SELECT last_name FROM patient WHERE source_id = ?",
+			String.class, sourceId);
+		return lastNames.isEmpty() ? null : lastNames.get(0);
+	}
+
+	private int count() {
+		return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM patient", Integer.class);
+	}
+}
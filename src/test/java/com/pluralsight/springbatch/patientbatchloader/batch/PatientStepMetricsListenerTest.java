@@ -0,0 +1,57 @@
+package com.pluralsight.springbatch.patientbatchloader.batch;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class PatientStepMetricsListenerTest {
+
+	private final MeterRegistry registry = new SimpleMeterRegistry();
+
+	private final PatientStepMetricsListener listener = new PatientStepMetricsListener(registry, "step");
+
+	@Test
+	public void testChunk() {
+		listener.beforeChunk(null);
+		for (int i = 0; i < 3; i++) {
+			listener.beforeRead();
+			listener.afterRead("item");
+			listener.beforeProcess("item");
+			listener.afterProcess("item", "item");
+		}
+		listener.beforeWrite(Arrays.asList("a", "b", "c"));
+		listener.afterWrite(Arrays.asList("a", "b", "c"));
+		listener.afterChunk(null);
+
+		assertEquals(3, registry.get("patient.batch.read").tag("step", "step").timer().count());
+		assertEquals(3, registry.get("patient.batch.process").timer().count());
+		assertEquals(1, registry.get("patient.batch.write").timer().count());
+		assertEquals(1, registry.get("patient.batch.chunk.commit").timer().count());
+		assertEquals(3, registry.get("patient.batch.items.written").counter().count(), 0);
+	}
+
+	@Test
+	public void testChunkWithoutWrite() {
+		listener.beforeChunk(null);
+		listener.beforeRead();
+		listener.afterChunk(null);
+
+		assertEquals(0, registry.get("patient.batch.chunk.commit").timer().count());
+	}
+
+	@Test
+	public void testSkips() {
+		listener.onSkipInProcess("item", new MalformedPatientRecordException("id", "malformed"));
+		listener.onSkipInProcess("item", new MalformedPatientRecordException("id", "malformed"));
+		listener.onSkipInRead(new IllegalStateException());
+
+		assertEquals(2, registry.get("patient.batch.skips").tag("phase", "process").counter().count(), 0);
+		assertEquals(1, registry.get("patient.batch.skips").tag("phase", "read").counter().count(), 0);
+		assertEquals(0, registry.get("patient.batch.skips").tag("phase", "write").counter().count(), 0);
+	}
+}
@@ -0,0 +1,75 @@
+package com.pluralsight.springbatch.patientbatchloader.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.item.file.FlatFileParseException;
+
+import com.pluralsight.springbatch.patientbatchloader.domain.PatientRecord;
+
+public class RejectedRecordWriterTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final StepExecution stepExecution = new StepExecution("step", null);
+
+	@Test
+	public void testRejectsOfCommittedChunks() throws Exception {
+		Path file = folder.getRoot().toPath().resolve("rejected").resolve("patients.rejected.csv");
+		RejectedRecordWriter writer = new RejectedRecordWriter(file, 2);
+
+		writer.beforeChunk(null);
+		writer.onSkipInRead(new FlatFileParseException("Parsing error", new IllegalStateException("bad line"),
+			"a,\"b", 7));
+		writer.afterChunk(null);
+		assertFalse(Files.exists(file));
+
+		writer.beforeChunk(null);
+		writer.onSkipInProcess(record("1"), new MalformedPatientRecordException("1", "unknown action"));
+		writer.afterChunkError(null);
+
+		writer.beforeChunk(null);
+		writer.onSkipInProcess(record("2"), new MalformedPatientRecordException("2", "unknown action"));
+		writer.afterChunk(null);
+		assertEquals(2, writer.getWritten());
+
+		writer.afterStep(stepExecution);
+		assertEquals(Arrays.asList(
+			"line,phase,reason,record",
+			"7,read,\"bad line\",a,\"b",
+			",process,\"unknown action\",2,Jane,,\"Doe, Jr.\",,,,,,,,X,"),
+			Files.readAllLines(file, StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testRestartAppends() throws Exception {
+		Path file = folder.getRoot().toPath().resolve("patients.rejected.csv");
+		for (int run = 0; run < 2; run++) {
+			RejectedRecordWriter writer = new RejectedRecordWriter(file, 100);
+			writer.beforeChunk(null);
+			writer.onSkipInProcess(record(Integer.toString(run)), new MalformedPatientRecordException("", "run"));
+			writer.afterChunk(null);
+			writer.afterStep(stepExecution);
+		}
+		assertEquals(3, Files.readAllLines(file, StandardCharsets.UTF_8).size());
+	}
+
+	private static PatientRecord record(String sourceId) {
+		PatientRecord record = new PatientRecord();
+		record.setSourceId(sourceId);
+		record.setFirstName("Jane");
+		record.setLastName("Doe, Jr.");
+		record.setAction("X");
+		return record;
+	}
+}
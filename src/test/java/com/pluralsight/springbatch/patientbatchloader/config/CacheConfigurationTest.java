@@ -0,0 +1,137 @@
+package com.pluralsight.springbatch.patientbatchloader.config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.time.LocalDate;
+
+import javax.cache.CacheManager;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+
+import org.hibernate.cache.internal.StandardQueryCache;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.entity.EntityPersister;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.pluralsight.springbatch.patientbatchloader.PatientBatchLoaderApp;
+import com.pluralsight.springbatch.patientbatchloader.batch.PatientCacheEvictionListener;
+import com.pluralsight.springbatch.patientbatchloader.domain.PatientAction;
+import com.pluralsight.springbatch.patientbatchloader.domain.PatientEntity;
+import com.pluralsight.springbatch.patientbatchloader.repository.PatientRepository;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = PatientBatchLoaderApp.class, properties = "application.cache.enabled=true")
+@ActiveProfiles("dev")
+public class CacheConfigurationTest {
+
+	private static final String SOURCE_ID = "cache-configuration-test";
+
+	@Autowired
+	@Qualifier("batchEntityManagerFactory")
+	private EntityManagerFactory entityManagerFactory;
+
+	@Autowired
+	@Qualifier("patientCacheManager")
+	private CacheManager cacheManager;
+
+	@Autowired
+	@Qualifier("batchTransactionManager")
+	private PlatformTransactionManager transactionManager;
+
+	@Autowired
+	@Qualifier("batchDataSource")
+	private DataSource dataSource;
+
+	@Autowired
+	private PatientRepository patientRepository;
+
+	@Test
+	public void testHibernateUsesTheConfiguredRegions() {
+		EntityPersister persister = entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+			.getMetamodel().entityPersister(PatientEntity.class);
+		assertEquals(PatientEntity.class.getName(), persister.getCacheAccessStrategy().getRegion().getName());
+		assertFalse(persister.hasNaturalIdCache());
+	}
+
+	@Test
+	public void testEvictionListenerInvalidatesChunksWrittenWithJdbc() {
+		PatientEntity patient = patientRepository.save(patient());
+		try {
+			cache(patient);
+			PatientCacheEvictionListener listener = new PatientCacheEvictionListener(entityManagerFactory);
+
+			new TransactionTemplate(transactionManager).execute(status -> {
+				listener.beforeChunk(null);
+				return new JdbcTemplate(dataSource).update("UPDATE patient SET last_name = 'Roe' WHERE source_id = ?",
+					SOURCE_ID);
+			});
+
+			assertFalse(isCached(PatientEntity.class.getName()));
+			assertEquals("Roe", patientRepository.findVMBySourceId(SOURCE_ID).get().getLastName());
+		} finally {
+			patientRepository.delete(patient);
+		}
+	}
+
+	@Test
+	public void testEvictionListenerEvictsCachedPatientsAfterTheStep() {
+		PatientEntity patient = patientRepository.save(patient());
+		try {
+			cache(patient);
+
+			new PatientCacheEvictionListener(entityManagerFactory).afterStep(null);
+
+			assertFalse(isCached(PatientEntity.class.getName()));
+			assertFalse(isCached(StandardQueryCache.class.getName()));
+		} finally {
+			patientRepository.delete(patient);
+		}
+	}
+
+	private void cache(PatientEntity patient) {
+		EntityManager entityManager = entityManagerFactory.createEntityManager();
+		try {
+			assertNotNull(entityManager.find(PatientEntity.class, patient.getId()));
+		} finally {
+			entityManager.close();
+		}
+		assertTrue(patientRepository.findVMBySourceId(SOURCE_ID).isPresent());
+		assertTrue(isCached(PatientEntity.class.getName()));
+		assertTrue(isCached(StandardQueryCache.class.getName()));
+	}
+
+	private boolean isCached(String region) {
+		return cacheManager.getCache(region).iterator().hasNext();
+	}
+
+	private static PatientEntity patient() {
+		PatientEntity patient = new PatientEntity();
+		patient.setSourceId(SOURCE_ID);
+		patient.setFirstName("Hettie");
+		patient.setMiddleInitial("P");
+		patient.setLastName("Schmidt");
+		patient.setEmailAddress("rodo@uge.li");
+		patient.setPhoneNumber("(805) 384-3727");
+		patient.setStreet("Hutij Terrace");
+		patient.setCity("Kahgepu");
+		patient.setState("ID");
+		patient.setZipCode("40239");
+		patient.setBirthDate(LocalDate.of(1961, 6, 14));
+		patient.setSocialSecurityNumber("071-81-2500");
+		patient.setAction(PatientAction.INSERT);
+		return patient;
+	}
+}
@@ -0,0 +1,92 @@
+package com.pluralsight.springbatch.patientbatchloader.tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringWriter;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.pluralsight.springbatch.patientbatchloader.batch.PatientLineMapper;
+import com.pluralsight.springbatch.patientbatchloader.batch.PatientRecordMapper;
+import com.pluralsight.springbatch.patientbatchloader.domain.PatientRecord;
+
+public class PatientFileGeneratorTest {
+
+	private final PatientLineMapper lineMapper = new PatientLineMapper();
+	private final PatientRecordMapper recordMapper = new PatientRecordMapper();
+
+	@Test
+	public void testGenerate() throws Exception {
+		PatientFileGenerator generator = new PatientFileGenerator();
+		generator.setRows(10_000);
+		generator.setUpdates(0.1);
+		generator.setDeletes(0.05);
+		generator.setDuplicates(0.02);
+		generator.setMalformed(0.01);
+		String[] lines = generate(generator).split("\n");
+		assertEquals(10_001, lines.length);
+
+		Set<String> inserted = new HashSet<>();
+		Set<String> malformedSourceIds = new HashSet<>();
+		long updates = 0;
+		long deletes = 0;
+		long duplicates = 0;
+		long malformed = 0;
+		for (int i = 1; i < lines.length; i++) {
+			PatientRecord record;
+			try {
+				record = lineMapper.mapLine(lines[i], i + 1);
+				recordMapper.apply(record);
+			} catch (RuntimeException e) {
+				malformedSourceIds.add(lines[i].substring(0, lines[i].indexOf(',')));
+				malformed++;
+				continue;
+			}
+			if ("I".equals(record.getAction())) {
+				if (!inserted.add(record.getSourceId())) {
+					duplicates++;
+				}
+			} else {
+				// updates and deletes always refer to a patient inserted earlier in the file
+				assertTrue(inserted.contains(record.getSourceId()));
+				if ("U".equals(record.getAction())) {
+					updates++;
+				} else {
+					deletes++;
+				}
+			}
+		}
+		PatientFileGenerator.Counts counts = generator.getCounts();
+		assertEquals(inserted.size(), counts.getInserts());
+		assertEquals(counts.getUpdates(), updates);
+		assertEquals(counts.getDeletes(), deletes);
+		assertEquals(counts.getDuplicates(), duplicates);
+		assertEquals(counts.getMalformed(), malformed);
+		assertTrue(updates > 900 && updates < 1100);
+		assertTrue(malformed > 50 && malformed < 150);
+		// a skipped row must not be mistaken for a patient of the file
+		assertEquals(malformed, malformedSourceIds.size());
+		malformedSourceIds.retainAll(inserted);
+		assertTrue(malformedSourceIds.isEmpty());
+	}
+
+	@Test
+	public void testSameSeedSameFile() throws Exception {
+		PatientFileGenerator generator = new PatientFileGenerator();
+		generator.setRows(1_000);
+		generator.setMalformed(0.1);
+		String first = generate(generator);
+		assertEquals(first, generate(generator));
+		generator.setSeed(7);
+		assertTrue(!first.equals(generate(generator)));
+	}
+
+	private static String generate(PatientFileGenerator generator) throws Exception {
+		StringWriter writer = new StringWriter();
+		generator.generate(writer);
+		return writer.toString();
+	}
+}
@@ -0,0 +1,136 @@
+package com.pluralsight.springbatch.patientbatchloader.web.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pluralsight.springbatch.patientbatchloader.PatientBatchLoaderApp;
+import com.pluralsight.springbatch.patientbatchloader.domain.PatientAction;
+import com.pluralsight.springbatch.patientbatchloader.domain.PatientEntity;
+import com.pluralsight.springbatch.patientbatchloader.repository.PatientRepository;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = PatientBatchLoaderApp.class, properties = "application.query.maxPageSize=3")
+@ActiveProfiles("dev")
+public class PatientResourceTest {
+
+	private static final String LAST_NAME = "Resourcetest";
+
+	private static final String SSN = "999-01-0001";
+
+	@Autowired
+	private WebApplicationContext context;
+
+	@Autowired
+	private PatientRepository patientRepository;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	private MockMvc mockMvc;
+
+	private final List<PatientEntity> patients = new ArrayList<>();
+
+	@Before
+	public void setUp() {
+		mockMvc = MockMvcBuilders.webAppContextSetup(context).build();
+		for (int i = 0; i < 5; i++) {
+			patients.add(patientRepository.save(patient("patient-resource-test-" + i, i < 2 ? SSN : "999-01-0002")));
+		}
+	}
+
+	@After
+	public void tearDown() {
+		patientRepository.deleteAll(patients);
+	}
+
+	@Test
+	public void testPagesFollowTheCursor() throws Exception {
+		JsonNode first = page(get("/patients").param("lastName", LAST_NAME).param("size", "2"));
+		assertEquals(2, first.get("patients").size());
+		assertEquals(patients.get(0).getId().longValue(), first.get("patients").get(0).get("patientId").asLong());
+		assertEquals(patients.get(1).getId().longValue(), first.get("next").asLong());
+
+		JsonNode second = page(get("/patients").param("lastName", LAST_NAME).param("size", "2")
+			.param("after", first.get("next").asText()));
+		assertEquals(2, second.get("patients").size());
+		assertEquals(patients.get(2).getId().longValue(), second.get("patients").get(0).get("patientId").asLong());
+
+		JsonNode last = page(get("/patients").param("lastName", LAST_NAME).param("size", "2")
+			.param("after", second.get("next").asText()));
+		assertEquals(1, last.get("patients").size());
+		assertTrue(last.get("next").isNull());
+	}
+
+	@Test
+	public void testPageSizeIsCapped() throws Exception {
+		JsonNode page = page(get("/patients").param("lastName", LAST_NAME).param("size", "100"));
+		assertEquals(3, page.get("patients").size());
+		assertEquals(patients.get(2).getId().longValue(), page.get("next").asLong());
+	}
+
+	@Test
+	public void testSearchesBySsnInTheBody() throws Exception {
+		JsonNode page = page(post("/patients/search").contentType(MediaType.APPLICATION_JSON)
+			.content("{\"ssn\": \"" + SSN + "\"}"));
+		assertEquals(2, page.get("patients").size());
+		assertEquals(SSN, page.get("patients").get(1).get("socialSecurityNumber").asText());
+		assertTrue(page.get("next").isNull());
+	}
+
+	@Test
+	public void testSearchWithoutSsnIsABadRequest() throws Exception {
+		mockMvc.perform(post("/patients/search").contentType(MediaType.APPLICATION_JSON).content("{\"after\": 0}"))
+			.andExpect(status().isBadRequest());
+	}
+
+	private JsonNode page(RequestBuilder builder) throws Exception {
+		MvcResult result = mockMvc.perform(builder).andExpect(request().asyncStarted()).andReturn();
+		String body = mockMvc.perform(asyncDispatch(result)).andExpect(status().isOk())
+			.andReturn().getResponse().getContentAsString();
+		return objectMapper.readTree(body);
+	}
+
+	private static PatientEntity patient(String sourceId, String ssn) {
+		PatientEntity patient = new PatientEntity();
+		patient.setSourceId(sourceId);
+		patient.setFirstName("Hettie");
+		patient.setMiddleInitial("P");
+		patient.setLastName(LAST_NAME);
+		patient.setEmailAddress("rodo@uge.li");
+		patient.setPhoneNumber("(805) 384-3727");
+		patient.setStreet("Hutij Terrace");
+		patient.setCity("Kahgepu");
+		patient.setState("ID");
+		patient.setZipCode("40239");
+		patient.setBirthDate(LocalDate.of(1961, 6, 14));
+		patient.setSocialSecurityNumber(ssn);
+		patient.setAction(PatientAction.INSERT);
+		return patient;
+	}
+}